@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.standard;
+
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.opennlp.nifi.benchmark.BenchmarkModels;
+import org.apache.opennlp.nifi.benchmark.BenchmarkTexts;
+import org.apache.opennlp.nifi.service.LanguageDetectorModelService;
+import org.apache.opennlp.nifi.service.NameFinderModelService;
+import org.apache.opennlp.nifi.service.SentenceDetectorModelService;
+import org.apache.opennlp.nifi.service.TokenizerModelService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * annotate() of every processor on one text, for each tokenizer mode. Sentences are detected with
+ * the trained model when the tokenizer mode is MODEL, and by line otherwise.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnotateBenchmark {
+
+  @Param({"100", "1000", "10000"})
+  public int textSize;
+
+  @Param({TokenizeRecord.WHITESPACE_RULE_BASED, TokenizeRecord.SIMPLE_RULE_BASED, TokenizeRecord.MODEL_BASED})
+  public String tokenizer;
+
+  private String text;
+
+  private ProcessorFixture<TokenizeRecord> tokenizeFixture;
+  private ProcessorFixture<SentenceDetectRecord> sentenceFixture;
+  private ProcessorFixture<NamefindRecord> namefindFixture;
+  private ProcessorFixture<LanguageDetectRecord> languageFixture;
+  private ProcessorFixture<AnnotateRecord> annotateFixture;
+
+  private TokenizeRecord tokenize;
+  private SentenceDetectRecord sentenceDetect;
+  private NamefindRecord namefind;
+  private LanguageDetectRecord languageDetect;
+  private AnnotateRecord annotate;
+
+  // holds the tokens the name finder reads
+  private MapRecord tokenized;
+
+  @Setup(Level.Trial)
+  public void setup() throws InitializationException {
+    final BenchmarkModels models = BenchmarkModels.get();
+    text = BenchmarkTexts.text(textSize, BenchmarkTexts.ENGLISH, textSize);
+    final boolean model = TokenizeRecord.MODEL_BASED.equals(tokenizer);
+
+    tokenizeFixture = new ProcessorFixture<>(TokenizeRecord.class)
+            .set(TokenizeRecord.MODEL_TYPE_PD, tokenizer);
+    if (model) {
+      tokenizeFixture.service(TokenizeRecord.DETECTOR_SERVICE_PD, new TokenizerModelService(), models.getTokenizer());
+    }
+    tokenize = tokenizeFixture.schedule();
+
+    sentenceFixture = new ProcessorFixture<>(SentenceDetectRecord.class);
+    if (model) {
+      sentenceFixture.set(SentenceDetectRecord.MODEL_TYPE_PD, SentenceDetectRecord.FILE_BASED)
+              .service(SentenceDetectRecord.DETECTOR_SERVICE_PD, new SentenceDetectorModelService(), models.getSentenceDetector());
+    } else {
+      sentenceFixture.set(SentenceDetectRecord.MODEL_TYPE_PD, SentenceDetectRecord.NEWLINE_BASED);
+    }
+    sentenceDetect = sentenceFixture.schedule();
+
+    namefindFixture = new ProcessorFixture<>(NamefindRecord.class)
+            .service(NamefindRecord.DETECTOR_SERVICE_PD, new NameFinderModelService(), models.getNameFinder());
+    namefind = namefindFixture.schedule();
+
+    languageFixture = new ProcessorFixture<>(LanguageDetectRecord.class)
+            .service(LanguageDetectRecord.DETECTOR_SERVICE, new LanguageDetectorModelService(), models.getLanguageDetector());
+    languageDetect = languageFixture.schedule();
+
+    annotateFixture = new ProcessorFixture<>(AnnotateRecord.class)
+            .set(AnnotateRecord.TOKENIZER_MODEL_TYPE_PD, tokenizer)
+            .set(AnnotateRecord.SENTENCE_MODEL_TYPE_PD, model ? SentenceDetectRecord.FILE_BASED : SentenceDetectRecord.NEWLINE_BASED)
+            .service(AnnotateRecord.NAME_FINDER_SERVICE_PD, new NameFinderModelService(), models.getNameFinder())
+            .service(AnnotateRecord.LANGUAGE_DETECTOR_SERVICE_PD, new LanguageDetectorModelService(), models.getLanguageDetector());
+    if (model) {
+      annotateFixture.service(AnnotateRecord.TOKENIZER_SERVICE_PD, new TokenizerModelService(), models.getTokenizer())
+              .service(AnnotateRecord.SENTENCE_DETECTOR_SERVICE_PD, new SentenceDetectorModelService(), models.getSentenceDetector());
+    }
+    annotate = annotateFixture.schedule();
+
+    tokenized = ProcessorFixture.annotations();
+    tokenize.annotate(tokenizeFixture.getContext(), tokenized, text);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    tokenizeFixture.close();
+    sentenceFixture.close();
+    namefindFixture.close();
+    languageFixture.close();
+    annotateFixture.close();
+  }
+
+  @Benchmark
+  public MapRecord tokenize() {
+    return annotate(tokenize, tokenizeFixture.getContext(), ProcessorFixture.annotations());
+  }
+
+  @Benchmark
+  public MapRecord detectSentences() {
+    return annotate(sentenceDetect, sentenceFixture.getContext(), ProcessorFixture.annotations());
+  }
+
+  @Benchmark
+  public MapRecord findNames() {
+    return annotate(namefind, namefindFixture.getContext(), tokenized);
+  }
+
+  @Benchmark
+  public MapRecord detectLanguage() {
+    return annotate(languageDetect, languageFixture.getContext(), ProcessorFixture.annotations());
+  }
+
+  @Benchmark
+  public MapRecord annotateAll() {
+    return annotate(annotate, annotateFixture.getContext(), ProcessorFixture.annotations());
+  }
+
+  private MapRecord annotate(final AbstractOpenNLPRecordProcessor processor, final ProcessContext context,
+                             final MapRecord annotations) {
+    processor.annotate(context, annotations, text);
+    return annotations;
+  }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.standard;
+
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.controller.ControllerService;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.RecordSchema;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.apache.opennlp.nifi.service.TokenizerModelService;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A processor configured through a TestRunner and scheduled by hand, so benchmarks can call
+ * annotate() and process() directly without the record reader and writer around them.
+ */
+final class ProcessorFixture<P extends AbstractOpenNLPRecordProcessor> {
+
+  static final RecordSchema EMPTY_SCHEMA = new SimpleRecordSchema(Collections.emptyList());
+
+  private final TestRunner runner;
+  private final List<ControllerService> services = new ArrayList<>();
+
+  ProcessorFixture(final Class<P> type) {
+    runner = TestRunners.newTestRunner(type);
+  }
+
+  ProcessorFixture<P> set(final PropertyDescriptor property, final String value) {
+    runner.setProperty(property, value);
+    return this;
+  }
+
+  /**
+   * Adds and enables a model service on the given model file, and points the property at it.
+   */
+  ProcessorFixture<P> service(final PropertyDescriptor property, final ControllerService service, final File model,
+                              final Map<String, String> serviceProperties) throws InitializationException {
+    final String id = property.getName() + "-" + services.size();
+    final Map<String, String> properties = new HashMap<>(serviceProperties);
+    properties.put(TokenizerModelService.MODEL_PATH.getName(), model.getAbsolutePath());
+    runner.addControllerService(id, service, properties);
+    runner.enableControllerService(service);
+    runner.setProperty(property, id);
+    services.add(service);
+    return this;
+  }
+
+  ProcessorFixture<P> service(final PropertyDescriptor property, final ControllerService service, final File model)
+          throws InitializationException {
+    return service(property, service, model, Collections.emptyMap());
+  }
+
+  /**
+   * Runs the scheduling step of the processor and returns it ready to annotate.
+   */
+  @SuppressWarnings("unchecked")
+  P schedule() {
+    final P processor = (P) runner.getProcessor();
+    processor.createPlan(runner.getProcessContext());
+    return processor;
+  }
+
+  ProcessContext getContext() {
+    return runner.getProcessContext();
+  }
+
+  void close() {
+    for (ControllerService service : services) {
+      runner.disableControllerService(service);
+    }
+    services.clear();
+  }
+
+  static MapRecord annotations() {
+    return new MapRecord(EMPTY_SCHEMA, new HashMap<>());
+  }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.standard;
+
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.opennlp.nifi.benchmark.BenchmarkTexts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * process() on all records of one FlowFile with the whitespace tokenizer, so the time is mostly
+ * resolving the text and annotation paths. With expression language the paths are evaluated
+ * against the attributes of each FlowFile, without it they are compiled once when scheduled.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordPathBenchmark {
+
+  private static final RecordField ANNOTATIONS = new RecordField("annotations",
+          RecordFieldType.RECORD.getRecordDataType(ProcessorFixture.EMPTY_SCHEMA));
+  private static final RecordField BODY = new RecordField("body", RecordFieldType.STRING.getDataType());
+  private static final RecordSchema SCHEMA = new SimpleRecordSchema(Arrays.asList(BODY, ANNOTATIONS));
+
+  @Param({"1", "100", "10000"})
+  public int recordCount;
+
+  @Param({"false", "true"})
+  public boolean expressionLanguage;
+
+  private final AtomicLong flowFileIds = new AtomicLong();
+  private final Map<String, String> attributes = new HashMap<>();
+
+  private ProcessorFixture<TokenizeRecord> fixture;
+  private TokenizeRecord processor;
+  private Record[] records;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    fixture = new ProcessorFixture<>(TokenizeRecord.class)
+            .set(TokenizeRecord.MODEL_TYPE_PD, TokenizeRecord.WHITESPACE_RULE_BASED);
+    if (expressionLanguage) {
+      attributes.put("text.path", "/body");
+      attributes.put("annotation.path", "/annotations");
+      fixture.set(TokenizeRecord.TEXT_RECORD_PATH_PD, "${text.path}")
+              .set(TokenizeRecord.ANNOTATION_RECORD_PATH_PD, "${annotation.path}");
+    } else {
+      fixture.set(TokenizeRecord.TEXT_RECORD_PATH_PD, "/body")
+              .set(TokenizeRecord.ANNOTATION_RECORD_PATH_PD, "/annotations");
+    }
+    processor = fixture.schedule();
+
+    records = new Record[recordCount];
+    for (int i = 0; i < recordCount; i++) {
+      final Map<String, Object> values = new HashMap<>();
+      values.put(BODY.getFieldName(), BenchmarkTexts.text(i, BenchmarkTexts.language(i), 40));
+      values.put(ANNOTATIONS.getFieldName(), ProcessorFixture.annotations());
+      records[i] = new MapRecord(SCHEMA, values);
+    }
+  }
+
+  @Benchmark
+  public Record processFlowFile() {
+    // a new FlowFile each time, as paths with expression language are resolved once per FlowFile
+    final MockFlowFile flowFile = new MockFlowFile(flowFileIds.incrementAndGet());
+    flowFile.putAttributes(attributes);
+
+    final ProcessContext context = fixture.getContext();
+    Record last = null;
+    for (int i = 0; i < records.length; i++) {
+      last = processor.process(records[i], flowFile, context, i);
+    }
+    return last;
+  }
+
+}
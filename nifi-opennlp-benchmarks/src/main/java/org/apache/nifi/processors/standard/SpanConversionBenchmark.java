@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.standard;
+
+import opennlp.tools.util.Span;
+import org.apache.nifi.serialization.record.Record;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of spans to annotation values, in both span formats and from both span holders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpanConversionBenchmark {
+
+  @Param({"10", "100", "1000", "10000"})
+  public int spanCount;
+
+  private final TokenizeRecord processor = new TokenizeRecord();
+  private Span[] spans;
+  private SpanBuffer buffer;
+  private Record annotation;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    spans = new Span[spanCount];
+    buffer = new SpanBuffer();
+    for (int i = 0; i < spanCount; i++) {
+      spans[i] = new Span(6 * i, 6 * i + 5);
+      buffer.add(6 * i, 6 * i + 5);
+    }
+    annotation = AbstractOpenNLPRecordProcessor.spansToColumns(spans);
+  }
+
+  @Benchmark
+  public List<Record> recordListFromSpans() {
+    return processor.spansToRecordList(spans);
+  }
+
+  @Benchmark
+  public List<Record> recordListFromBuffer() {
+    return processor.spansToRecordList(buffer);
+  }
+
+  @Benchmark
+  public Record columnsFromSpans() {
+    return AbstractOpenNLPRecordProcessor.spansToColumns(spans);
+  }
+
+  @Benchmark
+  public Record columnsFromBuffer() {
+    return AbstractOpenNLPRecordProcessor.spansToColumns(buffer);
+  }
+
+  @Benchmark
+  public SpanBuffer readColumns() {
+    return AbstractOpenNLPRecordProcessor.readSpans(annotation, SpanBuffer.local());
+  }
+
+}
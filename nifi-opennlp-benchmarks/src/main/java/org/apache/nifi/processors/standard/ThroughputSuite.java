@@ -0,0 +1,450 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.standard;
+
+import org.apache.avro.Schema;
+import org.apache.nifi.avro.AvroReader;
+import org.apache.nifi.avro.AvroRecordSetWriter;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.controller.ControllerService;
+import org.apache.nifi.json.JsonRecordSetWriter;
+import org.apache.nifi.json.JsonTreeReader;
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.schema.access.SchemaAccessUtils;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.apache.opennlp.nifi.LanguageSampler;
+import org.apache.opennlp.nifi.benchmark.BenchmarkModels;
+import org.apache.opennlp.nifi.benchmark.CorpusGenerator;
+import org.apache.opennlp.nifi.benchmark.LatencyHistogram;
+import org.apache.opennlp.nifi.service.LanguageDetectorModelService;
+import org.apache.opennlp.nifi.service.NameFinderModelService;
+import org.apache.opennlp.nifi.service.SentenceDetectorModelService;
+import org.apache.opennlp.nifi.service.TokenizerModelService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole FlowFiles of generated records through the record processors, with real JSON or Avro readers
+ * and writers and the benchmark models. Reports records and bytes per second, FlowFile latency
+ * percentiles, garbage collection and heap use for each processor, and writes them to a sorted
+ * properties file that can be diffed, or compared with the {@code compare} command, across builds.
+ * <p>
+ * Options are given as {@code name=value} arguments, see {@link #DEFAULTS}. With a duration the
+ * suite runs each processor for that long rather than for a number of FlowFiles, as a soak test.
+ * <pre>
+ * java -cp benchmarks.jar org.apache.nifi.processors.standard.ThroughputSuite format=AVRO records=500
+ * java -cp benchmarks.jar org.apache.nifi.processors.standard.ThroughputSuite compare base.properties new.properties
+ * </pre>
+ */
+public final class ThroughputSuite {
+
+  static final String TOKENIZE = "TOKENIZE";
+  static final String SENTENCES = "SENTENCES";
+  static final String NAMES = "NAMES";
+  static final String LANGUAGE = "LANGUAGE";
+
+  static final String JSON = "JSON";
+  static final String AVRO = "AVRO";
+
+  static final Map<String, String> DEFAULTS;
+
+  static {
+    final Map<String, String> defaults = new TreeMap<>();
+    defaults.put("stages", String.join(",", TOKENIZE, SENTENCES, NAMES, LANGUAGE));
+    defaults.put("format", JSON);
+    defaults.put("flowFiles", "200");
+    defaults.put("records", "100");
+    defaults.put("textSize", "500");
+    defaults.put("warmUpFlowFiles", "20");
+    // seconds per processor, 0 runs the configured number of FlowFiles
+    defaults.put("duration", "0");
+    defaults.put("seed", "42");
+    defaults.put("tokenizer", TokenizeRecord.SIMPLE_RULE_BASED);
+    defaults.put("sentenceDetector", SentenceDetectRecord.FILE_BASED);
+    defaults.put("languageDetectionMode", LanguageSampler.MODE_FULL);
+    defaults.put("pipelined", "false");
+    defaults.put("pipelineBatchSize", "100");
+    defaults.put("pipelineQueueDepth", "4");
+    defaults.put("results", "throughput-results.properties");
+    defaults.put("label", "");
+    DEFAULTS = Collections.unmodifiableMap(defaults);
+  }
+
+  private static final long PROGRESS_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private final Map<String, String> options;
+  private final CorpusGenerator corpus;
+  private final String schemaText;
+  private final Schema avroSchema;
+  private final BenchmarkModels models = BenchmarkModels.get();
+
+  // services enabled for the stage being measured, disabled when it is done
+  private final Map<ControllerService, TestRunner> enabledServices = new LinkedHashMap<>();
+
+  ThroughputSuite(final Map<String, String> options) throws IOException {
+    this.options = options;
+    this.corpus = new CorpusGenerator(Long.parseLong(options.get("seed")), integer("records"), integer("textSize"));
+    try (InputStream in = ThroughputSuite.class.getResourceAsStream("/schema/annotation.avsc")) {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        bytes.write(buffer, 0, read);
+      }
+      schemaText = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+    avroSchema = new Schema.Parser().parse(schemaText);
+  }
+
+  public static void main(final String[] args) throws Exception {
+    if (args.length > 0 && "compare".equals(args[0])) {
+      if (args.length != 3) {
+        System.err.println("usage: compare <base results> <new results>");
+        System.exit(1);
+      }
+      compare(new File(args[1]), new File(args[2]));
+      return;
+    }
+
+    final Map<String, String> options = new TreeMap<>(DEFAULTS);
+    for (String arg : args) {
+      final int split = arg.indexOf('=');
+      if (split <= 0 || !DEFAULTS.containsKey(arg.substring(0, split))) {
+        System.err.println("Unknown option " + arg + ", options and defaults are " + DEFAULTS);
+        System.exit(1);
+      }
+      options.put(arg.substring(0, split), arg.substring(split + 1));
+    }
+
+    final ThroughputSuite suite = new ThroughputSuite(options);
+    final Map<String, String> results = new TreeMap<>();
+    options.forEach((name, value) -> results.put("suite." + name, value));
+    results.put("suite.java", System.getProperty("java.version"));
+    for (String stage : options.get("stages").split(",")) {
+      suite.run(stage.trim(), results);
+    }
+    write(new File(options.get("results")), results);
+  }
+
+  private int integer(final String option) {
+    return Integer.parseInt(options.get(option));
+  }
+
+  private void run(final String stage, final Map<String, String> results) throws InitializationException {
+    try {
+      final TestRunner runner = createRunner(stage);
+      // the name finder reads the tokens of a tokenizer run, which is not measured
+      final TestRunner prepare = NAMES.equals(stage) ? createRunner(TOKENIZE) : null;
+      measure(stage, runner, prepare, results);
+    } finally {
+      enabledServices.forEach((service, runner) -> runner.disableControllerService(service));
+      enabledServices.clear();
+    }
+  }
+
+  private void measure(final String stage, final TestRunner runner, final TestRunner prepare,
+                       final Map<String, String> results) {
+    final int warmUp = integer("warmUpFlowFiles");
+    final int flowFiles = integer("flowFiles");
+    final long durationNanos = TimeUnit.SECONDS.toNanos(integer("duration"));
+
+    int index = 0;
+    for (; index < warmUp; index++) {
+      runOnce(runner, input(index, prepare), index == 0);
+    }
+
+    final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    System.gc();
+    final long heapBefore = memory.getHeapMemoryUsage().getUsed();
+    final long gcCountBefore = gcCount();
+    final long gcMillisBefore = gcMillis();
+
+    final LatencyHistogram latencies = new LatencyHistogram();
+    long measuredNanos = 0;
+    long bytes = 0;
+    long maxHeap = 0;
+    final long start = System.nanoTime();
+    long nextProgress = start + PROGRESS_NANOS;
+    for (int measured = 0; durationNanos > 0 ? System.nanoTime() - start < durationNanos : measured < flowFiles;
+         measured++, index++) {
+      final byte[] input = input(index, prepare);
+      final long elapsed = runOnce(runner, input, index == 0);
+      latencies.record(elapsed);
+      measuredNanos += elapsed;
+      bytes += input.length;
+      maxHeap = Math.max(maxHeap, memory.getHeapMemoryUsage().getUsed());
+
+      if (System.nanoTime() >= nextProgress) {
+        nextProgress += PROGRESS_NANOS;
+        System.out.printf("%s: %d FlowFiles, %.0f records/s, %d MB heap used%n", stage, latencies.getCount(),
+                records(latencies) * 1e9 / measuredNanos, memory.getHeapMemoryUsage().getUsed() >> 20);
+      }
+    }
+
+    final long gcCount = gcCount() - gcCountBefore;
+    final long gcMillis = gcMillis() - gcMillisBefore;
+    // stops the processor
+    runner.run(1, true, false);
+    System.gc();
+    final long heapAfter = memory.getHeapMemoryUsage().getUsed();
+
+    final String prefix = stage + ".";
+    final double seconds = measuredNanos / 1e9;
+    results.put(prefix + "flowFiles", String.valueOf(latencies.getCount()));
+    results.put(prefix + "records", String.valueOf(records(latencies)));
+    results.put(prefix + "recordsPerSecond", format(records(latencies) / seconds));
+    results.put(prefix + "bytesPerSecond", format(bytes / seconds));
+    results.put(prefix + "latency.meanMicros", format(latencies.getMean() / 1000));
+    results.put(prefix + "latency.p50Micros", micros(latencies.getPercentile(50)));
+    results.put(prefix + "latency.p90Micros", micros(latencies.getPercentile(90)));
+    results.put(prefix + "latency.p99Micros", micros(latencies.getPercentile(99)));
+    results.put(prefix + "latency.p999Micros", micros(latencies.getPercentile(99.9)));
+    results.put(prefix + "latency.maxMicros", micros(latencies.getMax()));
+    results.put(prefix + "gc.count", String.valueOf(gcCount));
+    results.put(prefix + "gc.millis", String.valueOf(gcMillis));
+    results.put(prefix + "heap.maxUsedBytes", String.valueOf(maxHeap));
+    results.put(prefix + "heap.retainedBytes", String.valueOf(heapAfter - heapBefore));
+
+    System.out.printf("%-10s %10.0f records/s  p50 %8s us  p99 %8s us  max %8s us  %4d GCs  %+d KB retained%n",
+            stage, records(latencies) / seconds, micros(latencies.getPercentile(50)),
+            micros(latencies.getPercentile(99)), micros(latencies.getMax()), gcCount, (heapAfter - heapBefore) >> 10);
+  }
+
+  private long records(final LatencyHistogram latencies) {
+    return latencies.getCount() * corpus.getRecords();
+  }
+
+  private byte[] input(final int index, final TestRunner prepare) {
+    try {
+      final byte[] content = AVRO.equals(options.get("format")) ? corpus.avro(index, avroSchema) : corpus.json(index);
+      if (prepare == null) {
+        return content;
+      }
+      runOnce(prepare, content, index == 0);
+      return output(prepare).toByteArray();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Runs one FlowFile through the processor and returns the time it took. The processor is scheduled by
+   * the first run and stays scheduled. The output is kept until the next run.
+   */
+  private static long runOnce(final TestRunner runner, final byte[] content, final boolean first) {
+    runner.clearTransferState();
+    runner.enqueue(content);
+    final long start = System.nanoTime();
+    runner.run(1, false, first);
+    final long elapsed = System.nanoTime() - start;
+    output(runner);
+    return elapsed;
+  }
+
+  private static MockFlowFile output(final TestRunner runner) {
+    final List<MockFlowFile> out = runner.getFlowFilesForRelationship(AbstractRecordProcessor.REL_SUCCESS);
+    if (out.size() != 1) {
+      throw new IllegalStateException("FlowFile was not transferred to success, check the processor configuration");
+    }
+    return out.get(0);
+  }
+
+  private TestRunner createRunner(final String stage) throws InitializationException {
+    final TestRunner runner;
+    switch (stage) {
+      case TOKENIZE:
+        runner = TestRunners.newTestRunner(TokenizeRecord.class);
+        runner.setProperty(TokenizeRecord.MODEL_TYPE_PD, options.get("tokenizer"));
+        if (TokenizeRecord.MODEL_BASED.equals(options.get("tokenizer"))) {
+          addModelService(runner, TokenizeRecord.DETECTOR_SERVICE_PD, new TokenizerModelService(), models.getTokenizer());
+        }
+        break;
+      case SENTENCES:
+        runner = TestRunners.newTestRunner(SentenceDetectRecord.class);
+        runner.setProperty(SentenceDetectRecord.MODEL_TYPE_PD, options.get("sentenceDetector"));
+        if (SentenceDetectRecord.FILE_BASED.equals(options.get("sentenceDetector"))) {
+          addModelService(runner, SentenceDetectRecord.DETECTOR_SERVICE_PD, new SentenceDetectorModelService(),
+                  models.getSentenceDetector());
+        }
+        break;
+      case NAMES:
+        runner = TestRunners.newTestRunner(NamefindRecord.class);
+        addModelService(runner, NamefindRecord.DETECTOR_SERVICE_PD, new NameFinderModelService(), models.getNameFinder());
+        break;
+      case LANGUAGE:
+        runner = TestRunners.newTestRunner(LanguageDetectRecord.class);
+        runner.setProperty(LanguageSampler.DETECTION_MODE, options.get("languageDetectionMode"));
+        addModelService(runner, LanguageDetectRecord.DETECTOR_SERVICE, new LanguageDetectorModelService(),
+                models.getLanguageDetector());
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown stage " + stage + ", expected one of "
+                + String.join(",", TOKENIZE, SENTENCES, NAMES, LANGUAGE));
+    }
+
+    addRecordServices(runner);
+    runner.setProperty(AbstractOpenNLPRecordProcessor.TEXT_RECORD_PATH_PD, "/body");
+    runner.setProperty(AbstractOpenNLPRecordProcessor.ANNOTATION_RECORD_PATH_PD, "/annotations");
+    runner.setProperty(AbstractOpenNLPRecordProcessor.PIPELINE_PD, options.get("pipelined"));
+    runner.setProperty(AbstractOpenNLPRecordProcessor.PIPELINE_BATCH_SIZE_PD, options.get("pipelineBatchSize"));
+    runner.setProperty(AbstractOpenNLPRecordProcessor.PIPELINE_QUEUE_DEPTH_PD, options.get("pipelineQueueDepth"));
+    runner.assertValid();
+    return runner;
+  }
+
+  private void addRecordServices(final TestRunner runner) throws InitializationException {
+    final ControllerService reader;
+    final ControllerService writer;
+    if (AVRO.equals(options.get("format"))) {
+      reader = new AvroReader();
+      writer = new AvroRecordSetWriter();
+    } else {
+      reader = new JsonTreeReader();
+      writer = new JsonRecordSetWriter();
+    }
+
+    runner.addControllerService("reader", reader);
+    if (!(reader instanceof AvroReader)) {
+      // Avro data files carry their schema
+      runner.setProperty(reader, SchemaAccessUtils.SCHEMA_ACCESS_STRATEGY, SchemaAccessUtils.SCHEMA_TEXT_PROPERTY);
+      runner.setProperty(reader, SchemaAccessUtils.SCHEMA_TEXT, schemaText);
+    }
+    enable(runner, reader);
+
+    runner.addControllerService("writer", writer);
+    runner.setProperty(writer, SchemaAccessUtils.SCHEMA_ACCESS_STRATEGY, SchemaAccessUtils.SCHEMA_TEXT_PROPERTY);
+    runner.setProperty(writer, SchemaAccessUtils.SCHEMA_TEXT, schemaText);
+    enable(runner, writer);
+
+    runner.setProperty(AbstractRecordProcessor.RECORD_READER, "reader");
+    runner.setProperty(AbstractRecordProcessor.RECORD_WRITER, "writer");
+  }
+
+  private void addModelService(final TestRunner runner, final PropertyDescriptor property,
+                               final ControllerService service, final File model) throws InitializationException {
+    runner.addControllerService(property.getName(), service,
+            Collections.singletonMap(TokenizerModelService.MODEL_PATH.getName(), model.getAbsolutePath()));
+    enable(runner, service);
+    runner.setProperty(property, property.getName());
+  }
+
+  private void enable(final TestRunner runner, final ControllerService service) {
+    runner.enableControllerService(service);
+    enabledServices.put(service, runner);
+  }
+
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, gc.getCollectionCount());
+    }
+    return count;
+  }
+
+  private static long gcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(0, gc.getCollectionTime());
+    }
+    return millis;
+  }
+
+  private static String micros(final long nanos) {
+    return String.valueOf(TimeUnit.NANOSECONDS.toMicros(nanos));
+  }
+
+  private static String format(final double value) {
+    return String.format("%.1f", value);
+  }
+
+  /**
+   * Writes the results sorted by name, so results of two builds can be diffed line by line.
+   */
+  static void write(final File file, final Map<String, String> results) throws IOException {
+    try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      out.write("# nifi-opennlp throughput results\n");
+      for (Map.Entry<String, String> result : new TreeMap<>(results).entrySet()) {
+        out.write(result.getKey() + "=" + result.getValue().replace("\\", "\\\\") + "\n");
+      }
+    }
+    System.out.println("Results written to " + file.getAbsolutePath());
+  }
+
+  /**
+   * Prints every numeric result of two result files with its change in percent. Options that differ are
+   * printed first, as the results are only comparable when they are the same.
+   */
+  static void compare(final File base, final File current) throws IOException {
+    final Properties baseResults = read(base);
+    final Properties currentResults = read(current);
+
+    final TreeSet<String> names = new TreeSet<>(baseResults.stringPropertyNames());
+    names.retainAll(currentResults.stringPropertyNames());
+    for (String name : names) {
+      final String before = baseResults.getProperty(name);
+      final String after = currentResults.getProperty(name);
+      if (name.startsWith("suite.") && !before.equals(after)) {
+        System.out.printf("%-40s %s -> %s%n", name, before, after);
+      }
+    }
+    for (String name : names) {
+      if (name.startsWith("suite.")) {
+        continue;
+      }
+      try {
+        final double before = Double.parseDouble(baseResults.getProperty(name));
+        final double after = Double.parseDouble(currentResults.getProperty(name));
+        final String change = before == 0 ? "" : String.format("%+.1f%%", (after - before) * 100 / before);
+        System.out.printf("%-40s %16s %16s %9s%n", name, baseResults.getProperty(name),
+                currentResults.getProperty(name), change);
+      } catch (NumberFormatException e) {
+        System.out.printf("%-40s %16s %16s%n", name, baseResults.getProperty(name), currentResults.getProperty(name));
+      }
+    }
+  }
+
+  private static Properties read(final File file) throws IOException {
+    final Properties properties = new Properties();
+    try (Reader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      properties.load(in);
+    }
+    return properties;
+  }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi;
+
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.apache.opennlp.nifi.benchmark.BenchmarkModels;
+import org.apache.opennlp.nifi.benchmark.BenchmarkTexts;
+import org.apache.opennlp.nifi.service.LanguageDetectorModelService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LanguageDetectProcessor on many small FlowFiles, one FlowFile per onTrigger call against batches
+ * that share a detector and a session. The time is per FlowFile, so the batch sizes compare directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LanguageDetectBatchBenchmark {
+
+  private static final int FLOWFILES = 500;
+
+  @Param({"1", "10", "100", "500"})
+  public int batchSize;
+
+  @Param({"100", "1000"})
+  public int textSize;
+
+  private TestRunner runner;
+  private LanguageDetectorModelService service;
+  private byte[][] contents;
+  private boolean scheduled;
+
+  @Setup(Level.Trial)
+  public void setup() throws InitializationException {
+    runner = TestRunners.newTestRunner(LanguageDetectProcessor.class);
+    service = new LanguageDetectorModelService();
+    runner.addControllerService("detector", service, Collections.singletonMap(
+            LanguageDetectorModelService.MODEL_PATH.getName(), BenchmarkModels.get().getLanguageDetector().getAbsolutePath()));
+    runner.enableControllerService(service);
+    runner.setProperty(LanguageDetectProcessor.DETECTOR_SERVICE_PD, "detector");
+    runner.setProperty(LanguageDetectProcessor.BATCH_SIZE_PD, String.valueOf(batchSize));
+    runner.assertValid();
+
+    contents = new byte[FLOWFILES][];
+    for (int i = 0; i < FLOWFILES; i++) {
+      contents[i] = BenchmarkTexts.text(i, BenchmarkTexts.language(i), textSize).getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    runner.run(1, true, false);
+    runner.disableControllerService(service);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(FLOWFILES)
+  public int detectFlowFiles() {
+    runner.clearTransferState();
+    for (byte[] content : contents) {
+      runner.enqueue(content);
+    }
+    // the processor is scheduled by the first run and stays scheduled
+    runner.run((FLOWFILES + batchSize - 1) / batchSize, false, !scheduled);
+    scheduled = true;
+
+    final int detected = runner.getFlowFilesForRelationship(LanguageDetectProcessor.REL_SUCCESS).size();
+    if (detected != FLOWFILES) {
+      throw new IllegalStateException(detected + " of " + FLOWFILES + " FlowFiles were detected");
+    }
+    return detected;
+  }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.benchmark;
+
+import opennlp.tools.langdetect.Language;
+import opennlp.tools.langdetect.LanguageDetectorFactory;
+import opennlp.tools.langdetect.LanguageDetectorME;
+import opennlp.tools.langdetect.LanguageSample;
+import opennlp.tools.namefind.BioCodec;
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.NameSampleDataStream;
+import opennlp.tools.namefind.TokenNameFinderFactory;
+import opennlp.tools.sentdetect.SentenceDetectorFactory;
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.sentdetect.SentenceSampleStream;
+import opennlp.tools.tokenize.TokenSampleStream;
+import opennlp.tools.tokenize.TokenizerFactory;
+import opennlp.tools.tokenize.TokenizerME;
+import opennlp.tools.util.ObjectStreamUtils;
+import opennlp.tools.util.TrainingParameters;
+import opennlp.tools.util.model.BaseModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Small OpenNLP models trained on {@link BenchmarkTexts}, written once per JVM to a temporary
+ * directory. They are far from accurate, but run through the same code as real models.
+ */
+public final class BenchmarkModels {
+
+  private static final long SEED = 42;
+  private static final int SENTENCES = 600;
+
+  private static volatile BenchmarkModels instance;
+
+  private final File directory;
+  private final File tokenizer;
+  private final File sentenceDetector;
+  private final File nameFinder;
+  private final File languageDetector;
+
+  private BenchmarkModels(final File directory) throws IOException {
+    this.directory = directory;
+    final TrainingParameters params = TrainingParameters.defaultParams();
+    params.put(TrainingParameters.ITERATIONS_PARAM, "20");
+    params.put(TrainingParameters.CUTOFF_PARAM, "1");
+
+    final List<String> sentences = BenchmarkTexts.sentences(SEED, BenchmarkTexts.ENGLISH, SENTENCES);
+
+    tokenizer = write("en-token.bin", TokenizerME.train(
+            new TokenSampleStream(ObjectStreamUtils.createObjectStream(tokenSamples(sentences))),
+            new TokenizerFactory("en", null, false, null), params));
+
+    sentenceDetector = write("en-sent.bin", SentenceDetectorME.train("en",
+            new SentenceSampleStream(ObjectStreamUtils.createObjectStream(sentenceSamples(sentences))),
+            new SentenceDetectorFactory("en", true, null, null), params));
+
+    nameFinder = write("en-ner-person.bin", NameFinderME.train("en", "person",
+            new NameSampleDataStream(ObjectStreamUtils.createObjectStream(nameSamples(sentences))), params,
+            TokenNameFinderFactory.create(null, null, Collections.emptyMap(), new BioCodec())));
+
+    languageDetector = write("langdetect.bin", LanguageDetectorME.train(
+            ObjectStreamUtils.createObjectStream(languageSamples()), params, new LanguageDetectorFactory()));
+  }
+
+  /**
+   * The models, trained on first use.
+   */
+  public static BenchmarkModels get() {
+    if (instance == null) {
+      synchronized (BenchmarkModels.class) {
+        if (instance == null) {
+          try {
+            final File directory = Files.createTempDirectory("nifi-opennlp-benchmarks").toFile();
+            directory.deleteOnExit();
+            instance = new BenchmarkModels(directory);
+          } catch (IOException e) {
+            throw new UncheckedIOException("Failed to train benchmark models", e);
+          }
+        }
+      }
+    }
+    return instance;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  public File getTokenizer() {
+    return tokenizer;
+  }
+
+  public File getSentenceDetector() {
+    return sentenceDetector;
+  }
+
+  public File getNameFinder() {
+    return nameFinder;
+  }
+
+  public File getLanguageDetector() {
+    return languageDetector;
+  }
+
+  private File write(final String name, final BaseModel model) throws IOException {
+    final File file = new File(directory, name);
+    try (OutputStream out = Files.newOutputStream(file.toPath())) {
+      model.serialize(out);
+    }
+    file.deleteOnExit();
+    return file;
+  }
+
+  private static String separatePunctuation(final String sentence, final String separator) {
+    return sentence.replace(",", separator + ",").replace(".", separator + ".").replace("?", separator + "?");
+  }
+
+  private static List<String> tokenSamples(final List<String> sentences) {
+    final List<String> samples = new ArrayList<>(sentences.size());
+    for (String sentence : sentences) {
+      samples.add(separatePunctuation(sentence, "<SPLIT>"));
+    }
+    return samples;
+  }
+
+  // documents of ten sentences, separated by empty lines
+  private static List<String> sentenceSamples(final List<String> sentences) {
+    final List<String> samples = new ArrayList<>(sentences.size() + sentences.size() / 10);
+    for (int i = 0; i < sentences.size(); i++) {
+      samples.add(sentences.get(i));
+      if (i % 10 == 9) {
+        samples.add("");
+      }
+    }
+    return samples;
+  }
+
+  private static List<String> nameSamples(final List<String> sentences) {
+    final List<String> samples = new ArrayList<>(sentences.size());
+    for (String sentence : sentences) {
+      String sample = separatePunctuation(sentence, " ");
+      for (String name : BenchmarkTexts.NAMES) {
+        sample = sample.replace(name, "<START:person> " + name + " <END>");
+      }
+      samples.add(sample);
+    }
+    return samples;
+  }
+
+  private static List<LanguageSample> languageSamples() {
+    final List<LanguageSample> samples = new ArrayList<>();
+    for (String language : BenchmarkTexts.LANGUAGES) {
+      for (int i = 0; i < 100; i++) {
+        samples.add(new LanguageSample(new Language(language), BenchmarkTexts.text(SEED + i, language, 200)));
+      }
+    }
+    return samples;
+  }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the benchmarks with the JMH command line options, always adding the GC profiler so every
+ * result reports allocation per operation next to the time. Passing {@code -prof gc} as well is not needed.
+ */
+public final class BenchmarkRunner {
+
+  private BenchmarkRunner() {
+  }
+
+  public static void main(final String[] args) throws RunnerException, CommandLineOptionException, IOException {
+    final CommandLineOptions commandLine = new CommandLineOptions(args);
+    if (commandLine.shouldHelp()) {
+      commandLine.showHelp();
+      return;
+    }
+    if (commandLine.shouldList()) {
+      new Runner(commandLine).list();
+      return;
+    }
+
+    final Options options = new OptionsBuilder()
+            .parent(commandLine)
+            .addProfiler(GCProfiler.class)
+            .build();
+    new Runner(options).run();
+  }
+
+}
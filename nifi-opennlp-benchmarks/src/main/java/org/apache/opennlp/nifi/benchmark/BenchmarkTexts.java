@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic texts for benchmarks. The same seed, language and size always give the same text,
+ * so results of different builds are measured on the same input.
+ */
+public final class BenchmarkTexts {
+
+  public static final String ENGLISH = "en";
+  public static final String DANISH = "da";
+  public static final String GERMAN = "de";
+
+  public static final List<String> LANGUAGES = Collections.unmodifiableList(
+          Arrays.asList(ENGLISH, DANISH, GERMAN));
+
+  static final String[] NAMES = {
+    "Pierre Vinken", "Anna Jensen", "John Smith", "Maria Schmidt", "Lars Nielsen", "Emma Weber",
+    "Peter Hansen", "Sarah Miller", "Klaus Fischer", "Mette Larsen"
+  };
+
+  private static final String[][] WORDS = {
+    // en
+    {"the", "board", "will", "join", "director", "company", "market", "report", "said", "new", "year", "group",
+      "chairman", "meeting", "shares", "price", "week", "city", "council", "decision", "about", "after", "before",
+      "with", "from", "under", "over", "million", "people", "government", "and", "of", "in", "to", "is", "was"},
+    // da
+    {"den", "det", "og", "en", "til", "af", "for", "med", "har", "ikke", "bestyrelsen", "direkt\u00f8r", "selskabet",
+      "m\u00f8det", "aktier", "prisen", "uge", "byen", "kommunen", "beslutning", "efter", "inden", "under", "over",
+      "millioner", "mennesker", "regeringen", "sagde", "nye", "\u00e5ret", "gruppen", "formand", "er", "var", "p\u00e5", "om"},
+    // de
+    {"der", "die", "das", "und", "ein", "zu", "von", "mit", "hat", "nicht", "Vorstand", "Direktor", "Firma",
+      "Sitzung", "Aktien", "Preis", "Woche", "Stadt", "Gemeinde", "Entscheidung", "nach", "vor", "unter", "\u00fcber",
+      "Millionen", "Menschen", "Regierung", "sagte", "neue", "Jahr", "Gruppe", "Vorsitzender", "ist", "war", "auf", "um"}
+  };
+
+  private BenchmarkTexts() {
+  }
+
+  /**
+   * A text of at least the given number of characters, made of sentences separated by spaces, with a
+   * person name in about every third sentence.
+   */
+  public static String text(final long seed, final String language, final int characters) {
+    final Random random = new Random(seed);
+    final StringBuilder text = new StringBuilder(characters + 128);
+    while (text.length() < characters) {
+      if (text.length() > 0) {
+        text.append(' ');
+      }
+      appendSentence(random, language, text);
+    }
+    return text.toString();
+  }
+
+  /**
+   * One sentence per line.
+   */
+  public static List<String> sentences(final long seed, final String language, final int count) {
+    final Random random = new Random(seed);
+    final List<String> sentences = new ArrayList<>(count);
+    final StringBuilder sentence = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      sentence.setLength(0);
+      appendSentence(random, language, sentence);
+      sentences.add(sentence.toString());
+    }
+    return sentences;
+  }
+
+  /**
+   * Picks one of the languages, the same one for the same seed.
+   */
+  public static String language(final long seed) {
+    return LANGUAGES.get((int) Math.floorMod(seed, (long) LANGUAGES.size()));
+  }
+
+  static void appendSentence(final Random random, final String language, final StringBuilder sentence) {
+    final String[] words = WORDS[LANGUAGES.indexOf(language)];
+    final int length = 6 + random.nextInt(14);
+    final int namePosition = random.nextInt(3) == 0 ? random.nextInt(length) : -1;
+    for (int i = 0; i < length; i++) {
+      if (i > 0) {
+        sentence.append(i == length / 2 && random.nextInt(4) == 0 ? ", " : " ");
+      }
+      if (i == namePosition) {
+        sentence.append(NAMES[random.nextInt(NAMES.length)]);
+      } else {
+        final String word = words[random.nextInt(words.length)];
+        if (i == 0) {
+          sentence.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+        } else {
+          sentence.append(word);
+        }
+      }
+    }
+    sentence.append(random.nextInt(8) == 0 ? '?' : '.');
+  }
+
+}
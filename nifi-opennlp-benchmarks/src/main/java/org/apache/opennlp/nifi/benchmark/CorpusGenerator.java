@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.benchmark;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * FlowFile contents of annotation records in several languages. FlowFile n of a generator always has
+ * the same records, whatever was generated before, so runs of different builds see the same data.
+ * Record texts vary between half and one and a half times the configured size.
+ */
+public final class CorpusGenerator {
+
+  private final long seed;
+  private final int records;
+  private final int textSize;
+
+  public CorpusGenerator(final long seed, final int records, final int textSize) {
+    this.seed = seed;
+    this.records = records;
+    this.textSize = textSize;
+  }
+
+  public int getRecords() {
+    return records;
+  }
+
+  /**
+   * FlowFile n as a JSON array of records with an id, a body and empty annotations.
+   */
+  public byte[] json(final int flowFile) {
+    final Random random = random(flowFile);
+    final StringBuilder json = new StringBuilder(records * (textSize + 64) + 2);
+    json.append('[');
+    for (int i = 0; i < records; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append("\n{\"id\":").append(id(flowFile, i)).append(",\"body\":\"");
+      appendEscaped(json, text(random));
+      json.append("\",\"annotations\":{}}");
+    }
+    json.append("\n]");
+    return json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * FlowFile n as an Avro data file with the given schema, which needs the fields of the JSON records.
+   */
+  public byte[] avro(final int flowFile, final Schema schema) throws IOException {
+    final Random random = random(flowFile);
+    final Schema annotationsSchema = schema.getField("annotations").schema();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(records * (textSize + 16));
+    try (DataFileWriter<GenericRecord> writer = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(schema))) {
+      writer.create(schema, out);
+      for (int i = 0; i < records; i++) {
+        final GenericRecord record = new GenericData.Record(schema);
+        record.put("id", id(flowFile, i));
+        record.put("body", text(random));
+        record.put("annotations", new GenericData.Record(annotationsSchema));
+        writer.append(record);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private Random random(final int flowFile) {
+    return new Random(seed * 1_000_003L + flowFile);
+  }
+
+  private int id(final int flowFile, final int record) {
+    return flowFile * records + record;
+  }
+
+  private String text(final Random random) {
+    final String language = BenchmarkTexts.LANGUAGES.get(random.nextInt(BenchmarkTexts.LANGUAGES.size()));
+    final int size = Math.max(1, textSize / 2 + random.nextInt(textSize + 1));
+    return BenchmarkTexts.text(random.nextLong(), language, size);
+  }
+
+  private static void appendEscaped(final StringBuilder json, final String text) {
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < 0x20) {
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+  }
+
+}
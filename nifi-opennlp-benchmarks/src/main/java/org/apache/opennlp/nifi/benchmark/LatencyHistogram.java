@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.benchmark;
+
+/**
+ * Counts of latencies in buckets of fixed relative width, so percentiles of long runs are kept in a
+ * few kilobytes. Each power of two is split in 16 buckets, a percentile is off by at most 1/16.
+ * Not thread safe.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final long[] counts = new long[64 * SUB_BUCKETS];
+  private long count;
+  private long sum;
+  private long max;
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts[index(value)]++;
+    count++;
+    sum += value;
+    max = Math.max(max, value);
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public double getMean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  /**
+   * The highest value of the bucket holding the given percentile, between 0 and 100.
+   */
+  public long getPercentile(final double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(max, highestValue(i));
+      }
+    }
+    return max;
+  }
+
+  static int index(final long value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return (int) value;
+    }
+    final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    final int sub = (int) (value >>> shift);
+    return (shift + 1) * SUB_BUCKETS + sub - SUB_BUCKETS;
+  }
+
+  static long highestValue(final int index) {
+    if (index < 2 * SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = index / SUB_BUCKETS - 1;
+    final long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+    return ((sub + 1) << shift) - 1;
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import org.apache.nifi.reporting.InitializationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Model loading in onEnabled() for every storage, with and without snapshots. The service is disabled
+ * again after each load, which releases the model so the next load reads it from disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelLoadBenchmark {
+
+  @Param({"TOKENIZER", "SENTENCE_DETECTOR", "NAME_FINDER", "LANGUAGE_DETECTOR"})
+  public String service;
+
+  @Param({AbstractModelService.STORAGE_HEAP, AbstractModelService.STORAGE_MAPPED, AbstractModelService.STORAGE_MAPPED_FLOAT32})
+  public String storage;
+
+  @Param({"false", "true"})
+  public boolean snapshot;
+
+  private ServiceFixture fixture;
+
+  @Setup(Level.Trial)
+  public void setup() throws InitializationException {
+    final Map<String, String> properties = new HashMap<>();
+    properties.put(AbstractModelService.MODEL_STORAGE.getName(), storage);
+    properties.put(AbstractModelService.MODEL_SNAPSHOT.getName(), String.valueOf(snapshot));
+    fixture = new ServiceFixture(ServiceFixture.Type.valueOf(service), properties);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    fixture.close();
+  }
+
+  @Benchmark
+  public void enableAndDisable() {
+    fixture.enable();
+    fixture.disable();
+  }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import org.apache.nifi.reporting.InitializationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * getInstance() and release() of every model service in each instance mode, from one thread and
+ * from several threads sharing the service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelServiceBenchmark {
+
+  @Param({"TOKENIZER", "SENTENCE_DETECTOR", "NAME_FINDER", "LANGUAGE_DETECTOR"})
+  public String service;
+
+  @Param({InstancePool.PER_CALL, InstancePool.PER_THREAD, InstancePool.POOLED})
+  public String instanceMode;
+
+  private ServiceFixture fixture;
+  private ServiceFactory<Object> factory;
+
+  @Setup(Level.Trial)
+  public void setup() throws InitializationException {
+    fixture = new ServiceFixture(ServiceFixture.Type.valueOf(service),
+            Collections.singletonMap(AbstractModelService.INSTANCE_MODE.getName(), instanceMode));
+    fixture.enable();
+    factory = fixture.getService();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    fixture.close();
+  }
+
+  @Benchmark
+  public Object getInstance() {
+    return getAndRelease();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Object getInstanceContended() {
+    return getAndRelease();
+  }
+
+  private Object getAndRelease() {
+    final Object instance = factory.getInstance();
+    factory.release(instance);
+    return instance;
+  }
+
+}
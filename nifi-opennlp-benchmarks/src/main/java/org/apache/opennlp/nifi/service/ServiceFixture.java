@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.apache.opennlp.nifi.benchmark.BenchmarkModels;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One model service of each type on the benchmark models, added to a TestRunner that only exists to
+ * enable and disable it.
+ */
+final class ServiceFixture {
+
+  enum Type {
+    TOKENIZER, SENTENCE_DETECTOR, NAME_FINDER, LANGUAGE_DETECTOR
+  }
+
+  private final TestRunner runner = TestRunners.newTestRunner(NoOpProcessor.class);
+  private final AbstractModelService<?, ?> service;
+  private boolean enabled;
+
+  ServiceFixture(final Type type, final Map<String, String> properties) throws InitializationException {
+    final BenchmarkModels models = BenchmarkModels.get();
+    final File model;
+    switch (type) {
+      case TOKENIZER:
+        service = new TokenizerModelService();
+        model = models.getTokenizer();
+        break;
+      case SENTENCE_DETECTOR:
+        service = new SentenceDetectorModelService();
+        model = models.getSentenceDetector();
+        break;
+      case NAME_FINDER:
+        service = new NameFinderModelService();
+        model = models.getNameFinder();
+        break;
+      default:
+        service = new LanguageDetectorModelService();
+        model = models.getLanguageDetector();
+        break;
+    }
+    final Map<String, String> serviceProperties = new HashMap<>(properties);
+    serviceProperties.put(AbstractModelService.MODEL_PATH.getName(), model.getAbsolutePath());
+    runner.addControllerService(type.name(), service, serviceProperties);
+  }
+
+  @SuppressWarnings("unchecked")
+  <T> ServiceFactory<T> getService() {
+    return (ServiceFactory<T>) service;
+  }
+
+  void enable() {
+    runner.enableControllerService(service);
+    enabled = true;
+  }
+
+  void disable() {
+    runner.disableControllerService(service);
+    enabled = false;
+  }
+
+  void close() {
+    if (enabled) {
+      disable();
+    }
+  }
+
+  public static class NoOpProcessor extends AbstractProcessor {
+    @Override
+    public void onTrigger(ProcessContext context, ProcessSession session) {
+    }
+  }
+
+}
@@ -18,29 +18,57 @@
 package org.apache.nifi.processors.standard;
 
 import opennlp.tools.util.Span;
+import org.apache.nifi.annotation.lifecycle.OnRemoved;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
+import org.apache.nifi.components.AllowableValue;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.controller.ControllerService;
 import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.util.StandardValidators;
 import org.apache.nifi.record.path.FieldValue;
 import org.apache.nifi.record.path.RecordPath;
-import org.apache.nifi.record.path.RecordPathResult;
 import org.apache.nifi.record.path.util.RecordPathCache;
 import org.apache.nifi.record.path.validation.RecordPathValidator;
+import org.apache.nifi.schema.access.SchemaNotFoundException;
+import org.apache.nifi.serialization.MalformedRecordException;
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.RecordReaderFactory;
+import org.apache.nifi.serialization.RecordSetWriter;
+import org.apache.nifi.serialization.RecordSetWriterFactory;
 import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.WriteResult;
 import org.apache.nifi.serialization.record.MapRecord;
 import org.apache.nifi.serialization.record.Record;
 import org.apache.nifi.serialization.record.RecordField;
 import org.apache.nifi.serialization.record.RecordFieldType;
 import org.apache.nifi.serialization.record.RecordSchema;
+import org.apache.opennlp.nifi.AnnotateEvents;
+import org.apache.opennlp.nifi.AnnotationMetrics;
+import org.apache.opennlp.nifi.service.ServiceFactory;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
-import java.util.function.Function;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public abstract class AbstractOpenNLPRecordProcessor extends AbstractRecordProcessor {
 
@@ -48,6 +76,19 @@ public abstract class AbstractOpenNLPRecordProcessor extends AbstractRecordProce
   static final RecordField SPAN_END = new RecordField("end", RecordFieldType.INT.getDataType());
   static final RecordSchema SPAN_SCHEMA = new SimpleRecordSchema(Arrays.asList(SPAN_BEGIN, SPAN_END));
 
+  static final RecordField SPAN_BEGINS = new RecordField("begin", RecordFieldType.ARRAY.getArrayDataType(RecordFieldType.INT.getDataType()));
+  static final RecordField SPAN_ENDS = new RecordField("end", RecordFieldType.ARRAY.getArrayDataType(RecordFieldType.INT.getDataType()));
+  static final RecordSchema SPAN_COLUMNS_SCHEMA = new SimpleRecordSchema(Arrays.asList(SPAN_BEGINS, SPAN_ENDS));
+
+  static final String SPAN_FORMAT_RECORDS = "RECORDS";
+  static final String SPAN_FORMAT_COLUMNS = "COLUMNS";
+
+  static final AllowableValue[] SPAN_FORMAT_VALUES = new AllowableValue[] {
+          new AllowableValue(SPAN_FORMAT_RECORDS, "Records", "An array with a record per span, such as " +
+                  "[{\"begin\": 0, \"end\": 4}, {\"begin\": 5, \"end\": 7}]."),
+          new AllowableValue(SPAN_FORMAT_COLUMNS, "Columns", "A single record with an array per span field, such as " +
+                  "{\"begin\": [0, 5], \"end\": [4, 7]}. Much smaller for texts with many spans.") };
+
   static final PropertyDescriptor TEXT_RECORD_PATH_PD = new PropertyDescriptor.Builder()
           .name("text-record-path")
           .description("Path to a text.")
@@ -68,71 +109,648 @@ public abstract class AbstractOpenNLPRecordProcessor extends AbstractRecordProce
           .addValidator(new RecordPathValidator())
           .build();
 
-  private volatile RecordPathCache recordPathCache = new RecordPathCache(2);
+  static final PropertyDescriptor MODEL_KEY_PD = new PropertyDescriptor.Builder()
+          .name("model-key")
+          .displayName("Model Key")
+          .description("Key passed to the model services to choose a model, such as ${language.detected}. " +
+                  "Only model registry services use the key, services with a single model ignore it.")
+          .required(false)
+          .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .build();
+
+  static final PropertyDescriptor MODEL_KEY_ANNOTATION_PD = new PropertyDescriptor.Builder()
+          .name("model-key-annotation")
+          .displayName("Model Key Annotation Field")
+          .description("Name of an annotation field that holds the model key of each record, such as the language " +
+                  "field written by LanguageDetectRecord. When the record has this annotation it takes precedence " +
+                  "over the Model Key property.")
+          .required(false)
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .build();
+
+  static final PropertyDescriptor PARALLELISM_PD = new PropertyDescriptor.Builder()
+          .name("annotation-parallelism")
+          .displayName("Annotation Parallelism")
+          .description("Number of worker threads annotating the records of a FlowFile. With 1 the records are " +
+                  "annotated one after another by the task that reads them. With more, records are annotated " +
+                  "in parallel and written in their original order. The workers are shared by all concurrent tasks.")
+          .required(true)
+          .defaultValue("1")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .build();
+
+  static final PropertyDescriptor MAX_IN_FLIGHT_PD = new PropertyDescriptor.Builder()
+          .name("max-in-flight-records")
+          .displayName("Max In-Flight Records")
+          .description("Maximum number of records of a FlowFile that are read but not yet written when annotating " +
+                  "in parallel. Bounds the memory used per concurrent task.")
+          .required(true)
+          .defaultValue("1000")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .build();
+
+  static final PropertyDescriptor PIPELINE_PD = new PropertyDescriptor.Builder()
+          .name("pipelined-stages")
+          .displayName("Pipelined Stages")
+          .description("Reads, annotates and writes the records of a FlowFile on separate threads connected by " +
+                  "bounded queues, so parsing and serializing records overlaps with annotating them. Records are " +
+                  "written in their original order. With an Annotation Parallelism above 1 the records of each batch " +
+                  "are annotated by the workers. The time spent in each stage is added to the Pipeline counters.")
+          .required(true)
+          .allowableValues("true", "false")
+          .defaultValue("false")
+          .build();
+
+  static final PropertyDescriptor PIPELINE_BATCH_SIZE_PD = new PropertyDescriptor.Builder()
+          .name("pipeline-batch-size")
+          .displayName("Pipeline Batch Size")
+          .description("Number of records passed from one stage to the next at a time, when the stages are pipelined.")
+          .required(true)
+          .defaultValue("100")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .build();
+
+  static final PropertyDescriptor PIPELINE_QUEUE_DEPTH_PD = new PropertyDescriptor.Builder()
+          .name("pipeline-queue-depth")
+          .displayName("Pipeline Queue Depth")
+          .description("Number of batches that can wait between two stages, when the stages are pipelined. Together " +
+                  "with the batch size it bounds the records held in memory per concurrent task.")
+          .required(true)
+          .defaultValue("4")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .build();
+
+  static final PropertyDescriptor ANNOTATION_CACHE_SIZE_PD = new PropertyDescriptor.Builder()
+          .name("annotation-cache-size")
+          .displayName("Annotation Cache Size")
+          .description("Estimated memory used to remember the annotations of texts already seen, so repeated texts " +
+                  "are annotated once. The least recently used annotations are dropped first. The cache is cleared " +
+                  "when the processor is started. 0 B disables the cache.")
+          .required(true)
+          .defaultValue("0 B")
+          .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+          .build();
+
+  static final PropertyDescriptor SPAN_FORMAT_PD = new PropertyDescriptor.Builder()
+          .name("span-format")
+          .displayName("Span Format")
+          .description("How span annotations are written. Span annotations of both formats can be read by the " +
+                  "processors that use tokens.")
+          .required(true)
+          .allowableValues(SPAN_FORMAT_VALUES)
+          .defaultValue(SPAN_FORMAT_RECORDS)
+          .build();
+
+  // a path to a child of the root record, such as /body
+  private static final Pattern CHILD_FIELD_PATH = Pattern.compile("/[A-Za-z_][A-Za-z0-9_]*");
+
+  private final RecordPathCache recordPathCache = new RecordPathCache(2);
+  private final ThreadLocal<RecordPaths> flowFilePaths = new ThreadLocal<>();
+  private final ThreadLocal<RecordState> recordState = ThreadLocal.withInitial(RecordState::new);
+  private volatile String modelKeyAnnotation;
+  private volatile RecordPaths scheduledPaths;
+  private volatile ExecutorService workers;
+  private volatile ExecutorService stages;
+  private volatile SpanCache spanCache;
+  private volatile boolean columns;
+  private volatile List<ServiceFactory<?>> modelServices = new ArrayList<>();
+  private volatile AnnotationMetrics metrics = AnnotationMetrics.detached(getClass().getSimpleName());
+  private volatile AnnotateEvents events = AnnotateEvents.detached(getClass().getSimpleName());
 
   @Override
   protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
     List<PropertyDescriptor> propertyDescriptors = super.getSupportedPropertyDescriptors();
     propertyDescriptors.add(TEXT_RECORD_PATH_PD);
     propertyDescriptors.add(ANNOTATION_RECORD_PATH_PD);
+    propertyDescriptors.add(MODEL_KEY_PD);
+    propertyDescriptors.add(MODEL_KEY_ANNOTATION_PD);
+    propertyDescriptors.add(PARALLELISM_PD);
+    propertyDescriptors.add(MAX_IN_FLIGHT_PD);
+    propertyDescriptors.add(PIPELINE_PD);
+    propertyDescriptors.add(PIPELINE_BATCH_SIZE_PD);
+    propertyDescriptors.add(PIPELINE_QUEUE_DEPTH_PD);
+    propertyDescriptors.add(AnnotateEvents.THRESHOLD);
     return propertyDescriptors;
   }
 
+  @OnScheduled
+  public void startWorkers(final ProcessContext context) {
+    final int parallelism = context.getProperty(PARALLELISM_PD).asInteger();
+    if (parallelism > 1) {
+      workers = Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory("OpenNLP Annotator " + getIdentifier()));
+    }
+    if (context.getProperty(PIPELINE_PD).asBoolean()) {
+      // a reader and an annotator per concurrent task
+      stages = Executors.newCachedThreadPool(new WorkerThreadFactory("OpenNLP Pipeline " + getIdentifier()));
+    }
+  }
+
+  @OnStopped
+  public void stopWorkers() {
+    final ExecutorService executor = workers;
+    workers = null;
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    final ExecutorService stageExecutor = stages;
+    stages = null;
+    if (stageExecutor != null) {
+      stageExecutor.shutdownNow();
+    }
+  }
+
+  @Override
+  public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+    if (isLoading(modelServices)) {
+      // FlowFiles stay queued until the models are loaded
+      context.yield();
+      return;
+    }
+
+    final ExecutorService executor = workers;
+    final ExecutorService stageExecutor = stages;
+    final long start = System.nanoTime();
+    try {
+      if (stageExecutor != null) {
+        annotatePipelined(context, session, stageExecutor, executor);
+      } else if (executor == null) {
+        try {
+          super.onTrigger(context, session);
+        } finally {
+          // do not keep the FlowFile referenced until this thread processes the next one
+          flowFilePaths.remove();
+        }
+      } else {
+        annotateInParallel(context, session, executor);
+      }
+    } finally {
+      metrics.recordTrigger(System.nanoTime() - start);
+      metrics.adjustCounters(session);
+      reportCacheCounters(session);
+    }
+  }
+
+  private void reportCacheCounters(final ProcessSession session) {
+    final SpanCache cache = spanCache;
+    if (cache == null) {
+      return;
+    }
+    final long hits = cache.drainHits();
+    final long misses = cache.drainMisses();
+    final long evictions = cache.drainEvictions();
+    if (hits > 0) {
+      session.adjustCounter("Annotation Cache Hits", hits, false);
+    }
+    if (misses > 0) {
+      session.adjustCounter("Annotation Cache Misses", misses, false);
+    }
+    if (evictions > 0) {
+      session.adjustCounter("Annotation Cache Evictions", evictions, false);
+    }
+  }
+
+  private void annotateInParallel(final ProcessContext context, final ProcessSession session, final ExecutorService executor) {
+    final int maxInFlight = context.getProperty(MAX_IN_FLIGHT_PD).asInteger();
+
+    annotateFlowFile(context, session, (reader, writer, original) -> {
+      // records are annotated by the workers, and written in read order once done
+      final RecordPaths paths = resolvePaths(context, original);
+      final Deque<Future<Record>> inFlight = new ArrayDeque<>();
+      try {
+        Record record;
+        while ((record = reader.nextRecord()) != null) {
+          final Record current = record;
+          inFlight.add(executor.submit(() -> process(current, paths, context)));
+          if (inFlight.size() >= maxInFlight) {
+            writer.write(awaitRecord(inFlight.poll()));
+          }
+        }
+        while (!inFlight.isEmpty()) {
+          writer.write(awaitRecord(inFlight.poll()));
+        }
+      } finally {
+        for (Future<Record> pending : inFlight) {
+          pending.cancel(true);
+        }
+      }
+    });
+  }
+
+  private void annotatePipelined(final ProcessContext context, final ProcessSession session,
+                                 final ExecutorService stageExecutor, final ExecutorService executor) {
+    final RecordPipeline pipeline = new RecordPipeline(stageExecutor, executor,
+            context.getProperty(PIPELINE_BATCH_SIZE_PD).asInteger(), context.getProperty(PIPELINE_QUEUE_DEPTH_PD).asInteger());
+
+    annotateFlowFile(context, session, (reader, writer, original) -> {
+      final RecordPaths paths = resolvePaths(context, original);
+      pipeline.run(reader, writer, (record, recordIndex) -> process(record, paths, context));
+    });
+
+    pipeline.adjustCounters(session);
+    getLogger().debug("Pipeline stages: {}", new Object[] {pipeline});
+  }
+
+  /**
+   * Reads, annotates and writes the records of a FlowFile the way the loop chooses.
+   */
+  private interface RecordLoop {
+    void annotateAll(RecordReader reader, RecordSetWriter writer, FlowFile original)
+            throws IOException, MalformedRecordException;
+  }
+
+  private void annotateFlowFile(final ProcessContext context, final ProcessSession session, final RecordLoop loop) {
+    FlowFile flowFile = session.get();
+    if (flowFile == null) {
+      return;
+    }
+
+    final RecordReaderFactory readerFactory = context.getProperty(RECORD_READER).asControllerService(RecordReaderFactory.class);
+    final RecordSetWriterFactory writerFactory = context.getProperty(RECORD_WRITER).asControllerService(RecordSetWriterFactory.class);
+
+    final Map<String, String> attributes = new HashMap<>();
+    final AtomicInteger recordCount = new AtomicInteger();
+
+    final FlowFile original = flowFile;
+    final Map<String, String> originalAttributes = flowFile.getAttributes();
+    try {
+      flowFile = session.write(flowFile, (in, out) -> {
+        try (final RecordReader reader = readerFactory.createRecordReader(originalAttributes, in, getLogger())) {
+
+          final RecordSchema writeSchema = writerFactory.getSchema(originalAttributes, reader.getSchema());
+          try (final RecordSetWriter writer = writerFactory.createWriter(getLogger(), writeSchema, out, originalAttributes)) {
+            writer.beginRecordSet();
+            loop.annotateAll(reader, writer, original);
+
+            final WriteResult writeResult = writer.finishRecordSet();
+            attributes.put("record.count", String.valueOf(writeResult.getRecordCount()));
+            attributes.put(CoreAttributes.MIME_TYPE.key(), writer.getMimeType());
+            attributes.putAll(writeResult.getAttributes());
+            recordCount.set(writeResult.getRecordCount());
+          }
+        } catch (final SchemaNotFoundException e) {
+          throw new ProcessException(e.getLocalizedMessage(), e);
+        } catch (final MalformedRecordException e) {
+          throw new ProcessException("Could not parse incoming data", e);
+        }
+      });
+    } catch (final Exception e) {
+      getLogger().error("Failed to process {}; will route to failure", new Object[] {flowFile, e});
+      session.transfer(flowFile, REL_FAILURE);
+      return;
+    }
+
+    flowFile = session.putAllAttributes(flowFile, attributes);
+    session.transfer(flowFile, REL_SUCCESS);
+
+    final int count = recordCount.get();
+    session.adjustCounter("Records Processed", count, false);
+    getLogger().info("Successfully converted {} records for {}", new Object[] {count, flowFile});
+  }
+
+  private static Record awaitRecord(final Future<Record> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessException("Interrupted while waiting for annotated record", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new ProcessException(e.getCause());
+    }
+  }
+
+  @OnScheduled
+  public void createPlan(final ProcessContext context) {
+    // without expression language the paths are the same for every FlowFile
+    if (context.getProperty(TEXT_RECORD_PATH_PD).isExpressionLanguagePresent()
+            || context.getProperty(ANNOTATION_RECORD_PATH_PD).isExpressionLanguagePresent()
+            || context.getProperty(MODEL_KEY_PD).isExpressionLanguagePresent()) {
+      scheduledPaths = null;
+    } else {
+      scheduledPaths = compilePaths(context, null);
+    }
+    modelKeyAnnotation = context.getProperty(MODEL_KEY_ANNOTATION_PD).getValue();
+    metrics = AnnotationMetrics.register(getIdentifier(), getClass().getSimpleName());
+    events = AnnotateEvents.create(context, getIdentifier(), getClass().getSimpleName());
+
+    final long cacheSize = getSupportedPropertyDescriptors().contains(ANNOTATION_CACHE_SIZE_PD)
+            ? context.getProperty(ANNOTATION_CACHE_SIZE_PD).asDataSize(DataUnit.B).longValue() : 0L;
+    spanCache = cacheSize > 0 ? new SpanCache(cacheSize) : null;
+
+    columns = getSupportedPropertyDescriptors().contains(SPAN_FORMAT_PD)
+            && SPAN_FORMAT_COLUMNS.equals(context.getProperty(SPAN_FORMAT_PD).getValue());
+
+    setup(context);
+
+    final List<ServiceFactory<?>> services = new ArrayList<>();
+    for (PropertyDescriptor descriptor : getSupportedPropertyDescriptors()) {
+      final Class<? extends ControllerService> definition = descriptor.getControllerServiceDefinition();
+      if (definition != null && ServiceFactory.class.isAssignableFrom(definition) && context.getProperty(descriptor).isSet()) {
+        services.add((ServiceFactory<?>) context.getProperty(descriptor).asControllerService());
+      }
+    }
+    modelServices = services;
+  }
+
+  static boolean isLoading(final List<ServiceFactory<?>> services) {
+    for (ServiceFactory<?> service : services) {
+      if (service.isLoading()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Resolves everything annotate() needs that does not change while the processor is scheduled,
+   * such as annotation fields, services and tokenizer choice.
+   */
+  protected abstract void setup(ProcessContext context);
+
   @Override
   protected Record process(final Record record, final FlowFile flowFile, final ProcessContext context, final long recordIndex) {
+    return process(record, getRecordPaths(context, flowFile), context);
+  }
 
-    String inputRecordPathString = context.getProperty(TEXT_RECORD_PATH_PD)
-            .evaluateAttributeExpressions(flowFile).getValue();
+  private Record process(final Record record, final RecordPaths paths, final ProcessContext context) {
+    final Object textValue = selectOne(record, paths.text, paths.textField,
+            "There should not be more than one text field for nlp processing");
+    MapRecord annotations = (MapRecord) selectOne(record, paths.annotations, paths.annotationsField,
+            "There should not be more than one annotation map!");
 
-    final RecordPath inputRecordPath = recordPathCache.getCompiled(inputRecordPathString);
-    final RecordPathResult inputRecordPathResult = inputRecordPath.evaluate(record);
+    final String text = String.valueOf(textValue);
+    final String modelKey = modelKey(paths, annotations);
+    final RecordState state = recordState.get();
+    state.modelKey = modelKey;
+    state.annotations = 0L;
+    final Object event = events.begin();
+    final long start = System.nanoTime();
+    try {
+      annotate(context, annotations, text);
+    } finally {
+      state.modelKey = null;
+    }
+    final long nanos = System.nanoTime() - start;
+    metrics.recordAnnotate(text.length(), nanos);
+    events.end(event, nanos, text.length(), text, state.annotations, modelKey);
 
-    if (!inputRecordPath.isAbsolute())
-      throw new RuntimeException("Path to text must be a absolute path");
+    return record;
+  }
+
+  /**
+   * Value of the one field selected by the path. A path to a child of the root, such as /body, is read
+   * straight from the record without evaluating the path, unless the field is missing or null.
+   */
+  private static Object selectOne(final Record record, final RecordPath path, final String field, final String error) {
+    if (field != null) {
+      final Object value = record.getValue(field);
+      if (value != null) {
+        return value;
+      }
+    }
+
+    final List<FieldValue> selected = path.evaluate(record).getSelectedFields().collect(Collectors.toList());
+    if (selected.size() > 1) {
+      throw new RuntimeException(error);
+    }
+    return selected.get(0).getValue();
+  }
+
+  private String modelKey(final RecordPaths paths, final MapRecord annotations) {
+    final String field = modelKeyAnnotation;
+    if (field != null) {
+      final Object value = annotations.getValue(field);
+      if (value instanceof Record) {
+        // a language annotation
+        final String lang = ((Record) value).getAsString(LanguageDetectRecord.LANG.getFieldName());
+        if (lang != null) {
+          return lang;
+        }
+      } else if (value != null) {
+        return value.toString();
+      }
+    }
+    return paths.modelKey;
+  }
 
-    final List<Object> textFields = inputRecordPathResult.getSelectedFields().map(FieldValue::getValue)
-            .collect(Collectors.toList());
+  @OnRemoved
+  public void removeMetrics() {
+    AnnotationMetrics.unregister(getIdentifier());
+  }
+
+  /**
+   * Counts annotations written by annotate(), such as spans or a detected language.
+   */
+  protected void addAnnotations(final long count) {
+    metrics.addAnnotations(count);
+    recordState.get().annotations += count;
+  }
+
+  /**
+   * Model key of the record being annotated, to pass to the model services. Null when no key is configured.
+   */
+  protected String getModelKey() {
+    return recordState.get().modelKey;
+  }
 
-    if (textFields.size() > 1) {
-      throw new RuntimeException("There should not be more than one text field for nlp processing");
+  /**
+   * Cache of spans computed for texts already seen, or null when the cache is disabled.
+   */
+  SpanCache getSpanCache() {
+    return spanCache;
+  }
+
+  private RecordPaths getRecordPaths(final ProcessContext context, final FlowFile flowFile) {
+    final RecordPaths paths = scheduledPaths;
+    if (paths != null) {
+      return paths;
     }
 
-    String annRecordPathString = context.getProperty(ANNOTATION_RECORD_PATH_PD)
-            .evaluateAttributeExpressions(flowFile).getValue();
+    // without workers the records of a FlowFile are processed by the onTrigger thread, which clears
+    // the paths once the FlowFile is done; evaluate the paths once per FlowFile
+    RecordPaths flowFileScoped = flowFilePaths.get();
+    if (flowFileScoped == null || flowFileScoped.flowFile != flowFile) {
+      flowFileScoped = compilePaths(context, flowFile);
+      flowFilePaths.set(flowFileScoped);
+    }
+    return flowFileScoped;
+  }
+
+  /**
+   * Paths for the records of a FlowFile that are handed to other threads.
+   */
+  private RecordPaths resolvePaths(final ProcessContext context, final FlowFile flowFile) {
+    final RecordPaths paths = scheduledPaths;
+    return paths != null ? paths : compilePaths(context, flowFile);
+  }
+
+  private RecordPaths compilePaths(final ProcessContext context, final FlowFile flowFile) {
+    final RecordPath textPath = recordPathCache.getCompiled(context.getProperty(TEXT_RECORD_PATH_PD)
+            .evaluateAttributeExpressions(flowFile).getValue());
+
+    if (!textPath.isAbsolute())
+      throw new RuntimeException("Path to text must be a absolute path");
 
-    final RecordPath annRecordPath = recordPathCache.getCompiled(annRecordPathString);
-    final RecordPathResult annRecordPathResult = annRecordPath.evaluate(record);
+    final RecordPath annotationPath = recordPathCache.getCompiled(context.getProperty(ANNOTATION_RECORD_PATH_PD)
+            .evaluateAttributeExpressions(flowFile).getValue());
 
-    if (!annRecordPath.isAbsolute())
+    if (!annotationPath.isAbsolute())
       throw new RuntimeException("Path to annotations must be a absolute path");
 
-    final List<FieldValue> annotationFieldValue = annRecordPathResult.getSelectedFields()
-            .collect(Collectors.toList());
+    final String modelKey = context.getProperty(MODEL_KEY_PD).evaluateAttributeExpressions(flowFile).getValue();
 
-    if (annotationFieldValue.size() > 1) {
-      throw new RuntimeException("There should not be more than one annotation map!");
+    return new RecordPaths(flowFile, textPath, annotationPath, modelKey);
+  }
+
+  private static class WorkerThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    WorkerThreadFactory(String name) {
+      this.prefix = name + "-";
     }
 
-    MapRecord annotations = (MapRecord) annotationFieldValue.get(0).getValue();
-    annotate(context, annotations, String.valueOf(textFields.get(0)));
+    @Override
+    public Thread newThread(Runnable runnable) {
+      final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
 
-    return record;
+  /**
+   * Model key and annotation count of the record a thread is annotating.
+   */
+  private static class RecordState {
+    String modelKey;
+    long annotations;
+  }
+
+  private static class RecordPaths {
+    final FlowFile flowFile;
+    final RecordPath text;
+    final RecordPath annotations;
+    final String modelKey;
+
+    // field names of paths to a child of the root, null for other paths
+    final String textField;
+    final String annotationsField;
+
+    RecordPaths(FlowFile flowFile, RecordPath text, RecordPath annotations, String modelKey) {
+      this.flowFile = flowFile;
+      this.text = text;
+      this.annotations = annotations;
+      this.modelKey = modelKey;
+      this.textField = childField(text);
+      this.annotationsField = childField(annotations);
+    }
+
+    private static String childField(final RecordPath path) {
+      final String text = path.getPath().trim();
+      return CHILD_FIELD_PATH.matcher(text).matches() ? text.substring(1) : null;
+    }
   }
 
   public abstract void annotate(ProcessContext context, MapRecord annotations, String text);
 
+  /**
+   * True when span annotations are written as a record of arrays rather than an array of records.
+   */
+  protected boolean isColumns() {
+    return columns;
+  }
+
+  /**
+   * Spans as an annotation value in the configured span format.
+   */
+  protected Object spansToAnnotation(Span[] spans) {
+    addAnnotations(spans.length);
+    return columns ? spansToColumns(spans) : spansToRecordList(spans);
+  }
+
+  protected Object spansToAnnotation(SpanBuffer spans) {
+    addAnnotations(spans.size());
+    return columns ? spansToColumns(spans) : spansToRecordList(spans);
+  }
+
+  static Record spansToColumns(Span[] spans) {
+    final Object[] begins = new Object[spans.length];
+    final Object[] ends = new Object[spans.length];
+    for (int i = 0; i < spans.length; i++) {
+      begins[i] = spans[i].getStart();
+      ends[i] = spans[i].getEnd();
+    }
+    return spanRecord(SPAN_COLUMNS_SCHEMA, begins, ends);
+  }
+
+  static Record spansToColumns(SpanBuffer spans) {
+    final Object[] begins = new Object[spans.size()];
+    final Object[] ends = new Object[spans.size()];
+    for (int i = 0; i < spans.size(); i++) {
+      begins[i] = spans.begin(i);
+      ends[i] = spans.end(i);
+    }
+    return spanRecord(SPAN_COLUMNS_SCHEMA, begins, ends);
+  }
+
+  /**
+   * Map for the values of a record with the given number of fields, large enough to never be resized.
+   */
+  static Map<String, Object> recordValues(final int fields) {
+    return new HashMap<>(fields * 4 / 3 + 1);
+  }
+
+  /**
+   * A span record, or a columns record, with its values put straight into the map. Setting the values
+   * on the record would look up each field in the schema.
+   */
+  static Record spanRecord(final RecordSchema schema, final Object begin, final Object end) {
+    final Map<String, Object> values = recordValues(2);
+    values.put(SPAN_BEGIN.getFieldName(), begin);
+    values.put(SPAN_END.getFieldName(), end);
+    return new MapRecord(schema, values);
+  }
+
+  /**
+   * Reads the offsets of a span annotation in either span format into the buffer, without copying any text.
+   */
+  static SpanBuffer readSpans(final Object annotation, final SpanBuffer spans) {
+    if (annotation instanceof Record) {
+      final Record columnsRecord = (Record) annotation;
+      final Object[] begins = columnsRecord.getAsArray(SPAN_BEGINS.getFieldName());
+      final Object[] ends = columnsRecord.getAsArray(SPAN_ENDS.getFieldName());
+      for (int i = 0; i < begins.length; i++) {
+        spans.add(((Number) begins[i]).intValue(), ((Number) ends[i]).intValue());
+      }
+      return spans;
+    }
+
+    final Object[] spanRecords = annotation instanceof List ? ((List<?>) annotation).toArray() : (Object[]) annotation;
+    for (Object spanRecord : spanRecords) {
+      final Record span = (Record) spanRecord;
+      spans.add(((Number) span.getValue(SPAN_BEGIN.getFieldName())).intValue(),
+              ((Number) span.getValue(SPAN_END.getFieldName())).intValue());
+    }
+    return spans;
+  }
+
   protected List<Record> spansToRecordList(Span[] spans) {
-    return Stream.of(spans).map(SpanToRecord).collect(Collectors.toList());
+    final List<Record> records = new ArrayList<>(spans.length);
+    for (Span span : spans) {
+      records.add(spanRecord(SPAN_SCHEMA, span.getStart(), span.getEnd()));
+    }
+    return records;
   }
 
-  private Function<Span, Record> SpanToRecord = new Function<Span, Record>() {
-    @Override
-    public Record apply(Span span) {
-      final Record mapRecord = new MapRecord(SPAN_SCHEMA, new HashMap<>(2));
-      mapRecord.setValue(SPAN_BEGIN, span.getStart());
-      mapRecord.setValue(SPAN_END, span.getEnd());
-      return mapRecord;
+  protected List<Record> spansToRecordList(SpanBuffer spans) {
+    final List<Record> records = new ArrayList<>(spans.size());
+    for (int i = 0; i < spans.size(); i++) {
+      records.add(spanRecord(SPAN_SCHEMA, spans.begin(i), spans.end(i)));
     }
-  };
+    return records;
+  }
 
 }
@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.standard;
+
+import opennlp.tools.langdetect.Language;
+import opennlp.tools.langdetect.LanguageDetector;
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.sentdetect.NewlineSentenceDetector;
+import opennlp.tools.sentdetect.SentenceDetector;
+import opennlp.tools.tokenize.SimpleTokenizer;
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.tokenize.WhitespaceTokenizer;
+import opennlp.tools.util.Span;
+import org.apache.nifi.annotation.behavior.EventDriven;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.SideEffectFree;
+import org.apache.nifi.annotation.behavior.SupportsBatching;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.components.AllowableValue;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.opennlp.nifi.service.LanguageDetectorService;
+import org.apache.opennlp.nifi.service.NameFinderService;
+import org.apache.opennlp.nifi.service.SentenceDetectorService;
+import org.apache.opennlp.nifi.service.TokenizerService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+@EventDriven
+@SideEffectFree
+@SupportsBatching
+@InputRequirement(InputRequirement.Requirement.INPUT_REQUIRED)
+@Tags({"record", "schema", "json", "csv", "avro", "nlp", "opennlp", "tokenize", "sentence", "namefinder", "language", "detect"})
+@CapabilityDescription("Updates the content by running sentence detection, tokenization, name finding and language " +
+        "detection on the text identified by the TEXT_RECORD_PATH property in a single pass over each record. " +
+        "Stages without a configured model type or service are skipped. The name finder uses the tokens of " +
+        "the tokenizer stage directly. All annotations are written to the dictionary identified by the " +
+        "ANNOTATION_RECORD_PATH property, with keys identified by the annotation field properties.")
+@SeeAlso({SentenceDetectRecord.class, TokenizeRecord.class, NamefindRecord.class, LanguageDetectRecord.class})
+public class AnnotateRecord extends AbstractOpenNLPRecordProcessor {
+
+  static final String NONE = "NONE";
+
+  static final AllowableValue[] SENTENCE_MODEL_VALUES = new AllowableValue[] {
+          new AllowableValue(NONE, "None", "Do not detect sentences."),
+          new AllowableValue(SentenceDetectRecord.NEWLINE_BASED, "New Line", "Use OpenNLP NewlineSentenceDetector."),
+          new AllowableValue(SentenceDetectRecord.FILE_BASED, "Model", "Use the Sentence Detector Service.") };
+
+  static final AllowableValue[] TOKENIZER_MODEL_VALUES = new AllowableValue[] {
+          new AllowableValue(NONE, "None", "Do not tokenize."),
+          new AllowableValue(TokenizeRecord.WHITESPACE_RULE_BASED, "Whitespace", "Use OpenNLP WhitespaceTokenizer."),
+          new AllowableValue(TokenizeRecord.SIMPLE_RULE_BASED, "Simple", "Use OpenNLP SimpleTokenizer."),
+          new AllowableValue(TokenizeRecord.MODEL_BASED, "Model", "Use the Tokenizer Service.") };
+
+  static final PropertyDescriptor SENTENCE_MODEL_TYPE_PD = new PropertyDescriptor.Builder()
+          .name("opennlp-sentence-model-type")
+          .displayName("Sentence Model Type")
+          .description("Sentence detector to use, or None to skip sentence detection.")
+          .required(true)
+          .allowableValues(SENTENCE_MODEL_VALUES)
+          .defaultValue(NONE)
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .build();
+
+  static final PropertyDescriptor SENTENCE_DETECTOR_SERVICE_PD = new PropertyDescriptor.Builder()
+          .name("opennlp-sentence-detector-service")
+          .displayName("Sentence Detector Service")
+          .description("OpenNLP Sentence Detector Service, used when the sentence model type is Model.")
+          .required(false)
+          .identifiesControllerService(SentenceDetectorService.class)
+          .build();
+
+  static final PropertyDescriptor SENTENCES_NAME_PD = new PropertyDescriptor.Builder()
+          .name("sentences-annotation-name")
+          .displayName("Sentence Annotation Field")
+          .description("Name of sentences field in the annotations.")
+          .defaultValue("sentences")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .build();
+
+  static final PropertyDescriptor TOKENIZER_MODEL_TYPE_PD = new PropertyDescriptor.Builder()
+          .name("opennlp-tokenizer-model-type")
+          .displayName("Tokenizer Model Type")
+          .description("Tokenizer to use, or None to skip tokenization.")
+          .required(true)
+          .allowableValues(TOKENIZER_MODEL_VALUES)
+          .defaultValue(TokenizeRecord.SIMPLE_RULE_BASED)
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .build();
+
+  static final PropertyDescriptor TOKENIZER_SERVICE_PD = new PropertyDescriptor.Builder()
+          .name("opennlp-tokenizer-service")
+          .displayName("Tokenizer Service")
+          .description("OpenNLP Tokenizer Service, used when the tokenizer model type is Model.")
+          .required(false)
+          .identifiesControllerService(TokenizerService.class)
+          .build();
+
+  static final PropertyDescriptor TOKENS_NAME_PD = new PropertyDescriptor.Builder()
+          .name("tokens-annotation-name")
+          .displayName("Token Annotations Field")
+          .description("Name of tokens field in the annotations.")
+          .defaultValue("tokens")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .build();
+
+  static final PropertyDescriptor NAME_FINDER_SERVICE_PD = new PropertyDescriptor.Builder()
+          .name("opennlp-name-finder-service")
+          .displayName("Name Finder Service")
+          .description("OpenNLP Name Finder Service. Names are only found when set, and require a tokenizer.")
+          .required(false)
+          .identifiesControllerService(NameFinderService.class)
+          .build();
+
+  static final PropertyDescriptor NAMES_NAME_PD = new PropertyDescriptor.Builder()
+          .name("names-annotation-name")
+          .displayName("Name Annotation Field")
+          .description("Name of the names field in the annotations.")
+          .defaultValue("names")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .build();
+
+  static final PropertyDescriptor LANGUAGE_DETECTOR_SERVICE_PD = new PropertyDescriptor.Builder()
+          .name("opennlp-language-detector-service")
+          .displayName("Language Detector Service")
+          .description("OpenNLP Language Detector Service. The language is only detected when set.")
+          .required(false)
+          .identifiesControllerService(LanguageDetectorService.class)
+          .build();
+
+  static final PropertyDescriptor LANGUAGE_NAME_PD = new PropertyDescriptor.Builder()
+          .name("language-annotation-name")
+          .displayName("Language Annotation Field")
+          .description("Name of language field in the annotations.")
+          .defaultValue("language")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .build();
+
+  private static final SentenceDetector NEWLINE_DETECTOR = new NewlineSentenceDetector();
+
+  @Override
+  protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+    List<PropertyDescriptor> propertyDescriptors = super.getSupportedPropertyDescriptors();
+    propertyDescriptors.add(SENTENCE_MODEL_TYPE_PD);
+    propertyDescriptors.add(SENTENCE_DETECTOR_SERVICE_PD);
+    propertyDescriptors.add(SENTENCES_NAME_PD);
+    propertyDescriptors.add(TOKENIZER_MODEL_TYPE_PD);
+    propertyDescriptors.add(TOKENIZER_SERVICE_PD);
+    propertyDescriptors.add(TOKENS_NAME_PD);
+    propertyDescriptors.add(NAME_FINDER_SERVICE_PD);
+    propertyDescriptors.add(NAMES_NAME_PD);
+    propertyDescriptors.add(LANGUAGE_DETECTOR_SERVICE_PD);
+    propertyDescriptors.add(LANGUAGE_NAME_PD);
+    propertyDescriptors.add(SPAN_FORMAT_PD);
+    return propertyDescriptors;
+  }
+
+  @Override
+  protected Collection<ValidationResult> customValidate(ValidationContext context) {
+    final List<ValidationResult> results = new ArrayList<>(super.customValidate(context));
+
+    final String sentenceModelType = context.getProperty(SENTENCE_MODEL_TYPE_PD).getValue();
+    final String tokenizerModelType = context.getProperty(TOKENIZER_MODEL_TYPE_PD).getValue();
+
+    if (SentenceDetectRecord.FILE_BASED.equals(sentenceModelType) && !context.getProperty(SENTENCE_DETECTOR_SERVICE_PD).isSet()) {
+      results.add(new ValidationResult.Builder().subject(SENTENCE_DETECTOR_SERVICE_PD.getDisplayName()).valid(false)
+              .explanation("a Sentence Detector Service is required when the sentence model type is Model").build());
+    }
+    if (TokenizeRecord.MODEL_BASED.equals(tokenizerModelType) && !context.getProperty(TOKENIZER_SERVICE_PD).isSet()) {
+      results.add(new ValidationResult.Builder().subject(TOKENIZER_SERVICE_PD.getDisplayName()).valid(false)
+              .explanation("a Tokenizer Service is required when the tokenizer model type is Model").build());
+    }
+    if (NONE.equals(tokenizerModelType) && context.getProperty(NAME_FINDER_SERVICE_PD).isSet()) {
+      results.add(new ValidationResult.Builder().subject(NAME_FINDER_SERVICE_PD.getDisplayName()).valid(false)
+              .explanation("names can only be found when a tokenizer is configured").build());
+    }
+    return results;
+  }
+
+  private volatile SentenceDetectorService sentenceDetectorService;
+  private volatile SentenceDetector ruleBasedSentenceDetector;
+  private volatile TokenizerService tokenizerService;
+  private volatile Tokenizer ruleBasedTokenizer;
+  private volatile NameFinderService nameFinderService;
+  private volatile LanguageDetectorService languageDetectorService;
+
+  private volatile RecordField sentencesName;
+  private volatile RecordField tokensName;
+  private volatile RecordField namesName;
+  private volatile RecordField languageName;
+
+  @Override
+  protected void setup(ProcessContext context) {
+    sentenceDetectorService = null;
+    ruleBasedSentenceDetector = null;
+    switch (context.getProperty(SENTENCE_MODEL_TYPE_PD).getValue()) {
+      case SentenceDetectRecord.FILE_BASED:
+        sentenceDetectorService = context.getProperty(SENTENCE_DETECTOR_SERVICE_PD).asControllerService(SentenceDetectorService.class);
+        break;
+      case SentenceDetectRecord.NEWLINE_BASED:
+        ruleBasedSentenceDetector = NEWLINE_DETECTOR;
+        break;
+    }
+
+    tokenizerService = null;
+    ruleBasedTokenizer = null;
+    switch (context.getProperty(TOKENIZER_MODEL_TYPE_PD).getValue()) {
+      case TokenizeRecord.MODEL_BASED:
+        tokenizerService = context.getProperty(TOKENIZER_SERVICE_PD).asControllerService(TokenizerService.class);
+        break;
+      case TokenizeRecord.WHITESPACE_RULE_BASED:
+        ruleBasedTokenizer = WhitespaceTokenizer.INSTANCE;
+        break;
+      case TokenizeRecord.SIMPLE_RULE_BASED:
+        ruleBasedTokenizer = SimpleTokenizer.INSTANCE;
+        break;
+    }
+
+    nameFinderService = context.getProperty(NAME_FINDER_SERVICE_PD).asControllerService(NameFinderService.class);
+    languageDetectorService = context.getProperty(LANGUAGE_DETECTOR_SERVICE_PD).asControllerService(LanguageDetectorService.class);
+
+    sentencesName = new RecordField(context.getProperty(SENTENCES_NAME_PD).getValue(), RecordFieldType.MAP.getDataType());
+    tokensName = new RecordField(context.getProperty(TOKENS_NAME_PD).getValue(), RecordFieldType.MAP.getDataType());
+    namesName = new RecordField(context.getProperty(NAMES_NAME_PD).getValue(), RecordFieldType.MAP.getDataType());
+    languageName = new RecordField(context.getProperty(LANGUAGE_NAME_PD).getValue(), RecordFieldType.MAP.getDataType());
+  }
+
+  @Override
+  public void annotate(ProcessContext context, MapRecord annotations, String text) {
+
+    final Span[] sentenceSpans = detectSentences(text);
+    final Span[] tokenSpans = tokenize(text);
+
+    // the name finder works on the tokens of this pass, not on re-read token annotations
+    Span[] nameSpans = null;
+    if (tokenSpans != null && nameFinderService != null) {
+      nameSpans = findNames(Span.spansToStrings(tokenSpans, text));
+    }
+
+    Language language = null;
+    if (languageDetectorService != null) {
+      language = detectLanguage(text);
+    }
+
+    if (sentenceSpans != null) {
+      annotations.setValue(sentencesName, spansToAnnotation(sentenceSpans));
+    }
+    if (tokenSpans != null) {
+      annotations.setValue(tokensName, spansToAnnotation(tokenSpans));
+    }
+    if (nameSpans != null && nameSpans.length > 0) {
+      annotations.setValue(namesName, NamefindRecord.nameSpansToAnnotation(nameSpans, isColumns()));
+      addAnnotations(nameSpans.length);
+    }
+    if (language != null) {
+      annotations.setValue(languageName, LanguageDetectRecord.languageToRecord(language));
+      addAnnotations(1);
+    }
+  }
+
+  private Span[] detectSentences(String text) {
+    final SentenceDetectorService service = sentenceDetectorService;
+    if (service == null) {
+      final SentenceDetector detector = ruleBasedSentenceDetector;
+      return detector == null ? null : detector.sentPosDetect(text);
+    }
+    final String key = getModelKey();
+    final SentenceDetector detector = service.getInstance(key);
+    try {
+      return detector.sentPosDetect(text);
+    } finally {
+      service.release(key, detector);
+    }
+  }
+
+  private Span[] tokenize(String text) {
+    final TokenizerService service = tokenizerService;
+    if (service == null) {
+      final Tokenizer tokenizer = ruleBasedTokenizer;
+      return tokenizer == null ? null : tokenizer.tokenizePos(text);
+    }
+    final String key = getModelKey();
+    final Tokenizer tokenizer = service.getInstance(key);
+    try {
+      return tokenizer.tokenizePos(text);
+    } finally {
+      service.release(key, tokenizer);
+    }
+  }
+
+  private Span[] findNames(String[] tokens) {
+    final NameFinderService service = nameFinderService;
+    final String key = getModelKey();
+    final NameFinderME nameFinder = service.getInstance(key);
+    try {
+      return nameFinder.find(tokens);
+    } finally {
+      service.release(key, nameFinder);
+    }
+  }
+
+  private Language detectLanguage(String text) {
+    final LanguageDetectorService service = languageDetectorService;
+    final LanguageDetector detector = service.getInstance();
+    try {
+      return detector.predictLanguage(text);
+    } finally {
+      service.release(detector);
+    }
+  }
+
+}
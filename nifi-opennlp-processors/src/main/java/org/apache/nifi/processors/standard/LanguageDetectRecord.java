@@ -29,7 +29,11 @@ import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.SeeAlso;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
 import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.util.StandardValidators;
 import org.apache.nifi.serialization.SimpleRecordSchema;
 import org.apache.nifi.serialization.record.MapRecord;
@@ -38,11 +42,15 @@ import org.apache.nifi.serialization.record.RecordField;
 import org.apache.nifi.serialization.record.RecordFieldType;
 import org.apache.nifi.serialization.record.RecordSchema;
 import org.apache.opennlp.nifi.LanguageDetectProcessor;
+import org.apache.opennlp.nifi.LanguageSampler;
 import org.apache.opennlp.nifi.service.LanguageDetectorService;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 @EventDriven
 @SideEffectFree
@@ -83,27 +91,73 @@ public class LanguageDetectRecord extends AbstractOpenNLPRecordProcessor {
     List<PropertyDescriptor> propertyDescriptors = super.getSupportedPropertyDescriptors();
     propertyDescriptors.add(DETECTOR_SERVICE);
     propertyDescriptors.add(ANNOTATION_NAME);
+    propertyDescriptors.add(LanguageSampler.DETECTION_MODE);
+    propertyDescriptors.add(LanguageSampler.MAX_CHARACTERS);
+    propertyDescriptors.add(LanguageSampler.WINDOWS);
+    propertyDescriptors.add(LanguageSampler.MIN_CONFIDENCE);
     return propertyDescriptors;
   }
 
   @Override
-  public void annotate(ProcessContext context, MapRecord annotations, String text) {
+  protected Collection<ValidationResult> customValidate(ValidationContext context) {
+    final List<ValidationResult> results = new ArrayList<>(super.customValidate(context));
+    LanguageSampler.validateDetectorService(context, DETECTOR_SERVICE, results);
+    return results;
+  }
 
-    final LanguageDetectorService service = context.getProperty(DETECTOR_SERVICE)
-            .asControllerService(LanguageDetectorService.class);
+  private volatile LanguageDetectorService service;
+  private volatile RecordField annotationName;
+  private volatile LanguageSampler sampler;
+  private final AtomicLong characters = new AtomicLong();
 
-    final RecordField annotationName =
-            new RecordField(context.getProperty(ANNOTATION_NAME).getValue(), RecordFieldType.MAP.getDataType());
+  @Override
+  protected void setup(ProcessContext context) {
+    service = context.getProperty(DETECTOR_SERVICE).asControllerService(LanguageDetectorService.class);
+    annotationName = new RecordField(context.getProperty(ANNOTATION_NAME).getValue(), RecordFieldType.MAP.getDataType());
+    sampler = LanguageSampler.create(context);
+  }
 
-    LanguageDetector detector = service.getInstance();
-    Language language = detector.predictLanguage(text);
+  @Override
+  public void onTrigger(ProcessContext context, ProcessSession session) throws ProcessException {
+    try {
+      super.onTrigger(context, session);
+    } finally {
+      final long consumed = characters.getAndSet(0);
+      if (consumed > 0) {
+        session.adjustCounter("Language Detection Characters", consumed, false);
+      }
+      final LanguageDetectorService service = this.service;
+      if (service != null) {
+        service.adjustCounters(session);
+      }
+    }
+  }
 
-    final Record mapRecord = new MapRecord(SCHEMA, new HashMap<>(2));
-    mapRecord.setValue(LANG, language.getLang());
-    mapRecord.setValue(CONFIDENCE, language.getConfidence());
+  @Override
+  public void annotate(ProcessContext context, MapRecord annotations, String text) {
+
+    final LanguageDetectorService service = this.service;
 
-    annotations.setValue(annotationName, mapRecord);
+    LanguageDetector detector = service.getInstance();
+    LanguageSampler.Result result;
+    try {
+      result = sampler.detect(detector, text);
+    } finally {
+      service.release(detector);
+    }
+    characters.addAndGet(result.getCharacters());
+    final Language language = result.getLanguage();
+
+    annotations.setValue(annotationName, languageToRecord(language));
+    addAnnotations(1);
+
+  }
 
+  static Record languageToRecord(Language language) {
+    final Map<String, Object> values = recordValues(2);
+    values.put(LANG.getFieldName(), language.getLang());
+    values.put(CONFIDENCE.getFieldName(), language.getConfidence());
+    return new MapRecord(SCHEMA, values);
   }
 
 }
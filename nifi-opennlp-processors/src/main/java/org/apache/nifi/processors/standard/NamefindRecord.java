@@ -37,12 +37,10 @@ import org.apache.nifi.serialization.record.RecordFieldType;
 import org.apache.nifi.serialization.record.RecordSchema;
 import org.apache.opennlp.nifi.service.NameFinderService;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Map;
 
 @EventDriven
 @SideEffectFree
@@ -61,6 +59,10 @@ public class NamefindRecord extends AbstractOpenNLPRecordProcessor {
   static final RecordField SPAN_PROB = new RecordField("prob", RecordFieldType.DOUBLE.getDataType());
   static final RecordSchema NAME_SPAN_SCHEMA = new SimpleRecordSchema(Arrays.asList(SPAN_BEGIN, SPAN_END, SPAN_TYPE, SPAN_PROB));
 
+  static final RecordField SPAN_TYPES = new RecordField("type", RecordFieldType.ARRAY.getArrayDataType(RecordFieldType.STRING.getDataType()));
+  static final RecordField SPAN_PROBS = new RecordField("prob", RecordFieldType.ARRAY.getArrayDataType(RecordFieldType.DOUBLE.getDataType()));
+  static final RecordSchema NAME_COLUMNS_SCHEMA = new SimpleRecordSchema(Arrays.asList(SPAN_BEGINS, SPAN_ENDS, SPAN_TYPES, SPAN_PROBS));
+
   static final PropertyDescriptor DETECTOR_SERVICE_PD = new PropertyDescriptor.Builder()
           .name("opennlp-language-detector-service")
           .displayName("Language Detector Service")
@@ -92,54 +94,98 @@ public class NamefindRecord extends AbstractOpenNLPRecordProcessor {
     propertyDescriptors.add(DETECTOR_SERVICE_PD);
     propertyDescriptors.add(ANNOTATION_NAME_PD);
     propertyDescriptors.add(TOKENS_FIELD_PD);
+    propertyDescriptors.add(ANNOTATION_CACHE_SIZE_PD);
+    propertyDescriptors.add(SPAN_FORMAT_PD);
     return propertyDescriptors;
   }
 
-  @Override
-  public void annotate(ProcessContext context, MapRecord annotations, final String text) {
+  private volatile NameFinderService service;
+  private volatile RecordField annotationName;
+  private volatile RecordField tokensField;
 
-    final NameFinderService service = context.getProperty(DETECTOR_SERVICE_PD)
-            .asControllerService(NameFinderService.class);
-
-    final RecordField annotationName =
-            new RecordField(context.getProperty(ANNOTATION_NAME_PD).getValue(), RecordFieldType.MAP.getDataType());
+  @Override
+  protected void setup(ProcessContext context) {
+    service = context.getProperty(DETECTOR_SERVICE_PD).asControllerService(NameFinderService.class);
+    annotationName = new RecordField(context.getProperty(ANNOTATION_NAME_PD).getValue(), RecordFieldType.MAP.getDataType());
+    tokensField = new RecordField(context.getProperty(TOKENS_FIELD_PD).getValue(), RecordFieldType.MAP.getDataType());
+  }
 
-    final RecordField tokensField =
-            new RecordField(context.getProperty(TOKENS_FIELD_PD).getValue(), RecordFieldType.MAP.getDataType());
+  @Override
+  public void annotate(ProcessContext context, MapRecord annotations, final String text) {
 
-    NameFinderME nameFinder = service.getInstance();
+    final NameFinderService service = this.service;
 
     if (annotations.getValue(tokensField) == null) {
       // TODO:
       throw new RuntimeException("TODO");
     }
 
-    // get tokens
-    String[] tokens = Stream.of(annotations.getAsArray(tokensField.getFieldName()))
-            .map(o -> (MapRecord) o)
-            .map(m -> text.substring(m.getAsInt(SPAN_BEGIN.getFieldName()), m.getAsInt(SPAN_END.getFieldName())))
-            .toArray(String[]::new);
-
-    // name find
-    Span[] nameSpans = nameFinder.find(tokens);
+    // token offsets, written in either span format, the token strings are only created for the name finder
+    final SpanBuffer tokenSpans = readSpans(annotations.getValue(tokensField), SpanBuffer.local());
+
+    final String key = getModelKey();
+
+    // the name finder has no state between calls, so the same tokens always get the same names
+    final SpanCache cache = getSpanCache();
+    final SpanCache.Key cacheKey = cache != null ? SpanCache.key(key, text, tokenSpans) : null;
+    Span[] nameSpans = cache != null ? cache.get(cacheKey) : null;
+
+    if (nameSpans == null) {
+      final String[] tokens = tokenSpans.texts(text);
+      NameFinderME nameFinder = service.getInstance(key);
+
+      // name find
+      try {
+        nameSpans = nameFinder.find(tokens);
+      } finally {
+        service.release(key, nameFinder);
+      }
+      if (cache != null) {
+        cache.put(cacheKey, nameSpans);
+      }
+    }
 
     // convert to annotations
     if (nameSpans != null && nameSpans.length > 0) {
-      List<Record> names = Stream.of(nameSpans).map(SpanToRecordWithProb).collect(Collectors.toList());
-      annotations.setValue(annotationName, names);
+      annotations.setValue(annotationName, nameSpansToAnnotation(nameSpans, isColumns()));
+      addAnnotations(nameSpans.length);
     }
 
   }
 
-  private Function<Span, Record> SpanToRecordWithProb = new Function<Span, Record>() {
-    @Override
-    public Record apply(Span span) {
-      final Record mapRecord = new MapRecord(NAME_SPAN_SCHEMA, new HashMap<>(3));
-      mapRecord.setValue(SPAN_BEGIN, span.getStart());
-      mapRecord.setValue(SPAN_END, span.getEnd());
-      mapRecord.setValue(SPAN_TYPE, span.getType());
-      mapRecord.setValue(SPAN_PROB, span.getProb());
-      return mapRecord;
+  static Object nameSpansToAnnotation(Span[] nameSpans, boolean columns) {
+    return columns ? nameSpansToColumns(nameSpans) : nameSpansToRecordList(nameSpans);
+  }
+
+  static Record nameSpansToColumns(Span[] nameSpans) {
+    final Object[] begins = new Object[nameSpans.length];
+    final Object[] ends = new Object[nameSpans.length];
+    final Object[] types = new Object[nameSpans.length];
+    final Object[] probs = new Object[nameSpans.length];
+    for (int i = 0; i < nameSpans.length; i++) {
+      begins[i] = nameSpans[i].getStart();
+      ends[i] = nameSpans[i].getEnd();
+      types[i] = nameSpans[i].getType();
+      probs[i] = nameSpans[i].getProb();
     }
-  };
+    return nameRecord(NAME_COLUMNS_SCHEMA, begins, ends, types, probs);
+  }
+
+  static List<Record> nameSpansToRecordList(Span[] nameSpans) {
+    final List<Record> records = new ArrayList<>(nameSpans.length);
+    for (Span span : nameSpans) {
+      records.add(nameRecord(NAME_SPAN_SCHEMA, span.getStart(), span.getEnd(), span.getType(), span.getProb()));
+    }
+    return records;
+  }
+
+  private static Record nameRecord(final RecordSchema schema, final Object begin, final Object end, final Object type,
+                                   final Object prob) {
+    final Map<String, Object> values = recordValues(4);
+    values.put(SPAN_BEGIN.getFieldName(), begin);
+    values.put(SPAN_END.getFieldName(), end);
+    values.put(SPAN_TYPE.getFieldName(), type);
+    values.put(SPAN_PROB.getFieldName(), prob);
+    return new MapRecord(schema, values);
+  }
 }
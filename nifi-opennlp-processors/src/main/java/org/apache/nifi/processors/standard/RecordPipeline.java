@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.standard;
+
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.serialization.MalformedRecordException;
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.RecordSetWriter;
+import org.apache.nifi.serialization.record.Record;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads, annotates and writes the records of one FlowFile in three stages connected by bounded queues,
+ * so parsing and serializing records overlaps with annotating their neighbours. Records are passed on
+ * in batches and written in the order they were read. The writer stays on the calling thread, the
+ * reader and annotator run on the stage executor.
+ */
+final class RecordPipeline {
+
+  /**
+   * Annotates one record, on the annotate stage or on one of the workers.
+   */
+  interface Annotator {
+    Record annotate(Record record, long recordIndex);
+  }
+
+  // marks the end of the records, compared by identity
+  private static final List<Record> END = new ArrayList<>(0);
+
+  // how often the writer checks for failed stages while waiting
+  private static final long POLL_MILLIS = 100L;
+
+  private final ExecutorService stages;
+  private final ExecutorService workers;
+  private final int batchSize;
+  private final BlockingQueue<List<Record>> toAnnotate;
+  private final BlockingQueue<List<Record>> toWrite;
+
+  // each written by the stage it times, and read once all stages are done
+  private long readNanos;
+  private long readBlockedNanos;
+  private long annotateNanos;
+  private long annotateIdleNanos;
+  private long writeNanos;
+  private long writeIdleNanos;
+  private long batches;
+  private boolean done;
+
+  // set when writing failed, the other stages stop at the next record or batch
+  private volatile boolean aborted;
+  private final CountDownLatch stopped = new CountDownLatch(2);
+
+  /**
+   * @param workers annotates the records of a batch in parallel, or null to annotate them on the annotate stage
+   */
+  RecordPipeline(final ExecutorService stages, final ExecutorService workers, final int batchSize, final int queueDepth) {
+    this.stages = stages;
+    this.workers = workers;
+    this.batchSize = batchSize;
+    this.toAnnotate = new ArrayBlockingQueue<>(queueDepth);
+    this.toWrite = new ArrayBlockingQueue<>(queueDepth);
+  }
+
+  void run(final RecordReader reader, final RecordSetWriter writer, final Annotator annotator)
+          throws IOException, MalformedRecordException {
+    final Future<?> reading = start(() -> read(reader));
+    final Future<?> annotating = start(() -> annotate(annotator));
+    try {
+      write(writer, reading, annotating);
+      await(reading);
+      await(annotating);
+      done = true;
+    } finally {
+      if (!done) {
+        abort();
+      }
+    }
+  }
+
+  private interface Stage {
+    void run() throws Exception;
+  }
+
+  private Future<?> start(final Stage stage) {
+    return stages.submit(() -> {
+      try {
+        stage.run();
+        return null;
+      } finally {
+        stopped.countDown();
+      }
+    });
+  }
+
+  /**
+   * Stops the reader and annotator, and waits for them so the reader is not used after it is closed.
+   */
+  private void abort() {
+    aborted = true;
+    try {
+      do {
+        // frees stages blocked on a full queue, and ends the annotator waiting on an empty one
+        toAnnotate.clear();
+        toWrite.clear();
+        toAnnotate.offer(END);
+      } while (!stopped.await(POLL_MILLIS, TimeUnit.MILLISECONDS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void read(final RecordReader reader) throws IOException, MalformedRecordException, InterruptedException {
+    List<Record> batch = new ArrayList<>(batchSize);
+    long start = System.nanoTime();
+    Record record;
+    while ((record = reader.nextRecord()) != null) {
+      if (aborted) {
+        return;
+      }
+      batch.add(record);
+      if (batch.size() == batchSize) {
+        final long read = System.nanoTime();
+        readNanos += read - start;
+        toAnnotate.put(batch);
+        start = System.nanoTime();
+        readBlockedNanos += start - read;
+        batch = new ArrayList<>(batchSize);
+      }
+    }
+    readNanos += System.nanoTime() - start;
+
+    if (!batch.isEmpty()) {
+      toAnnotate.put(batch);
+    }
+    toAnnotate.put(END);
+  }
+
+  private void annotate(final Annotator annotator) throws InterruptedException, ExecutionException {
+    long recordIndex = 0L;
+    while (true) {
+      final long waiting = System.nanoTime();
+      final List<Record> batch = toAnnotate.take();
+      final long start = System.nanoTime();
+      annotateIdleNanos += start - waiting;
+      if (batch == END || aborted) {
+        toWrite.put(END);
+        return;
+      }
+
+      annotateBatch(batch, recordIndex, annotator);
+      recordIndex += batch.size();
+      annotateNanos += System.nanoTime() - start;
+      toWrite.put(batch);
+    }
+  }
+
+  private void annotateBatch(final List<Record> batch, final long firstIndex, final Annotator annotator)
+          throws InterruptedException, ExecutionException {
+    if (workers == null) {
+      for (int i = 0; i < batch.size(); i++) {
+        batch.set(i, annotator.annotate(batch.get(i), firstIndex + i));
+      }
+      return;
+    }
+
+    final List<Future<Record>> annotated = new ArrayList<>(batch.size());
+    try {
+      for (int i = 0; i < batch.size(); i++) {
+        final Record record = batch.get(i);
+        final long recordIndex = firstIndex + i;
+        annotated.add(workers.submit(() -> annotator.annotate(record, recordIndex)));
+      }
+      for (int i = 0; i < batch.size(); i++) {
+        batch.set(i, annotated.get(i).get());
+      }
+    } finally {
+      for (Future<Record> pending : annotated) {
+        pending.cancel(true);
+      }
+    }
+  }
+
+  private void write(final RecordSetWriter writer, final Future<?> reading, final Future<?> annotating)
+          throws IOException, MalformedRecordException {
+    while (true) {
+      final long waiting = System.nanoTime();
+      final List<Record> batch = nextToWrite(reading, annotating);
+      final long start = System.nanoTime();
+      writeIdleNanos += start - waiting;
+      if (batch == END) {
+        return;
+      }
+
+      for (Record record : batch) {
+        writer.write(record);
+      }
+      writeNanos += System.nanoTime() - start;
+      batches++;
+    }
+  }
+
+  private List<Record> nextToWrite(final Future<?> reading, final Future<?> annotating)
+          throws IOException, MalformedRecordException {
+    try {
+      List<Record> batch;
+      while ((batch = toWrite.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+        // a failed stage never passes on the end of the records
+        if (reading.isDone()) {
+          await(reading);
+        }
+        if (annotating.isDone()) {
+          await(annotating);
+        }
+      }
+      return batch;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessException("Interrupted while waiting for annotated records", e);
+    }
+  }
+
+  private static void await(final Future<?> stage) throws IOException, MalformedRecordException {
+    try {
+      stage.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessException("Interrupted while waiting for a pipeline stage", e);
+    } catch (ExecutionException e) {
+      // failures of the workers are wrapped once more by the annotate stage
+      Throwable cause = e.getCause();
+      while (cause instanceof ExecutionException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof MalformedRecordException) {
+        throw (MalformedRecordException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new ProcessException(cause);
+    }
+  }
+
+  /**
+   * Adds the time spent in each stage to the counters, once all records are written.
+   */
+  void adjustCounters(final ProcessSession session) {
+    if (!done) {
+      return;
+    }
+    session.adjustCounter("Pipeline Read Micros", TimeUnit.NANOSECONDS.toMicros(readNanos), false);
+    session.adjustCounter("Pipeline Annotate Micros", TimeUnit.NANOSECONDS.toMicros(annotateNanos), false);
+    session.adjustCounter("Pipeline Write Micros", TimeUnit.NANOSECONDS.toMicros(writeNanos), false);
+    session.adjustCounter("Pipeline Batches", batches, false);
+  }
+
+  /**
+   * Busy and waiting time of each stage. The stage that hardly waits is the one holding the others up.
+   */
+  @Override
+  public String toString() {
+    return String.format("read %d ms (%d ms blocked), annotate %d ms (%d ms idle), write %d ms (%d ms idle), %d batches",
+            TimeUnit.NANOSECONDS.toMillis(readNanos), TimeUnit.NANOSECONDS.toMillis(readBlockedNanos),
+            TimeUnit.NANOSECONDS.toMillis(annotateNanos), TimeUnit.NANOSECONDS.toMillis(annotateIdleNanos),
+            TimeUnit.NANOSECONDS.toMillis(writeNanos), TimeUnit.NANOSECONDS.toMillis(writeIdleNanos), batches);
+  }
+
+}
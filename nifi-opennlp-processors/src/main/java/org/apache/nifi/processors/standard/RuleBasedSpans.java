@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.standard;
+
+import opennlp.tools.util.StringUtil;
+
+/**
+ * Same spans as the OpenNLP WhitespaceTokenizer, SimpleTokenizer and NewlineSentenceDetector, written
+ * to a {@link SpanBuffer} instead of Span objects. Characters below 256 are classified through a
+ * lookup table built from the same character tests OpenNLP uses, other characters are tested directly.
+ */
+final class RuleBasedSpans {
+
+  static final byte WHITESPACE = 0;
+  static final byte ALPHABETIC = 1;
+  static final byte NUMERIC = 2;
+  static final byte OTHER = 3;
+
+  private static final byte[] CLASSES = new byte[256];
+
+  static {
+    for (char c = 0; c < CLASSES.length; c++) {
+      CLASSES[c] = classify(c);
+    }
+  }
+
+  private RuleBasedSpans() {
+  }
+
+  static byte classOf(final char c) {
+    return c < CLASSES.length ? CLASSES[c] : classify(c);
+  }
+
+  private static byte classify(final char c) {
+    if (StringUtil.isWhitespace(c)) {
+      return WHITESPACE;
+    } else if (Character.isLetter(c)) {
+      return ALPHABETIC;
+    } else if (Character.isDigit(c)) {
+      return NUMERIC;
+    }
+    return OTHER;
+  }
+
+  private static boolean isWhitespace(final char c) {
+    return classOf(c) == WHITESPACE;
+  }
+
+  /**
+   * Runs of non whitespace characters, as WhitespaceTokenizer.
+   */
+  static SpanBuffer whitespaceTokens(final CharSequence text, final SpanBuffer spans) {
+    final int length = text.length();
+    int start = -1;
+    for (int i = 0; i < length; i++) {
+      if (isWhitespace(text.charAt(i))) {
+        if (start >= 0) {
+          spans.add(start, i);
+          start = -1;
+        }
+      } else if (start < 0) {
+        start = i;
+      }
+    }
+    if (start >= 0) {
+      spans.add(start, length);
+    }
+    return spans;
+  }
+
+  /**
+   * Runs of letters, of digits, and of the same other character, as SimpleTokenizer.
+   */
+  static SpanBuffer simpleTokens(final CharSequence text, final SpanBuffer spans) {
+    final int length = text.length();
+    byte state = WHITESPACE;
+    int start = -1;
+    char previous = 0;
+    for (int i = 0; i < length; i++) {
+      final char c = text.charAt(i);
+      final byte type = classOf(c);
+      if (state == WHITESPACE) {
+        if (type != WHITESPACE) {
+          start = i;
+        }
+      } else if (type != state || type == OTHER && c != previous) {
+        spans.add(start, i);
+        start = i;
+      }
+      state = type;
+      previous = c;
+    }
+    if (state != WHITESPACE) {
+      spans.add(start, length);
+    }
+    return spans;
+  }
+
+  /**
+   * Lines without their surrounding whitespace, skipping empty ones, as NewlineSentenceDetector.
+   */
+  static SpanBuffer newlineSentences(final CharSequence text, final SpanBuffer spans) {
+    final int length = text.length();
+    int start = 0;
+    for (int i = 0; i < length; i++) {
+      final char c = text.charAt(i);
+      if ((c == '\n' || c == '\r') && i > start) {
+        addTrimmed(text, start, i, spans);
+        start = i + 1;
+      }
+    }
+    if (length > start) {
+      addTrimmed(text, start, length, spans);
+    }
+    return spans;
+  }
+
+  private static void addTrimmed(final CharSequence text, int begin, int end, final SpanBuffer spans) {
+    while (begin < end && isWhitespace(text.charAt(begin))) {
+      begin++;
+    }
+    while (end > begin && isWhitespace(text.charAt(end - 1))) {
+      end--;
+    }
+    if (end > begin) {
+      spans.add(begin, end);
+    }
+  }
+
+}
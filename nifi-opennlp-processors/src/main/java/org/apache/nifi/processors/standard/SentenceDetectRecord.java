@@ -17,7 +17,6 @@
 
 package org.apache.nifi.processors.standard;
 
-import opennlp.tools.sentdetect.NewlineSentenceDetector;
 import opennlp.tools.sentdetect.SentenceDetector;
 import opennlp.tools.util.Span;
 import org.apache.nifi.annotation.behavior.EventDriven;
@@ -87,27 +86,44 @@ public class SentenceDetectRecord extends AbstractOpenNLPRecordProcessor {
     propertyDescriptors.add(DETECTOR_SERVICE_PD);
     propertyDescriptors.add(MODEL_TYPE_PD);
     propertyDescriptors.add(ANNOTATION_NAME_PD);
+    propertyDescriptors.add(SPAN_FORMAT_PD);
     return propertyDescriptors;
   }
 
-  @Override
-  public void annotate(ProcessContext context, MapRecord annotations, String text) {
-
-    final RecordField annotationName =
-            new RecordField(context.getProperty(ANNOTATION_NAME_PD).getValue(), RecordFieldType.MAP.getDataType());
+  private volatile SentenceDetectorService service;
+  private volatile RecordField annotationName;
 
-    SentenceDetector detector;
+  @Override
+  protected void setup(ProcessContext context) {
     if (FILE_BASED.equals(context.getProperty(MODEL_TYPE_PD).getValue())) {
-      final SentenceDetectorService service = context.getProperty(DETECTOR_SERVICE_PD)
-              .asControllerService(SentenceDetectorService.class);
-      detector = service.getInstance();
+      service = context.getProperty(DETECTOR_SERVICE_PD).asControllerService(SentenceDetectorService.class);
     } else {
-      detector = new NewlineSentenceDetector();
+      service = null;
     }
+    annotationName = new RecordField(context.getProperty(ANNOTATION_NAME_PD).getValue(), RecordFieldType.MAP.getDataType());
+  }
 
-    Span[] sentenceSpans = detector.sentPosDetect(text);
+  @Override
+  public void annotate(ProcessContext context, MapRecord annotations, String text) {
+
+    final SentenceDetectorService service = this.service;
+
+    Span[] sentenceSpans;
+    if (service != null) {
+      final String key = getModelKey();
+      SentenceDetector detector = service.getInstance(key);
+      try {
+        sentenceSpans = detector.sentPosDetect(text);
+      } finally {
+        service.release(key, detector);
+      }
+    } else {
+      // same sentences as the NewlineSentenceDetector, without creating Span objects
+      annotations.setValue(annotationName, spansToAnnotation(RuleBasedSpans.newlineSentences(text, SpanBuffer.local())));
+      return;
+    }
 
-    annotations.setValue(annotationName, spansToRecordList(sentenceSpans));
+    annotations.setValue(annotationName, spansToAnnotation(sentenceSpans));
 
   }
 
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.standard;
+
+import opennlp.tools.util.Span;
+
+import java.util.Arrays;
+
+/**
+ * Begin and end offsets of spans in two growing int arrays, reused from one text to the next by
+ * the thread that owns the buffer.
+ */
+final class SpanBuffer {
+
+  private static final ThreadLocal<SpanBuffer> LOCAL = ThreadLocal.withInitial(SpanBuffer::new);
+
+  private int[] begins = new int[64];
+  private int[] ends = new int[64];
+  private int size;
+
+  /**
+   * The cleared buffer of the current thread.
+   */
+  static SpanBuffer local() {
+    final SpanBuffer buffer = LOCAL.get();
+    buffer.clear();
+    return buffer;
+  }
+
+  void clear() {
+    size = 0;
+  }
+
+  void add(final int begin, final int end) {
+    if (size == begins.length) {
+      begins = Arrays.copyOf(begins, size * 2);
+      ends = Arrays.copyOf(ends, size * 2);
+    }
+    begins[size] = begin;
+    ends[size] = end;
+    size++;
+  }
+
+  int size() {
+    return size;
+  }
+
+  int begin(final int index) {
+    return begins[index];
+  }
+
+  int end(final int index) {
+    return ends[index];
+  }
+
+  /**
+   * Covered texts of the spans. Only needed by code that takes token strings, such as the name finder.
+   */
+  String[] texts(final String text) {
+    final String[] texts = new String[size];
+    for (int i = 0; i < size; i++) {
+      texts[i] = text.substring(begins[i], ends[i]);
+    }
+    return texts;
+  }
+
+  Span[] toSpans() {
+    final Span[] spans = new Span[size];
+    for (int i = 0; i < size; i++) {
+      spans[i] = new Span(begins[i], ends[i]);
+    }
+    return spans;
+  }
+
+}
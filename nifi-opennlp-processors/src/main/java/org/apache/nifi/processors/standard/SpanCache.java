@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.standard;
+
+import opennlp.tools.util.Span;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spans computed for a text or a token array, remembered so repeated texts are only annotated once.
+ * Texts are keyed by two independent 64 bit hashes and their length, the texts themselves are not
+ * kept. The cache is split in stripes that each evict their least recently used entries once the
+ * estimated memory of their spans exceeds their share of the budget.
+ */
+final class SpanCache {
+
+  private static final int STRIPES = 16;
+
+  // rough heap cost of an entry, and of each span in it
+  private static final long ENTRY_BYTES = 128;
+  private static final long SPAN_BYTES = 40;
+
+  private final Stripe[] stripes = new Stripe[STRIPES];
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  SpanCache(final long maxBytes) {
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe(Math.max(1, maxBytes / STRIPES));
+    }
+  }
+
+  static Key key(final String modelKey, final CharSequence text) {
+    final Hasher hasher = new Hasher();
+    hasher.add(modelKey);
+    hasher.add(text);
+    return hasher.key();
+  }
+
+  /**
+   * Key of a token sequence, hashed from the token offsets in the text without copying the tokens.
+   */
+  static Key key(final String modelKey, final String text, final SpanBuffer tokens) {
+    final Hasher hasher = new Hasher();
+    hasher.add(modelKey);
+    for (int i = 0; i < tokens.size(); i++) {
+      hasher.add(text, tokens.begin(i), tokens.end(i));
+    }
+    return hasher.key();
+  }
+
+  Span[] get(final Key key) {
+    final Span[] spans = stripe(key).get(key);
+    if (spans != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    return spans;
+  }
+
+  void put(final Key key, final Span[] spans) {
+    stripe(key).put(key, spans);
+  }
+
+  /**
+   * Hits since the last call, for reporting them as counters.
+   */
+  long drainHits() {
+    return hits.getAndSet(0);
+  }
+
+  long drainMisses() {
+    return misses.getAndSet(0);
+  }
+
+  long drainEvictions() {
+    return evictions.getAndSet(0);
+  }
+
+  private Stripe stripe(final Key key) {
+    return stripes[(int) (key.h1 ^ (key.h1 >>> 32)) & (STRIPES - 1)];
+  }
+
+  private static long weigh(final Span[] spans) {
+    long weight = ENTRY_BYTES + spans.length * SPAN_BYTES;
+    for (Span span : spans) {
+      if (span.getType() != null) {
+        weight += span.getType().length() * 2;
+      }
+    }
+    return weight;
+  }
+
+  private final class Stripe {
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Span[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    Stripe(final long maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+
+    synchronized Span[] get(final Key key) {
+      return entries.get(key);
+    }
+
+    synchronized void put(final Key key, final Span[] spans) {
+      final Span[] previous = entries.put(key, spans);
+      if (previous != null) {
+        bytes -= weigh(previous);
+      }
+      bytes += weigh(spans);
+
+      final Iterator<Map.Entry<Key, Span[]>> eldest = entries.entrySet().iterator();
+      while (bytes > maxBytes && eldest.hasNext()) {
+        bytes -= weigh(eldest.next().getValue());
+        eldest.remove();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  static final class Key {
+    final long h1;
+    final long h2;
+    final int length;
+
+    Key(long h1, long h2, int length) {
+      this.h1 = h1;
+      this.h2 = h2;
+      this.length = length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) o;
+      return h1 == other.h1 && h2 == other.h2 && length == other.length;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (h1 ^ (h1 >>> 32));
+    }
+  }
+
+  /**
+   * FNV-1a and a multiplicative hash over the same characters, with a separator after every part.
+   */
+  private static final class Hasher {
+    private long h1 = 0xcbf29ce484222325L;
+    private long h2 = 0x84222325cbf29ce4L;
+    private int length;
+
+    void add(final CharSequence part) {
+      if (part != null) {
+        add(part, 0, part.length());
+      } else {
+        add('\u0000');
+      }
+    }
+
+    void add(final CharSequence text, final int begin, final int end) {
+      for (int i = begin; i < end; i++) {
+        add(text.charAt(i));
+      }
+      add('\u0000');
+    }
+
+    private void add(final char c) {
+      h1 = (h1 ^ c) * 0x100000001b3L;
+      h2 = (h2 + c) * 0x9e3779b97f4a7c15L;
+      length++;
+    }
+
+    Key key() {
+      return new Key(h1, h2 ^ (h2 >>> 29), length);
+    }
+  }
+
+}
@@ -17,9 +17,7 @@
 
 package org.apache.nifi.processors.standard;
 
-import opennlp.tools.tokenize.SimpleTokenizer;
 import opennlp.tools.tokenize.Tokenizer;
-import opennlp.tools.tokenize.WhitespaceTokenizer;
 import opennlp.tools.util.Span;
 import org.apache.nifi.annotation.behavior.EventDriven;
 import org.apache.nifi.annotation.behavior.InputRequirement;
@@ -96,31 +94,69 @@ public class TokenizeRecord extends AbstractOpenNLPRecordProcessor {
     propertyDescriptors.add(DETECTOR_SERVICE_PD);
     propertyDescriptors.add(MODEL_TYPE_PD);
     propertyDescriptors.add(ANNOTATION_NAME_PD);
+    propertyDescriptors.add(ANNOTATION_CACHE_SIZE_PD);
+    propertyDescriptors.add(SPAN_FORMAT_PD);
     return propertyDescriptors;
   }
 
-  @Override
-  public void annotate(ProcessContext context, MapRecord annotations, String text) {
+  private volatile TokenizerService service;
+  private volatile String ruleBasedTokenizer;
+  private volatile RecordField annotationName;
 
-    final RecordField annotationName =
-            new RecordField(context.getProperty(ANNOTATION_NAME_PD).getValue(), RecordFieldType.MAP.getDataType());
-
-    Tokenizer tokenizer;
+  @Override
+  protected void setup(ProcessContext context) {
     switch (context.getProperty(MODEL_TYPE_PD).getValue()) {
       case MODEL_BASED:
-        final TokenizerService service = context.getProperty(DETECTOR_SERVICE_PD)
-                .asControllerService(TokenizerService.class);
-        tokenizer = service.getInstance();
+        service = context.getProperty(DETECTOR_SERVICE_PD).asControllerService(TokenizerService.class);
+        ruleBasedTokenizer = null;
         break;
       case WHITESPACE_RULE_BASED:
-        tokenizer = WhitespaceTokenizer.INSTANCE;
+        service = null;
+        ruleBasedTokenizer = WHITESPACE_RULE_BASED;
         break;
       default:
-        tokenizer = SimpleTokenizer.INSTANCE;
+        service = null;
+        ruleBasedTokenizer = SIMPLE_RULE_BASED;
     }
+    annotationName = new RecordField(context.getProperty(ANNOTATION_NAME_PD).getValue(), RecordFieldType.MAP.getDataType());
+  }
+
+  @Override
+  public void annotate(ProcessContext context, MapRecord annotations, String text) {
 
-    Span[] sentenceSpans = tokenizer.tokenizePos(text);
-    annotations.setValue(annotationName, spansToRecordList(sentenceSpans));
+    final TokenizerService service = this.service;
+    final String key = getModelKey();
+
+    final SpanCache cache = getSpanCache();
+    final SpanCache.Key cacheKey = cache != null ? SpanCache.key(key, text) : null;
+    Span[] sentenceSpans = cache != null ? cache.get(cacheKey) : null;
+    if (sentenceSpans != null) {
+      annotations.setValue(annotationName, spansToAnnotation(sentenceSpans));
+      return;
+    }
+
+    if (service == null) {
+      // same tokens as the OpenNLP rule based tokenizers, without creating Span objects
+      final SpanBuffer spans = WHITESPACE_RULE_BASED.equals(ruleBasedTokenizer)
+              ? RuleBasedSpans.whitespaceTokens(text, SpanBuffer.local())
+              : RuleBasedSpans.simpleTokens(text, SpanBuffer.local());
+      if (cache != null) {
+        cache.put(cacheKey, spans.toSpans());
+      }
+      annotations.setValue(annotationName, spansToAnnotation(spans));
+      return;
+    }
+
+    Tokenizer tokenizer = service.getInstance(key);
+    try {
+      sentenceSpans = tokenizer.tokenizePos(text);
+    } finally {
+      service.release(key, tokenizer);
+    }
+    if (cache != null) {
+      cache.put(cacheKey, sentenceSpans);
+    }
+    annotations.setValue(annotationName, spansToAnnotation(sentenceSpans));
   }
 
 }
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi;
+
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.util.StandardValidators;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java Flight Recorder events for the texts annotated by one processor, so slow texts can be lined up
+ * with GC pauses and lock contention in the same recording. An event is only created on a JVM with
+ * Flight Recorder, while a recording enables the org.apache.opennlp.nifi.Annotate event, and only
+ * committed when annotating took at least the threshold of the processor.
+ */
+public final class AnnotateEvents {
+
+  public static final PropertyDescriptor THRESHOLD = new PropertyDescriptor.Builder()
+          .name("annotate-event-threshold")
+          .displayName("Annotate Event Threshold")
+          .description("Minimum time spent annotating a text for it to be recorded as a Java Flight Recorder " +
+                  "event, when a recording enables the org.apache.opennlp.nifi.Annotate event. A higher threshold " +
+                  "only records the slow texts. Nothing is recorded, and nothing is spent, without a recording.")
+          .required(true)
+          .defaultValue("0 ms")
+          .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+          .build();
+
+  // the texts are kept short, the event only has to show which record it was
+  static final int TEXT_PREFIX_LENGTH = 80;
+
+  private static final boolean AVAILABLE = isAvailable();
+
+  private final String processorId;
+  private final String processorType;
+  private final long thresholdNanos;
+
+  AnnotateEvents(final String processorId, final String processorType, final long thresholdNanos) {
+    this.processorId = processorId;
+    this.processorType = processorType;
+    this.thresholdNanos = thresholdNanos;
+  }
+
+  public static AnnotateEvents create(final ProcessContext context, final String processorId, final String processorType) {
+    return new AnnotateEvents(processorId, processorType, context.getProperty(THRESHOLD).asTimePeriod(TimeUnit.NANOSECONDS));
+  }
+
+  /**
+   * Events of a processor that is not scheduled yet, recorded without a threshold.
+   */
+  public static AnnotateEvents detached(final String processorType) {
+    return new AnnotateEvents(null, processorType, 0L);
+  }
+
+  private static boolean isAvailable() {
+    try {
+      return JfrAnnotateEvent.isAvailable();
+    } catch (LinkageError e) {
+      // a JVM without jdk.jfr
+      return false;
+    }
+  }
+
+  /**
+   * Starts the event for annotating a text, or returns null when it is not recorded.
+   */
+  public Object begin() {
+    return AVAILABLE ? JfrAnnotateEvent.start() : null;
+  }
+
+  /**
+   * Ends the event returned by {@link #begin()}, committing it when annotating took at least the threshold.
+   * The text may be null when only its length is known.
+   */
+  public void end(final Object event, final long nanos, final long textLength, final String text,
+                  final long annotations, final String modelKey) {
+    if (event != null) {
+      JfrAnnotateEvent.finish(event, nanos >= thresholdNanos, processorType, processorId, modelKey,
+              textLength, text, annotations);
+    }
+  }
+
+}
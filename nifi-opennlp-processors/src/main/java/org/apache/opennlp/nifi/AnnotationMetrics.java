@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi;
+
+import org.apache.nifi.processor.ProcessSession;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records, characters, annotations and annotate() latencies of one processor. Recording only adds to
+ * striped counters and a lock-free histogram, so it costs little next to annotating a text.
+ * <p>
+ * Scheduled processors register their metrics by processor id, where the
+ * {@link AnnotationMetricsReportingTask} finds them. Totals survive a restart of the processor and
+ * are dropped when it is removed.
+ */
+public final class AnnotationMetrics {
+
+  public static final String RECORDS_COUNTER = "Records Annotated";
+  public static final String CHARACTERS_COUNTER = "Characters Annotated";
+  public static final String ANNOTATIONS_COUNTER = "Annotations Emitted";
+
+  private static final ConcurrentMap<String, AnnotationMetrics> registry = new ConcurrentHashMap<>();
+
+  private final String processorId;
+  private final String processorType;
+
+  private final LongAdder records = new LongAdder();
+  private final LongAdder characters = new LongAdder();
+  private final LongAdder annotations = new LongAdder();
+  private final LongAdder annotateNanos = new LongAdder();
+  private final LongAdder triggerNanos = new LongAdder();
+  private final ConcurrentHistogram annotateLatency = new ConcurrentHistogram();
+
+  // totals already published as counters
+  private final AtomicLong countedRecords = new AtomicLong();
+  private final AtomicLong countedCharacters = new AtomicLong();
+  private final AtomicLong countedAnnotations = new AtomicLong();
+
+  AnnotationMetrics(final String processorId, final String processorType) {
+    this.processorId = processorId;
+    this.processorType = processorType;
+  }
+
+  /**
+   * Metrics of the processor, created on first use.
+   */
+  public static AnnotationMetrics register(final String processorId, final String processorType) {
+    return registry.computeIfAbsent(processorId, id -> new AnnotationMetrics(id, processorType));
+  }
+
+  public static void unregister(final String processorId) {
+    registry.remove(processorId);
+  }
+
+  /**
+   * Metrics that are not registered, for processors that are not scheduled yet.
+   */
+  public static AnnotationMetrics detached(final String processorType) {
+    return new AnnotationMetrics(null, processorType);
+  }
+
+  static Collection<AnnotationMetrics> registered() {
+    return new ArrayList<>(registry.values());
+  }
+
+  public String getProcessorId() {
+    return processorId;
+  }
+
+  public String getProcessorType() {
+    return processorType;
+  }
+
+  /**
+   * One annotated record or text, with its length and the time annotate() took.
+   */
+  public void recordAnnotate(final long textLength, final long nanos) {
+    records.increment();
+    characters.add(textLength);
+    annotateNanos.add(nanos);
+    annotateLatency.record(nanos);
+  }
+
+  public void addAnnotations(final long count) {
+    annotations.add(count);
+  }
+
+  /**
+   * Time of one onTrigger call, which includes reading and writing the FlowFiles around annotate().
+   * Texts annotated in parallel within the call add up to more annotate() time than this.
+   */
+  public void recordTrigger(final long nanos) {
+    triggerNanos.add(nanos);
+  }
+
+  /**
+   * Publishes what was recorded since the last call as NiFi counters.
+   */
+  public void adjustCounters(final ProcessSession session) {
+    adjustCounter(session, RECORDS_COUNTER, records, countedRecords);
+    adjustCounter(session, CHARACTERS_COUNTER, characters, countedCharacters);
+    adjustCounter(session, ANNOTATIONS_COUNTER, annotations, countedAnnotations);
+  }
+
+  private static void adjustCounter(final ProcessSession session, final String name, final LongAdder total,
+                                    final AtomicLong counted) {
+    final long current = total.sum();
+    long published;
+    do {
+      published = counted.get();
+      if (current <= published) {
+        // nothing new, or another thread published a later total
+        return;
+      }
+    } while (!counted.compareAndSet(published, current));
+    session.adjustCounter(name, current - published, false);
+  }
+
+  Snapshot snapshot() {
+    return new Snapshot(System.nanoTime(), records.sum(), characters.sum(), annotations.sum(), annotateNanos.sum(),
+            triggerNanos.sum(), annotateLatency.snapshot());
+  }
+
+  static final class Snapshot {
+    // time of the snapshot, or length of the interval for a difference of snapshots
+    final long nanoTime;
+    final long records;
+    final long characters;
+    final long annotations;
+    final long annotateNanos;
+    final long triggerNanos;
+    final ConcurrentHistogram.Snapshot latency;
+
+    Snapshot(long nanoTime, long records, long characters, long annotations, long annotateNanos, long triggerNanos,
+             ConcurrentHistogram.Snapshot latency) {
+      this.nanoTime = nanoTime;
+      this.records = records;
+      this.characters = characters;
+      this.annotations = annotations;
+      this.annotateNanos = annotateNanos;
+      this.triggerNanos = triggerNanos;
+      this.latency = latency;
+    }
+
+    /**
+     * What was recorded between an earlier snapshot and this one.
+     */
+    Snapshot since(final Snapshot earlier) {
+      return new Snapshot(nanoTime - earlier.nanoTime, records - earlier.records, characters - earlier.characters,
+              annotations - earlier.annotations, annotateNanos - earlier.annotateNanos,
+              triggerNanos - earlier.triggerNanos, latency.since(earlier.latency));
+    }
+  }
+
+}
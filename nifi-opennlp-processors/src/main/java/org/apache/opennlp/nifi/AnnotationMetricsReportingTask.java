@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi;
+
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.reporting.AbstractReportingTask;
+import org.apache.nifi.reporting.ReportingContext;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@Tags({"opennlp", "nlp", "metrics", "annotation", "latency"})
+@CapabilityDescription("Logs, for every scheduled OpenNLP processor, the records annotated since the last run and " +
+        "the rate, characters and annotations, annotate() latency percentiles, and the time spent in annotate() " +
+        "next to the time of the onTrigger calls. The annotate() time is summed over the threads annotating in " +
+        "parallel, so it can exceed the onTrigger time.")
+public class AnnotationMetricsReportingTask extends AbstractReportingTask {
+
+  static final PropertyDescriptor INCLUDE_IDLE = new PropertyDescriptor.Builder()
+          .name("include-idle-processors")
+          .displayName("Include Idle Processors")
+          .description("Whether processors that did not annotate anything since the last run are reported.")
+          .required(true)
+          .allowableValues("true", "false")
+          .defaultValue("false")
+          .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
+          .build();
+
+  private final Map<String, AnnotationMetrics.Snapshot> previous = new HashMap<>();
+
+  @Override
+  protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+    return Collections.singletonList(INCLUDE_IDLE);
+  }
+
+  @Override
+  public void onTrigger(final ReportingContext context) {
+    final boolean includeIdle = context.getProperty(INCLUDE_IDLE).asBoolean();
+    final Set<String> seen = new HashSet<>();
+
+    for (AnnotationMetrics metrics : AnnotationMetrics.registered()) {
+      seen.add(metrics.getProcessorId());
+      final AnnotationMetrics.Snapshot current = metrics.snapshot();
+      final AnnotationMetrics.Snapshot earlier = previous.put(metrics.getProcessorId(), current);
+      if (earlier == null) {
+        // reported from the next run on, when there is an interval to report
+        continue;
+      }
+      final AnnotationMetrics.Snapshot interval = current.since(earlier);
+      if (interval.records > 0 || includeIdle) {
+        getLogger().info(format(metrics, interval));
+      }
+    }
+    previous.keySet().retainAll(seen);
+  }
+
+  static String format(final AnnotationMetrics metrics, final AnnotationMetrics.Snapshot interval) {
+    final double seconds = Math.max(1, interval.nanoTime) / 1e9;
+    final ConcurrentHistogram.Snapshot latency = interval.latency;
+    // annotate() time adds up over threads and onTrigger() time does not, so no share of one in the other
+    return String.format("%s[%s]: %d records (%.1f/s), %d characters, %d annotations, annotate() mean %d us, " +
+                    "p50 %d us, p99 %d us, max %d us, annotate() %d ms over all threads, onTrigger() %d ms",
+            metrics.getProcessorType(), metrics.getProcessorId(), interval.records, interval.records / seconds,
+            interval.characters, interval.annotations,
+            interval.records > 0 ? TimeUnit.NANOSECONDS.toMicros(interval.annotateNanos / interval.records) : 0,
+            TimeUnit.NANOSECONDS.toMicros(latency.getPercentile(50)),
+            TimeUnit.NANOSECONDS.toMicros(latency.getPercentile(99)),
+            TimeUnit.NANOSECONDS.toMicros(latency.getMax()), TimeUnit.NANOSECONDS.toMillis(interval.annotateNanos),
+            TimeUnit.NANOSECONDS.toMillis(interval.triggerNanos));
+  }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of values in buckets of fixed relative width, recorded without locks from any number of
+ * threads. Each power of two is split in 16 buckets, so a percentile is off by at most 1/16. Readers
+ * take a {@link Snapshot}, and the difference of two snapshots gives the values of an interval.
+ */
+public final class ConcurrentHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  public void record(final long value) {
+    counts.incrementAndGet(index(Math.max(0, value)));
+  }
+
+  public Snapshot snapshot() {
+    final long[] copy = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      copy[i] = counts.get(i);
+    }
+    return new Snapshot(copy);
+  }
+
+  static int index(final long value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return (int) value;
+    }
+    final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  static long highestValue(final int index) {
+    if (index < 2 * SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = index / SUB_BUCKETS - 1;
+    final long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+    return ((sub + 1) << shift) - 1;
+  }
+
+  /**
+   * Bucket counts at one point in time. Values are reported as the highest value of their bucket.
+   */
+  public static final class Snapshot {
+
+    private final long[] counts;
+    private final long count;
+
+    Snapshot(final long[] counts) {
+      this.counts = counts;
+      long total = 0;
+      for (long bucket : counts) {
+        total += bucket;
+      }
+      this.count = total;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * The given percentile, between 0 and 100, or 0 without values.
+     */
+    public long getPercentile(final double percentile) {
+      final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return highestValue(i);
+        }
+      }
+      return 0;
+    }
+
+    public long getMax() {
+      for (int i = counts.length - 1; i >= 0; i--) {
+        if (counts[i] > 0) {
+          return highestValue(i);
+        }
+      }
+      return 0;
+    }
+
+    /**
+     * Values recorded since an earlier snapshot of the same histogram.
+     */
+    public Snapshot since(final Snapshot earlier) {
+      final long[] difference = new long[counts.length];
+      for (int i = 0; i < counts.length; i++) {
+        difference[i] = counts[i] - earlier.counts[i];
+      }
+      return new Snapshot(difference);
+    }
+  }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Flight Recorder event behind {@link AnnotateEvents}. Only used once jdk.jfr is known to be
+ * present, started events are passed around as plain objects so callers never load this class.
+ */
+@Name("org.apache.opennlp.nifi.Annotate")
+@Label("Annotate Text")
+@Category({"OpenNLP", "Processors"})
+@Description("A processor annotated the text of a record or FlowFile.")
+final class JfrAnnotateEvent extends Event {
+
+  private static final EventType TYPE = EventType.getEventType(JfrAnnotateEvent.class);
+
+  @Label("Processor Type")
+  String processorType;
+
+  @Label("Processor Id")
+  String processorId;
+
+  @Label("Model Key")
+  String modelKey;
+
+  @Label("Text Length")
+  long textLength;
+
+  @Label("Text Start")
+  @Description("The first characters of the text.")
+  String textStart;
+
+  @Label("Annotations")
+  @Description("Spans or other annotations written for the text.")
+  long annotations;
+
+  static boolean isAvailable() {
+    return FlightRecorder.isAvailable();
+  }
+
+  static Object start() {
+    if (!TYPE.isEnabled()) {
+      return null;
+    }
+    final JfrAnnotateEvent event = new JfrAnnotateEvent();
+    event.begin();
+    return event;
+  }
+
+  static void finish(final Object started, final boolean overThreshold, final String processorType,
+                     final String processorId, final String modelKey, final long textLength, final String text,
+                     final long annotations) {
+    final JfrAnnotateEvent event = (JfrAnnotateEvent) started;
+    event.end();
+    if (overThreshold && event.shouldCommit()) {
+      event.processorType = processorType;
+      event.processorId = processorId;
+      event.modelKey = modelKey;
+      event.textLength = textLength;
+      event.textStart = text != null && text.length() > AnnotateEvents.TEXT_PREFIX_LENGTH
+              ? text.substring(0, AnnotateEvents.TEXT_PREFIX_LENGTH) : text;
+      event.annotations = annotations;
+      event.commit();
+    }
+  }
+
+}
@@ -28,24 +28,34 @@ import org.apache.nifi.annotation.behavior.WritesAttribute;
 import org.apache.nifi.annotation.behavior.WritesAttributes;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnRemoved;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.io.InputStreamCallback;
+import org.apache.nifi.processor.util.FlowFileFilters;
 import org.apache.nifi.processor.util.StandardValidators;
 import org.apache.opennlp.nifi.service.LanguageDetectorService;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -60,6 +70,7 @@ import java.util.concurrent.atomic.AtomicReference;
 @WritesAttributes({
         @WritesAttribute(attribute = "language.detected", description = "The identified language of the text."),
         @WritesAttribute(attribute = "text.line.nonempty.count", description = "Confidence score."),
+        @WritesAttribute(attribute = "language.characters", description = "Number of characters the language was detected on."),
 })
 public class LanguageDetectProcessor extends AbstractProcessor {
 
@@ -71,6 +82,7 @@ public class LanguageDetectProcessor extends AbstractProcessor {
 
   public static final String LANGUAGE_DETECTED = "language.detected";
   public static final String LANGUAGE_CONFIDENCE = "language.confidence";
+  public static final String LANGUAGE_CHARACTERS = "language.characters";
 
   static final PropertyDescriptor DETECTOR_SERVICE_PD = new PropertyDescriptor.Builder()
           .name("opennlp-language-detector-service")
@@ -89,6 +101,26 @@ public class LanguageDetectProcessor extends AbstractProcessor {
           .addValidator(StandardValidators.CHARACTER_SET_VALIDATOR)
           .build();
 
+  static final PropertyDescriptor BATCH_SIZE_PD = new PropertyDescriptor.Builder()
+          .name("batch-size")
+          .displayName("Batch Size")
+          .description("Maximum number of FlowFiles detected in one go, with the same detector, and committed together. " +
+                  "Larger batches reduce the framework overhead per FlowFile for many small FlowFiles.")
+          .required(true)
+          .defaultValue("1")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .build();
+
+  static final PropertyDescriptor BATCH_MAX_SIZE_PD = new PropertyDescriptor.Builder()
+          .name("batch-max-size")
+          .displayName("Batch Max Size")
+          .description("Maximum total content size of the FlowFiles in a batch. A single larger FlowFile still " +
+                  "makes a batch of its own.")
+          .required(true)
+          .defaultValue("1 MB")
+          .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+          .build();
+
   static {
     final Set<Relationship> _relationships = new HashSet<>();
     _relationships.add(REL_SUCCESS);
@@ -98,6 +130,13 @@ public class LanguageDetectProcessor extends AbstractProcessor {
     final List<PropertyDescriptor> _properties = new ArrayList<>();
     _properties.add(DETECTOR_SERVICE_PD);
     _properties.add(TEXT_ENCODING_PD);
+    _properties.add(BATCH_SIZE_PD);
+    _properties.add(BATCH_MAX_SIZE_PD);
+    _properties.add(LanguageSampler.DETECTION_MODE);
+    _properties.add(LanguageSampler.MAX_CHARACTERS);
+    _properties.add(LanguageSampler.WINDOWS);
+    _properties.add(LanguageSampler.MIN_CONFIDENCE);
+    _properties.add(AnnotateEvents.THRESHOLD);
     properties = Collections.unmodifiableList(_properties);
   }
 
@@ -111,29 +150,111 @@ public class LanguageDetectProcessor extends AbstractProcessor {
     return relationships;
   }
 
+  @Override
+  protected Collection<ValidationResult> customValidate(ValidationContext context) {
+    final List<ValidationResult> results = new ArrayList<>(super.customValidate(context));
+    LanguageSampler.validateDetectorService(context, DETECTOR_SERVICE_PD, results);
+    return results;
+  }
+
+  private volatile LanguageSampler sampler;
+  private volatile AnnotationMetrics metrics = AnnotationMetrics.detached(getClass().getSimpleName());
+  private volatile AnnotateEvents events = AnnotateEvents.detached(getClass().getSimpleName());
+
+  @OnScheduled
+  public void onScheduled(final ProcessContext context) {
+    sampler = LanguageSampler.create(context);
+    metrics = AnnotationMetrics.register(getIdentifier(), getClass().getSimpleName());
+    events = AnnotateEvents.create(context, getIdentifier(), getClass().getSimpleName());
+  }
+
+  @OnRemoved
+  public void removeMetrics() {
+    AnnotationMetrics.unregister(getIdentifier());
+  }
+
   @Override
   public void onTrigger(ProcessContext context, ProcessSession session) throws ProcessException {
 
-    FlowFile flowFile = session.get();
-    if (flowFile == null) {
+    final LanguageDetectorService service = context.getProperty(DETECTOR_SERVICE_PD)
+            .asControllerService(LanguageDetectorService.class);
+    if (service.isLoading()) {
+      context.yield();
       return;
     }
 
-    AtomicBoolean error = new AtomicBoolean();
-    AtomicReference<Language> language = new AtomicReference<>();
+    final int batchSize = context.getProperty(BATCH_SIZE_PD).asInteger();
+    final List<FlowFile> flowFiles;
+    if (batchSize > 1) {
+      final long maxBytes = context.getProperty(BATCH_MAX_SIZE_PD).asDataSize(DataUnit.B).longValue();
+      flowFiles = session.get(FlowFileFilters.newSizeBasedFilter(maxBytes, DataUnit.B, batchSize));
+    } else {
+      final FlowFile flowFile = session.get();
+      flowFiles = flowFile == null ? Collections.emptyList() : Collections.singletonList(flowFile);
+    }
+    if (flowFiles.isEmpty()) {
+      return;
+    }
 
     final String encoding = context.getProperty(TEXT_ENCODING_PD).getValue();
-    final LanguageDetectorService service = context.getProperty(DETECTOR_SERVICE_PD)
-            .asControllerService(LanguageDetectorService.class);
+    final LanguageSampler sampler = this.sampler;
+    final AnnotationMetrics metrics = this.metrics;
+    final AnnotateEvents events = this.events;
+    final long start = System.nanoTime();
+
+    // one detector for the whole batch, the FlowFiles are committed together with the session
+    final LanguageDetector detector = service.getInstance();
+    try {
+      long characters = 0L;
+      for (FlowFile flowFile : flowFiles) {
+        final Object event = events.begin();
+        final long detectStart = System.nanoTime();
+        final LanguageSampler.Result language = detect(session, flowFile, detector, sampler, encoding);
+        if (language != null) {
+          final long nanos = System.nanoTime() - detectStart;
+          metrics.recordAnnotate(language.getCharacters(), nanos);
+          metrics.addAnnotations(1);
+          events.end(event, nanos, language.getCharacters(), null, 1, language.getLanguage().getLang());
+          final Language detected = language.getLanguage();
+          final Map<String, String> attributes = new HashMap<>(4);
+          attributes.put(LANGUAGE_DETECTED, detected.getLang());
+          attributes.put(LANGUAGE_CONFIDENCE, String.valueOf(detected.getConfidence()));
+          attributes.put(LANGUAGE_CHARACTERS, String.valueOf(language.getCharacters()));
+          flowFile = session.putAllAttributes(flowFile, attributes);
+          session.transfer(flowFile, REL_SUCCESS);
+          characters += language.getCharacters();
+        } else {
+          session.transfer(flowFile, REL_FAILURE);
+        }
+      }
+      session.adjustCounter("Language Detection Characters", characters, false);
+    } finally {
+      service.release(detector);
+      metrics.recordTrigger(System.nanoTime() - start);
+      metrics.adjustCounters(session);
+      service.adjustCounters(session);
+    }
+
+  }
+
+  private LanguageSampler.Result detect(final ProcessSession session, final FlowFile flowFile, final LanguageDetector detector,
+                                        final LanguageSampler sampler, final String encoding) {
+
+    AtomicBoolean error = new AtomicBoolean();
+    AtomicReference<LanguageSampler.Result> language = new AtomicReference<>();
+    final long size = flowFile.getSize();
 
     session.read(flowFile, new InputStreamCallback() {
       @Override
       public void process(InputStream inputStream) throws IOException {
 
         try {
-          final String text = IOUtils.toString(inputStream, encoding);
-          LanguageDetector detector = service.getInstance();
-          language.set(detector.predictLanguage(text));
+          if (sampler.isBounded()) {
+            // only a bounded part of the content is decoded
+            language.set(sampler.detect(detector, inputStream, Charset.forName(encoding), size));
+          } else {
+            language.set(sampler.detect(detector, IOUtils.toString(inputStream, encoding)));
+          }
         } catch (Throwable t) {
           error.set(true);
           getLogger().error(t.getMessage() + " routing to failure.", t);
@@ -142,14 +263,7 @@ public class LanguageDetectProcessor extends AbstractProcessor {
       }
     });
 
-    if (!error.get()) {
-      session.putAttribute(flowFile, LANGUAGE_DETECTED, language.get().getLang());
-      session.putAttribute(flowFile, LANGUAGE_CONFIDENCE, String.valueOf(language.get().getConfidence()));
-      session.transfer(flowFile, REL_SUCCESS);
-    } else {
-      session.transfer(flowFile, REL_FAILURE);
-    }
-
+    return error.get() ? null : language.get();
   }
 
 }
@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi;
+
+import opennlp.tools.langdetect.Language;
+import opennlp.tools.langdetect.LanguageDetector;
+import org.apache.nifi.components.AllowableValue;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.opennlp.nifi.service.LanguageDetectorService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Collection;
+
+/**
+ * Detects the language of a text from a bounded part of it. Either a prefix, or windows spread
+ * evenly over the text, are read chunk by chunk. The language is predicted on a growing sample,
+ * each time it has doubled, and reading stops as soon as the prediction is confident enough.
+ * <p>
+ * OpenNLP 1.9 has no probing language detector, so the probing is done here with plain
+ * predictLanguage calls. Doubling the sample between predictions keeps the total work linear in
+ * the number of characters read. Each probe is a separate call on the detector, so a caching
+ * detector is only accepted with the full text.
+ */
+public final class LanguageSampler {
+
+  public static final String MODE_FULL = "FULL";
+  public static final String MODE_PREFIX = "PREFIX";
+  public static final String MODE_SAMPLED = "SAMPLED";
+
+  static final AllowableValue[] ALLOWABLE_MODES = new AllowableValue[] {
+    new AllowableValue(MODE_FULL, "Full Text", "Detect the language on the whole text."),
+    new AllowableValue(MODE_PREFIX, "Prefix", "Detect the language on the start of the text."),
+    new AllowableValue(MODE_SAMPLED, "Sampled Windows", "Detect the language on windows spread evenly over the text. " +
+            "Stream content is skipped between windows without being decoded.") };
+
+  // characters read before the first prediction, and per chunk
+  static final int CHUNK_SIZE = 1024;
+
+  public static final PropertyDescriptor DETECTION_MODE = new PropertyDescriptor.Builder()
+          .name("language-detection-mode")
+          .displayName("Detection Mode")
+          .description("Part of the text used to detect the language. Large texts rarely need more than a few " +
+                  "thousand characters. Other modes than the full text predict on several growing samples, which " +
+                  "a Caching Language Detector Service would cache one by one, so it is only accepted with the full text.")
+          .required(true)
+          .allowableValues(ALLOWABLE_MODES)
+          .defaultValue(MODE_FULL)
+          .build();
+
+  public static final PropertyDescriptor MAX_CHARACTERS = new PropertyDescriptor.Builder()
+          .name("language-detection-max-characters")
+          .displayName("Max Characters")
+          .description("Maximum number of characters used to detect the language, when not using the full text.")
+          .required(true)
+          .defaultValue("10000")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor WINDOWS = new PropertyDescriptor.Builder()
+          .name("language-detection-windows")
+          .displayName("Sample Windows")
+          .description("Number of windows the characters are taken from in the sampled mode.")
+          .required(true)
+          .defaultValue("5")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor MIN_CONFIDENCE = new PropertyDescriptor.Builder()
+          .name("language-detection-min-confidence")
+          .displayName("Confidence Threshold")
+          .description("Reading stops once the language is detected with at least this confidence, between 0 and 1. " +
+                  "With 1 the text is read up to the maximum number of characters.")
+          .required(true)
+          .defaultValue("0.95")
+          .addValidator(LanguageSampler::validateConfidence)
+          .build();
+
+  /**
+   * Rejects a caching detector service for the modes that probe growing samples, which it would cache one by one.
+   */
+  public static void validateDetectorService(final ValidationContext context, final PropertyDescriptor serviceProperty,
+                                             final Collection<ValidationResult> results) {
+    final String mode = context.getProperty(DETECTION_MODE).getValue();
+    if (MODE_FULL.equals(mode) || !context.getProperty(serviceProperty).isSet()) {
+      return;
+    }
+    final LanguageDetectorService service = context.getProperty(serviceProperty)
+            .asControllerService(LanguageDetectorService.class);
+    if (service != null && service.isCaching()) {
+      results.add(new ValidationResult.Builder().subject(serviceProperty.getDisplayName()).valid(false)
+              .explanation("a Caching Language Detector Service can only be used with the Full Text detection mode")
+              .build());
+    }
+  }
+
+  private final String mode;
+  private final int maxCharacters;
+  private final int windows;
+  private final double minConfidence;
+
+  LanguageSampler(String mode, int maxCharacters, int windows, double minConfidence) {
+    this.mode = mode;
+    this.maxCharacters = maxCharacters;
+    this.windows = windows;
+    this.minConfidence = minConfidence;
+  }
+
+  public static LanguageSampler create(final ProcessContext context) {
+    return new LanguageSampler(context.getProperty(DETECTION_MODE).getValue(),
+            context.getProperty(MAX_CHARACTERS).asInteger(),
+            context.getProperty(WINDOWS).asInteger(),
+            Double.parseDouble(context.getProperty(MIN_CONFIDENCE).getValue()));
+  }
+
+  /**
+   * True when only part of the text is read.
+   */
+  public boolean isBounded() {
+    return !MODE_FULL.equals(mode);
+  }
+
+  public Result detect(final LanguageDetector detector, final CharSequence text) {
+    if (!isBounded()) {
+      return new Result(detector.predictLanguage(text), text.length());
+    }
+    try {
+      if (MODE_SAMPLED.equals(mode) && text.length() > maxCharacters) {
+        return probe(detector, new TextWindows(text));
+      }
+      return probe(detector, new TextPrefix(text));
+    } catch (IOException e) {
+      // text chunks do not do any I/O
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Detects the language of a bounded part of a stream of the given size in bytes.
+   */
+  public Result detect(final LanguageDetector detector, final InputStream in, final Charset charset, final long size)
+          throws IOException {
+    if (MODE_SAMPLED.equals(mode) && size > maxCharacters) {
+      return probe(detector, new StreamWindows(in, charset, size));
+    }
+    return probe(detector, new ReaderPrefix(new InputStreamReader(in, charset)));
+  }
+
+  private Result probe(final LanguageDetector detector, final Chunks chunks) throws IOException {
+    final StringBuilder sample = new StringBuilder(Math.min(maxCharacters, 16 * CHUNK_SIZE));
+    int nextProbe = Math.min(CHUNK_SIZE, maxCharacters);
+    int probed = -1;
+    Language language = null;
+
+    while (sample.length() < maxCharacters && chunks.appendTo(sample)) {
+      if (sample.length() >= nextProbe) {
+        language = detector.predictLanguage(sample);
+        probed = sample.length();
+        if (language.getConfidence() >= minConfidence) {
+          return new Result(language, probed);
+        }
+        nextProbe = Math.min(2 * sample.length(), maxCharacters);
+      }
+    }
+
+    if (probed != sample.length()) {
+      language = detector.predictLanguage(sample);
+    }
+    return new Result(language, sample.length());
+  }
+
+  private int remaining(final StringBuilder sample) {
+    return Math.min(CHUNK_SIZE, maxCharacters - sample.length());
+  }
+
+  private static ValidationResult validateConfidence(final String subject, final String input,
+                                                     final ValidationContext context) {
+    boolean valid;
+    try {
+      final double value = Double.parseDouble(input);
+      valid = value >= 0 && value <= 1;
+    } catch (NumberFormatException e) {
+      valid = false;
+    }
+    return new ValidationResult.Builder().subject(subject).input(input).valid(valid)
+            .explanation(valid ? null : "must be a number between 0 and 1").build();
+  }
+
+  public static final class Result {
+    private final Language language;
+    private final long characters;
+
+    Result(Language language, long characters) {
+      this.language = language;
+      this.characters = characters;
+    }
+
+    public Language getLanguage() {
+      return language;
+    }
+
+    /**
+     * Characters the language was detected on.
+     */
+    public long getCharacters() {
+      return characters;
+    }
+  }
+
+  private interface Chunks {
+    /**
+     * Appends the next chunk to the sample, false when there is nothing left.
+     */
+    boolean appendTo(StringBuilder sample) throws IOException;
+  }
+
+  private final class TextPrefix implements Chunks {
+    private final CharSequence text;
+    private int position;
+
+    TextPrefix(CharSequence text) {
+      this.text = text;
+    }
+
+    @Override
+    public boolean appendTo(final StringBuilder sample) {
+      final int end = Math.min(text.length(), position + remaining(sample));
+      if (end <= position) {
+        return false;
+      }
+      sample.append(text, position, end);
+      position = end;
+      return true;
+    }
+  }
+
+  private final class ReaderPrefix implements Chunks {
+    private final Reader reader;
+    private final char[] buffer = new char[CHUNK_SIZE];
+
+    ReaderPrefix(Reader reader) {
+      this.reader = reader;
+    }
+
+    @Override
+    public boolean appendTo(final StringBuilder sample) throws IOException {
+      final int read = reader.read(buffer, 0, remaining(sample));
+      if (read <= 0) {
+        return false;
+      }
+      sample.append(buffer, 0, read);
+      return true;
+    }
+  }
+
+  private final class TextWindows implements Chunks {
+    private final CharSequence text;
+    private final int windowSize;
+    private int window;
+
+    TextWindows(CharSequence text) {
+      this.text = text;
+      this.windowSize = Math.max(1, maxCharacters / windows);
+    }
+
+    @Override
+    public boolean appendTo(final StringBuilder sample) {
+      if (window >= windows) {
+        return false;
+      }
+      final int start = (int) ((long) text.length() * window++ / windows);
+      if (sample.length() > 0) {
+        sample.append(' ');
+      }
+      sample.append(text, start, Math.min(text.length(), start + windowSize));
+      return true;
+    }
+  }
+
+  /**
+   * Windows of a stream, decoded from the bytes at evenly spaced offsets. Bytes between the windows are
+   * skipped. A window may start inside a multi-byte character, which is dropped.
+   */
+  private final class StreamWindows implements Chunks {
+    private final InputStream in;
+    private final CharsetDecoder decoder;
+    private final long size;
+    private final byte[] bytes;
+    private final CharBuffer chars;
+    private long position;
+    private int window;
+
+    StreamWindows(InputStream in, Charset charset, long size) {
+      this.in = in;
+      this.decoder = charset.newDecoder()
+              .onMalformedInput(CodingErrorAction.REPLACE)
+              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      this.size = size;
+      this.bytes = new byte[Math.max(1, maxCharacters / windows)];
+      this.chars = CharBuffer.allocate(bytes.length);
+    }
+
+    @Override
+    public boolean appendTo(final StringBuilder sample) throws IOException {
+      if (window >= windows) {
+        return false;
+      }
+      final long start = size * window++ / windows;
+      while (position < start) {
+        final long skipped = in.skip(start - position);
+        if (skipped <= 0) {
+          return false;
+        }
+        position += skipped;
+      }
+
+      int length = 0;
+      int read;
+      while (length < bytes.length && (read = in.read(bytes, length, bytes.length - length)) > 0) {
+        length += read;
+      }
+      if (length == 0) {
+        return false;
+      }
+      position += length;
+
+      decoder.reset();
+      chars.clear();
+      decoder.decode(ByteBuffer.wrap(bytes, 0, length), chars, true);
+      chars.flip();
+      while (chars.hasRemaining() && chars.get(chars.position()) == '\uFFFD') {
+        chars.get();
+      }
+      if (sample.length() > 0) {
+        sample.append(' ');
+      }
+      sample.append(chars);
+      return true;
+    }
+  }
+
+}
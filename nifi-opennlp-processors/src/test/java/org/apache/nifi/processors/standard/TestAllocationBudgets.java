@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.standard;
+
+import opennlp.tools.langdetect.Language;
+import opennlp.tools.langdetect.LanguageDetector;
+import opennlp.tools.namefind.BioCodec;
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.NameSample;
+import opennlp.tools.namefind.TokenNameFinderFactory;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.util.ObjectStreamUtils;
+import opennlp.tools.util.Span;
+import opennlp.tools.util.TrainingParameters;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.apache.opennlp.nifi.DummyModelServices;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Bytes allocated per record when the record processors annotate a fixed corpus, measured with the
+ * allocation counter of the annotating thread. The model services return fixed results, so the
+ * budgets cover the code of this bundle rather than the OpenNLP models.
+ * <p>
+ * The budgets are in budgets.properties, and can be overridden with a system property of the same
+ * name prefixed by "allocation.budget.", for instance -Dallocation.budget.NamefindRecord=8192.
+ */
+public class TestAllocationBudgets {
+
+  private static final int RECORDS = 200;
+  private static final int WARM_UP_PASSES = 50;
+  private static final int PASSES = 20;
+
+  private static final String[] WORDS = {"the", "river", "runs", "past", "old", "houses", "and", "quiet",
+          "gardens", "where", "children", "play", "until", "evening", "light", "fades", "over", "town"};
+  private static final String[] NAMES = {"Anna", "Peter", "Maria", "Jonas", "Sofie"};
+
+  private static final RecordField BODY = new RecordField("body", RecordFieldType.STRING.getDataType());
+  private static final RecordField ANNOTATIONS = new RecordField("annotations",
+          RecordFieldType.RECORD.getRecordDataType(new SimpleRecordSchema(Collections.emptyList())));
+  private static final RecordSchema SCHEMA = new SimpleRecordSchema(Arrays.asList(BODY, ANNOTATIONS));
+
+  private static com.sun.management.ThreadMXBean threads;
+  private static Properties budgets;
+  private static TokenNameFinderModel nameModel;
+
+  @BeforeClass
+  public static void setupClass() throws IOException {
+    threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    if (!threads.isThreadAllocatedMemoryEnabled()) {
+      threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    budgets = new Properties();
+    try (InputStream in = Files.newInputStream(Paths.get("src/test/resources/TestAllocationBudgets/budgets.properties"))) {
+      budgets.load(in);
+    }
+
+    // only needed to create name finders, their results are fixed
+    final TrainingParameters params = TrainingParameters.defaultParams();
+    params.put(TrainingParameters.ITERATIONS_PARAM, "1");
+    params.put(TrainingParameters.CUTOFF_PARAM, "1");
+    nameModel = NameFinderME.train("en", "person", ObjectStreamUtils.createObjectStream(
+            new NameSample(new String[] {"Anna", "lives", "here", "."}, new Span[] {new Span(0, 1, "person")}, true),
+            new NameSample(new String[] {"Ask", "Peter", "about", "it", "."}, new Span[] {new Span(1, 2, "person")}, true)),
+            params, TokenNameFinderFactory.create(null, null, Collections.emptyMap(), new BioCodec()));
+  }
+
+  @Test
+  public void testTokenizeRecord() {
+    final TestRunner runner = newRunner(TokenizeRecord.class);
+    runner.setProperty(TokenizeRecord.MODEL_TYPE_PD, TokenizeRecord.SIMPLE_RULE_BASED);
+
+    assertWithinBudget("TokenizeRecord", runner, corpus());
+  }
+
+  @Test
+  public void testTokenizeRecordColumns() {
+    final TestRunner runner = newRunner(TokenizeRecord.class);
+    runner.setProperty(TokenizeRecord.MODEL_TYPE_PD, TokenizeRecord.SIMPLE_RULE_BASED);
+    runner.setProperty(TokenizeRecord.SPAN_FORMAT_PD, TokenizeRecord.SPAN_FORMAT_COLUMNS);
+
+    assertWithinBudget("TokenizeRecord.columns", runner, corpus());
+  }
+
+  @Test
+  public void testSentenceDetectRecord() {
+    final TestRunner runner = newRunner(SentenceDetectRecord.class);
+    runner.setProperty(SentenceDetectRecord.MODEL_TYPE_PD, SentenceDetectRecord.NEWLINE_BASED);
+
+    assertWithinBudget("SentenceDetectRecord", runner, corpus());
+  }
+
+  @Test
+  public void testNamefindRecord() throws InitializationException {
+    // the names are found on token annotations, written before measuring
+    final List<Record> records = corpus();
+    final TestRunner tokenizer = newRunner(TokenizeRecord.class);
+    tokenizer.setProperty(TokenizeRecord.MODEL_TYPE_PD, TokenizeRecord.SIMPLE_RULE_BASED);
+    annotate(schedule(tokenizer), tokenizer.getProcessContext(), records, 1);
+
+    final TestRunner runner = newRunner(NamefindRecord.class);
+    final DummyModelServices.NameFinderService service = new DummyModelServices.NameFinderService(
+            new FixedNameFinder(nameModel, new Span[] {new Span(0, 1, "person", 0.9d)}));
+    runner.addControllerService("nameFinder", service, new HashMap<>());
+    runner.enableControllerService(service);
+    runner.setProperty(NamefindRecord.DETECTOR_SERVICE_PD, "nameFinder");
+
+    assertWithinBudget("NamefindRecord", runner, records);
+  }
+
+  @Test
+  public void testLanguageDetectRecord() throws InitializationException {
+    final TestRunner runner = newRunner(LanguageDetectRecord.class);
+    final DummyModelServices.LanguageDetectorService service = new DummyModelServices.LanguageDetectorService(
+            new FixedLanguageDetector(new Language("eng", 0.9d)));
+    runner.addControllerService("languageDetector", service, new HashMap<>());
+    runner.enableControllerService(service);
+    runner.setProperty(LanguageDetectRecord.DETECTOR_SERVICE, "languageDetector");
+
+    assertWithinBudget("LanguageDetectRecord", runner, corpus());
+  }
+
+  private static TestRunner newRunner(final Class<? extends AbstractOpenNLPRecordProcessor> type) {
+    final TestRunner runner = TestRunners.newTestRunner(type);
+    runner.setProperty(AbstractOpenNLPRecordProcessor.TEXT_RECORD_PATH_PD, "/body");
+    runner.setProperty(AbstractOpenNLPRecordProcessor.ANNOTATION_RECORD_PATH_PD, "/annotations");
+    return runner;
+  }
+
+  private static void assertWithinBudget(final String name, final TestRunner runner, final List<Record> records) {
+    final AbstractOpenNLPRecordProcessor processor = schedule(runner);
+    final ProcessContext context = runner.getProcessContext();
+    annotate(processor, context, records, WARM_UP_PASSES);
+
+    final long threadId = Thread.currentThread().getId();
+    final long before = threads.getThreadAllocatedBytes(threadId);
+    annotate(processor, context, records, PASSES);
+    final long perRecord = (threads.getThreadAllocatedBytes(threadId) - before) / ((long) PASSES * records.size());
+
+    final long budget = Long.parseLong(System.getProperty("allocation.budget." + name, budgets.getProperty(name)));
+    assertTrue(name + " allocated " + perRecord + " bytes per record, over the budget of " + budget,
+            perRecord <= budget);
+  }
+
+  private static AbstractOpenNLPRecordProcessor schedule(final TestRunner runner) {
+    final AbstractOpenNLPRecordProcessor processor = (AbstractOpenNLPRecordProcessor) runner.getProcessor();
+    processor.createPlan(runner.getProcessContext());
+    return processor;
+  }
+
+  /**
+   * Annotates the records directly, as the processor does for each record it reads, without reading
+   * and writing them.
+   */
+  private static void annotate(final AbstractOpenNLPRecordProcessor processor, final ProcessContext context,
+                               final List<Record> records, final int passes) {
+    final FlowFile flowFile = new MockFlowFile(1L);
+    for (int pass = 0; pass < passes; pass++) {
+      for (int i = 0; i < records.size(); i++) {
+        processor.process(records.get(i), flowFile, context, i);
+      }
+    }
+  }
+
+  /**
+   * Records of three sentences on separate lines, 27 tokens and a name each.
+   */
+  private static List<Record> corpus() {
+    final Random random = new Random(42L);
+    final List<Record> records = new ArrayList<>(RECORDS);
+    for (int i = 0; i < RECORDS; i++) {
+      final StringBuilder text = new StringBuilder();
+      for (int sentence = 0; sentence < 3; sentence++) {
+        if (sentence > 0) {
+          text.append('\n');
+        }
+        final int name = sentence == 0 ? random.nextInt(8) : -1;
+        for (int word = 0; word < 8; word++) {
+          final String next = word == name ? NAMES[random.nextInt(NAMES.length)] : WORDS[random.nextInt(WORDS.length)];
+          if (word > 0) {
+            text.append(' ').append(next);
+          } else {
+            text.append(Character.toUpperCase(next.charAt(0))).append(next, 1, next.length());
+          }
+        }
+        text.append('.');
+      }
+
+      final Record record = new MapRecord(SCHEMA, new HashMap<>());
+      record.setValue(BODY, text.toString());
+      record.setValue(ANNOTATIONS, new MapRecord(new SimpleRecordSchema(Collections.emptyList()), new HashMap<>()));
+      records.add(record);
+    }
+    return records;
+  }
+
+  private static class FixedNameFinder extends NameFinderME {
+    private final Span[] names;
+
+    FixedNameFinder(final TokenNameFinderModel model, final Span[] names) {
+      super(model);
+      this.names = names;
+    }
+
+    @Override
+    public Span[] find(final String[] tokens) {
+      return names;
+    }
+  }
+
+  private static class FixedLanguageDetector implements LanguageDetector {
+    private final Language language;
+
+    FixedLanguageDetector(final Language language) {
+      this.language = language;
+    }
+
+    @Override
+    public Language[] predictLanguages(final CharSequence content) {
+      return new Language[] {language};
+    }
+
+    @Override
+    public Language predictLanguage(final CharSequence content) {
+      return language;
+    }
+
+    @Override
+    public String[] getSupportedLanguages() {
+      return new String[] {language.getLang()};
+    }
+  }
+
+}
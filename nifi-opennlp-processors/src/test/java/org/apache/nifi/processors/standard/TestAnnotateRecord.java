@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.standard;
+
+import opennlp.tools.langdetect.Language;
+import opennlp.tools.langdetect.LanguageDetector;
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.util.Span;
+import org.apache.nifi.json.JsonRecordSetWriter;
+import org.apache.nifi.json.JsonTreeReader;
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.schema.access.SchemaAccessUtils;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.apache.opennlp.nifi.DummyModelServices;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestAnnotateRecord {
+
+  private TestRunner testRunner;
+
+  @Before
+  public void setup() throws InitializationException, IOException {
+    // Test runner
+    testRunner = TestRunners.newTestRunner(AnnotateRecord.class);
+
+    // Reader
+    final String inputSchemaText = new String(Files.readAllBytes(Paths.get("src/test/resources/TestAnnotateRecord/schema/schema.avsc")));
+    final JsonTreeReader jsonReader = new JsonTreeReader();
+    testRunner.addControllerService("reader", jsonReader);
+    testRunner.setProperty(jsonReader, SchemaAccessUtils.SCHEMA_ACCESS_STRATEGY, SchemaAccessUtils.SCHEMA_TEXT_PROPERTY);
+    testRunner.setProperty(jsonReader, SchemaAccessUtils.SCHEMA_TEXT, inputSchemaText);
+    testRunner.enableControllerService(jsonReader);
+
+    // Writer
+    final String outputSchemaText = new String(Files.readAllBytes(Paths.get("src/test/resources/TestAnnotateRecord/schema/schema.avsc")));
+    final JsonRecordSetWriter writerService = new JsonRecordSetWriter();
+    testRunner.addControllerService("writer", writerService);
+    testRunner.setProperty(writerService, SchemaAccessUtils.SCHEMA_ACCESS_STRATEGY, SchemaAccessUtils.SCHEMA_TEXT_PROPERTY);
+    testRunner.setProperty(writerService, SchemaAccessUtils.SCHEMA_TEXT, outputSchemaText);
+    testRunner.setProperty(writerService, "Pretty Print JSON", "true");
+    testRunner.setProperty(writerService, "Schema Write Strategy", "full-schema-attribute");
+    testRunner.enableControllerService(writerService);
+
+    // Set Properties
+    testRunner.setProperty(AnnotateRecord.RECORD_READER, "reader");
+    testRunner.setProperty(AnnotateRecord.RECORD_WRITER, "writer");
+    testRunner.setProperty(AnnotateRecord.TEXT_RECORD_PATH_PD, "/body");
+    testRunner.setProperty(AnnotateRecord.ANNOTATION_RECORD_PATH_PD, "/annotations");
+  }
+
+  @Test
+  public void testAllStages() throws InitializationException, IOException {
+
+    // Add controller services
+    NameFinderME nameFinder = mock(NameFinderME.class);
+    when(nameFinder.find(any(String[].class))).thenReturn(new Span[] {
+            new Span(0, 2, "Person", 0.9985619989883148),
+            new Span(10, 11, "Person", 0.9839235561554898)});
+    DummyModelServices.NameFinderService nameFinderService = new DummyModelServices.NameFinderService(nameFinder);
+    testRunner.addControllerService("nameFinderService", nameFinderService);
+    testRunner.enableControllerService(nameFinderService);
+
+    LanguageDetector detector = mock(LanguageDetector.class);
+    when(detector.predictLanguage(anyString())).thenReturn(new Language("xxx", 0.9d));
+    DummyModelServices.LanguageDetectorService languageService = new DummyModelServices.LanguageDetectorService(detector);
+    testRunner.addControllerService("languageService", languageService);
+    testRunner.enableControllerService(languageService);
+
+    testRunner.setProperty(AnnotateRecord.SENTENCE_MODEL_TYPE_PD, SentenceDetectRecord.NEWLINE_BASED);
+    testRunner.setProperty(AnnotateRecord.TOKENIZER_MODEL_TYPE_PD, TokenizeRecord.SIMPLE_RULE_BASED);
+    testRunner.setProperty(AnnotateRecord.NAME_FINDER_SERVICE_PD, "nameFinderService");
+    testRunner.setProperty(AnnotateRecord.LANGUAGE_DETECTOR_SERVICE_PD, "languageService");
+
+    testRunner.enqueue(Paths.get("src/test/resources/TestAnnotateRecord/input/simple.json"));
+    testRunner.run();
+
+    testRunner.assertAllFlowFilesTransferred(AnnotateRecord.REL_SUCCESS, 1);
+
+    final String expectedOutput = new String(Files.readAllBytes(
+            Paths.get("src/test/resources/TestAnnotateRecord/output/simple.json")));
+    testRunner.getFlowFilesForRelationship(AnnotateRecord.REL_SUCCESS).get(0).assertContentEquals(expectedOutput);
+  }
+
+  @Test
+  public void testNameFinderRequiresTokenizer() throws InitializationException {
+    NameFinderME nameFinder = mock(NameFinderME.class);
+    DummyModelServices.NameFinderService nameFinderService = new DummyModelServices.NameFinderService(nameFinder);
+    testRunner.addControllerService("nameFinderService", nameFinderService);
+    testRunner.enableControllerService(nameFinderService);
+
+    testRunner.setProperty(AnnotateRecord.TOKENIZER_MODEL_TYPE_PD, AnnotateRecord.NONE);
+    testRunner.setProperty(AnnotateRecord.NAME_FINDER_SERVICE_PD, "nameFinderService");
+    testRunner.assertNotValid();
+  }
+
+}
@@ -26,6 +26,8 @@ import org.apache.nifi.schema.access.SchemaAccessUtils;
 import org.apache.nifi.util.TestRunner;
 import org.apache.nifi.util.TestRunners;
 import org.apache.opennlp.nifi.DummyModelServices;
+import org.apache.opennlp.nifi.LanguageSampler;
+import org.apache.opennlp.nifi.service.CachingLanguageDetectorService;
 import org.apache.opennlp.nifi.service.LanguageDetectorModelService;
 import org.junit.Before;
 import org.junit.Test;
@@ -36,6 +38,8 @@ import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -101,5 +105,35 @@ public class TestLanguageDetectRecord {
     testRunner.getFlowFilesForRelationship(LanguageDetectRecord.REL_SUCCESS).get(0).assertContentEquals(expectedOutput);
   }
 
+  @Test
+  public void testCachingServiceCountersAndDetectionMode() throws InitializationException {
+
+    LanguageDetector detector = mock(LanguageDetector.class);
+    when(detector.predictLanguages(any())).thenReturn(new Language[] {new Language("xxx", 0.9d)});
+    DummyModelServices.LanguageDetectorService modelService = new DummyModelServices.LanguageDetectorService(detector);
+    testRunner.addControllerService("modelService", modelService, propertiesServiceProperties);
+    testRunner.enableControllerService(modelService);
+
+    CachingLanguageDetectorService cachingService = new CachingLanguageDetectorService();
+    testRunner.addControllerService("cachingService", cachingService);
+    testRunner.setProperty(cachingService, CachingLanguageDetectorService.DELEGATE_SERVICE, "modelService");
+    testRunner.enableControllerService(cachingService);
+    testRunner.setProperty(LanguageDetectRecord.DETECTOR_SERVICE, "cachingService");
+
+    testRunner.setProperty(LanguageSampler.DETECTION_MODE, LanguageSampler.MODE_SAMPLED);
+    testRunner.assertNotValid();
+    testRunner.setProperty(LanguageSampler.DETECTION_MODE, LanguageSampler.MODE_FULL);
+    testRunner.assertValid();
+
+    testRunner.enqueue("[{\"id\": 1, \"body\": \"the same text\", \"annotations\": {}}," +
+            "{\"id\": 2, \"body\": \"the same text\", \"annotations\": {}}," +
+            "{\"id\": 3, \"body\": \"other text\", \"annotations\": {}}]");
+    testRunner.run();
+
+    testRunner.assertAllFlowFilesTransferred(LanguageDetectRecord.REL_SUCCESS, 1);
+    assertEquals(1L, testRunner.getCounterValue(CachingLanguageDetectorService.HITS_COUNTER).longValue());
+    assertEquals(2L, testRunner.getCounterValue(CachingLanguageDetectorService.MISSES_COUNTER).longValue());
+  }
+
 
 }
@@ -23,21 +23,29 @@ import org.apache.nifi.json.JsonRecordSetWriter;
 import org.apache.nifi.json.JsonTreeReader;
 import org.apache.nifi.reporting.InitializationException;
 import org.apache.nifi.schema.access.SchemaAccessUtils;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.Record;
 import org.apache.nifi.util.TestRunner;
 import org.apache.nifi.util.TestRunners;
 import org.apache.opennlp.nifi.DummyModelServices;
 import org.apache.opennlp.nifi.service.NameFinderModelService;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class TestNamefindRecord {
@@ -102,4 +110,90 @@ public class TestNamefindRecord {
     testRunner.getFlowFilesForRelationship(NamefindRecord.REL_SUCCESS).get(0).assertContentEquals(expectedOutput);
   }
 
+  @Test
+  public void testProcessorColumns() throws InitializationException, IOException {
+
+    // Reader and writer of the columns schema
+    final String columnsSchemaText = new String(Files.readAllBytes(Paths.get("src/test/resources/TestNamefindRecord/schema/columns.avsc")));
+    final JsonTreeReader columnsReader = new JsonTreeReader();
+    testRunner.addControllerService("columnsReader", columnsReader);
+    testRunner.setProperty(columnsReader, SchemaAccessUtils.SCHEMA_ACCESS_STRATEGY, SchemaAccessUtils.SCHEMA_TEXT_PROPERTY);
+    testRunner.setProperty(columnsReader, SchemaAccessUtils.SCHEMA_TEXT, columnsSchemaText);
+    testRunner.enableControllerService(columnsReader);
+
+    final JsonRecordSetWriter columnsWriter = new JsonRecordSetWriter();
+    testRunner.addControllerService("columnsWriter", columnsWriter);
+    testRunner.setProperty(columnsWriter, SchemaAccessUtils.SCHEMA_ACCESS_STRATEGY, SchemaAccessUtils.SCHEMA_TEXT_PROPERTY);
+    testRunner.setProperty(columnsWriter, SchemaAccessUtils.SCHEMA_TEXT, columnsSchemaText);
+    testRunner.setProperty(columnsWriter, "Pretty Print JSON", "true");
+    testRunner.setProperty(columnsWriter, "Schema Write Strategy", "full-schema-attribute");
+    testRunner.enableControllerService(columnsWriter);
+
+    testRunner.setProperty(NamefindRecord.RECORD_READER, "columnsReader");
+    testRunner.setProperty(NamefindRecord.RECORD_WRITER, "columnsWriter");
+    testRunner.setProperty(NamefindRecord.SPAN_FORMAT_PD, NamefindRecord.SPAN_FORMAT_COLUMNS);
+
+    // Add controller service
+    NameFinderME nameFinder = mock(NameFinderME.class);
+    DummyModelServices.NameFinderService modelService = new DummyModelServices.NameFinderService(nameFinder);
+    when(nameFinder.find(any(String[].class))).thenReturn(new Span[] {
+            new Span(0, 2, "Person", 0.9985619989883148),
+            new Span(10, 11, "Person", 0.9839235561554898)});
+
+    testRunner.addControllerService("propertiesServiceTest", modelService, propertiesServiceProperties);
+    testRunner.enableControllerService(modelService);
+    testRunner.setProperty(NamefindRecord.DETECTOR_SERVICE_PD, "propertiesServiceTest");
+
+    testRunner.enqueue(Paths.get("src/test/resources/TestNamefindRecord/input/columns.json"));
+    testRunner.run();
+
+    testRunner.assertAllFlowFilesTransferred(NamefindRecord.REL_SUCCESS, 1);
+
+    // the tokens are read from the columns
+    final ArgumentCaptor<String[]> tokens = ArgumentCaptor.forClass(String[].class);
+    verify(nameFinder).find(tokens.capture());
+    assertArrayEquals(new String[] {"John", "Doe", "could", "not", "be", "found", ".", "But", "his", "wife", "Jane",
+            "was", "in", "the", "kitchen", "."}, tokens.getValue());
+
+    final String expectedOutput = new String(Files.readAllBytes(
+            Paths.get("src/test/resources/TestNamefindRecord/output/columns.json")));
+    testRunner.getFlowFilesForRelationship(NamefindRecord.REL_SUCCESS).get(0).assertContentEquals(expectedOutput);
+  }
+
+  @Test
+  public void testTokenOffsetsAreReadWithoutCopies() {
+
+    // 10000 token records, as read from a FlowFile
+    final StringBuilder text = new StringBuilder();
+    final Object[] tokenRecords = new Object[10000];
+    for (int i = 0; i < tokenRecords.length; i++) {
+      final int begin = text.length();
+      text.append("token").append(i).append(' ');
+      final Record token = new MapRecord(NamefindRecord.SPAN_SCHEMA, new HashMap<>(2));
+      token.setValue(NamefindRecord.SPAN_BEGIN, begin);
+      token.setValue(NamefindRecord.SPAN_END, text.length() - 1);
+      tokenRecords[i] = token;
+    }
+    final String body = text.toString();
+
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long threadId = Thread.currentThread().getId();
+
+    // grow the buffer of this thread first
+    NamefindRecord.readSpans(tokenRecords, SpanBuffer.local());
+
+    long before = threads.getThreadAllocatedBytes(threadId);
+    final SpanBuffer offsets = NamefindRecord.readSpans(tokenRecords, SpanBuffer.local());
+    final long offsetsAllocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+    before = threads.getThreadAllocatedBytes(threadId);
+    final String[] tokens = offsets.texts(body);
+    final long tokensAllocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+    assertEquals(tokenRecords.length, offsets.size());
+    assertEquals("token9999", tokens[tokens.length - 1]);
+    assertTrue("offsets allocated " + offsetsAllocated + " bytes, tokens " + tokensAllocated,
+            offsetsAllocated * 10 < tokensAllocated);
+  }
+
 }
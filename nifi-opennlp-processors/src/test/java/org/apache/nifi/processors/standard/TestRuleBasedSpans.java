@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.standard;
+
+import opennlp.tools.sentdetect.NewlineSentenceDetector;
+import opennlp.tools.tokenize.SimpleTokenizer;
+import opennlp.tools.tokenize.WhitespaceTokenizer;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class TestRuleBasedSpans {
+
+  // whitespace of several kinds, letters, digits and punctuation, in and outside the lookup table
+  private static final String ALPHABET = " \t\n\r\u000b\f\u00a0\u2003\u3000" +
+          "abcXYZ\u00e6\u00f8\u00e5\u00df\u0416\u4e2d" +
+          "019\u0663\u00bd" +
+          ".,!?--''\"()\u2013\u00a7\ud83d\ude00";
+
+  private static final String[] EXAMPLES = {
+          "",
+          " ",
+          "This is sentence one.\nAnd this is sentence two.",
+          "  leading and trailing  ",
+          "\r\n\r\nWindows\r\nline endings\r\n",
+          "Numbers 12,345.67 and dots...!!?",
+          "Mixed123abc 4you --- ''quoted''",
+          "Non\u00a0breaking\u2003spaces\u3000here",
+  };
+
+  @Test
+  public void testExamplesMatchOpenNLP() {
+    for (String text : EXAMPLES) {
+      assertSameAsOpenNLP(text);
+    }
+  }
+
+  @Test
+  public void testRandomTextsMatchOpenNLP() {
+    final Random random = new Random(42);
+    for (int i = 0; i < 5000; i++) {
+      final StringBuilder text = new StringBuilder();
+      final int length = random.nextInt(80);
+      for (int j = 0; j < length; j++) {
+        text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+      }
+      assertSameAsOpenNLP(text.toString());
+    }
+  }
+
+  private static void assertSameAsOpenNLP(final String text) {
+    assertArrayEquals(text, WhitespaceTokenizer.INSTANCE.tokenizePos(text),
+            RuleBasedSpans.whitespaceTokens(text, SpanBuffer.local()).toSpans());
+    assertArrayEquals(text, SimpleTokenizer.INSTANCE.tokenizePos(text),
+            RuleBasedSpans.simpleTokens(text, SpanBuffer.local()).toSpans());
+    assertArrayEquals(text, new NewlineSentenceDetector().sentPosDetect(text),
+            RuleBasedSpans.newlineSentences(text, SpanBuffer.local()).toSpans());
+  }
+
+}
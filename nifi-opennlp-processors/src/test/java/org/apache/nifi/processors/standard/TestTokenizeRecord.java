@@ -17,6 +17,13 @@
 
 package org.apache.nifi.processors.standard;
 
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import opennlp.tools.tokenize.SimpleTokenizer;
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.util.Span;
 import org.apache.nifi.json.JsonRecordSetWriter;
 import org.apache.nifi.json.JsonTreeReader;
 import org.apache.nifi.reporting.InitializationException;
@@ -24,16 +31,31 @@ import org.apache.nifi.schema.access.SchemaAccessUtils;
 import org.apache.nifi.util.MockFlowFile;
 import org.apache.nifi.util.TestRunner;
 import org.apache.nifi.util.TestRunners;
+import org.apache.opennlp.nifi.AnnotateEvents;
+import org.apache.opennlp.nifi.AnnotationMetrics;
 import org.apache.opennlp.nifi.DummyModelServices;
 import org.apache.opennlp.nifi.service.TokenizerModelService;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 public class TestTokenizeRecord {
 
@@ -132,5 +154,259 @@ public class TestTokenizeRecord {
 
   }
 
+  @Test
+  public void testProcessorParallelKeepsRecordOrder() {
+
+    final StringBuilder input = new StringBuilder("[");
+    for (int i = 0; i < 500; i++) {
+      input.append(i == 0 ? "" : ",")
+              .append("{\"id\": ").append(i)
+              .append(", \"body\": \"Record ").append(i).append(" has ").append(i % 7).append(" words, more or less.\"")
+              .append(", \"annotations\": {}}");
+    }
+    input.append("]");
+
+    // Sequential
+    testRunner.enqueue(input.toString());
+    testRunner.run();
+    testRunner.assertAllFlowFilesTransferred(TokenizeRecord.REL_SUCCESS, 1);
+    final MockFlowFile sequential = testRunner.getFlowFilesForRelationship(TokenizeRecord.REL_SUCCESS).get(0);
+
+    // Parallel, with an in-flight window smaller than the record count
+    testRunner.clearTransferState();
+    testRunner.setProperty(TokenizeRecord.PARALLELISM_PD, "4");
+    testRunner.setProperty(TokenizeRecord.MAX_IN_FLIGHT_PD, "16");
+    testRunner.enqueue(input.toString());
+    testRunner.run();
+    testRunner.assertAllFlowFilesTransferred(TokenizeRecord.REL_SUCCESS, 1);
+    final MockFlowFile parallel = testRunner.getFlowFilesForRelationship(TokenizeRecord.REL_SUCCESS).get(0);
+
+    parallel.assertContentEquals(sequential.toByteArray());
+    parallel.assertAttributeEquals("record.count", "500");
+  }
+
+  @Test
+  public void testProcessorPipelinedKeepsRecordOrder() {
+
+    final StringBuilder input = new StringBuilder("[");
+    for (int i = 0; i < 500; i++) {
+      input.append(i == 0 ? "" : ",")
+              .append("{\"id\": ").append(i)
+              .append(", \"body\": \"Record ").append(i).append(" has ").append(i % 7).append(" words, more or less.\"")
+              .append(", \"annotations\": {}}");
+    }
+    input.append("]");
+
+    // Sequential
+    testRunner.enqueue(input.toString());
+    testRunner.run();
+    testRunner.assertAllFlowFilesTransferred(TokenizeRecord.REL_SUCCESS, 1);
+    final MockFlowFile sequential = testRunner.getFlowFilesForRelationship(TokenizeRecord.REL_SUCCESS).get(0);
+
+    // Pipelined, with batches that do not divide the record count and a short queue
+    testRunner.clearTransferState();
+    testRunner.setProperty(TokenizeRecord.PIPELINE_PD, "true");
+    testRunner.setProperty(TokenizeRecord.PIPELINE_BATCH_SIZE_PD, "7");
+    testRunner.setProperty(TokenizeRecord.PIPELINE_QUEUE_DEPTH_PD, "2");
+    testRunner.enqueue(input.toString());
+    testRunner.run();
+    testRunner.assertAllFlowFilesTransferred(TokenizeRecord.REL_SUCCESS, 1);
+    final MockFlowFile pipelined = testRunner.getFlowFilesForRelationship(TokenizeRecord.REL_SUCCESS).get(0);
+
+    pipelined.assertContentEquals(sequential.toByteArray());
+    pipelined.assertAttributeEquals("record.count", "500");
+    assertEquals(Long.valueOf(72), testRunner.getCounterValue("Pipeline Batches"));
+
+    // Pipelined, annotating each batch in parallel
+    testRunner.clearTransferState();
+    testRunner.setProperty(TokenizeRecord.PARALLELISM_PD, "4");
+    testRunner.enqueue(input.toString());
+    testRunner.run();
+    testRunner.assertAllFlowFilesTransferred(TokenizeRecord.REL_SUCCESS, 1);
+    final MockFlowFile parallel = testRunner.getFlowFilesForRelationship(TokenizeRecord.REL_SUCCESS).get(0);
+
+    parallel.assertContentEquals(sequential.toByteArray());
+    parallel.assertAttributeEquals("record.count", "500");
+  }
+
+  @Test
+  public void testModelKeyIsPassedToService() throws InitializationException {
+
+    final Set<String> keys = ConcurrentHashMap.newKeySet();
+    DummyModelServices.TokenizerService modelService = new DummyModelServices.TokenizerService() {
+      @Override
+      public Tokenizer getInstance(String key) {
+        keys.add(String.valueOf(key));
+        return getInstance();
+      }
+    };
+    testRunner.addControllerService("propertiesServiceTest", modelService, propertiesServiceProperties);
+    testRunner.enableControllerService(modelService);
+    testRunner.setProperty(TokenizeRecord.DETECTOR_SERVICE_PD, "propertiesServiceTest");
+    testRunner.setProperty(TokenizeRecord.MODEL_TYPE_PD, TokenizeRecord.MODEL_BASED);
+    testRunner.setProperty(TokenizeRecord.MODEL_KEY_PD, "${lang}");
+
+    testRunner.enqueue("[{\"id\": 1, \"body\": \"Hej med dig.\", \"annotations\": {}}]",
+            Collections.singletonMap("lang", "da"));
+    testRunner.run();
+
+    testRunner.assertAllFlowFilesTransferred(TokenizeRecord.REL_SUCCESS, 1);
+    assertEquals(Collections.singleton("da"), keys);
+  }
+
+  @Test
+  public void testRepeatedTextsAreTokenizedOnce() throws InitializationException {
+
+    final AtomicInteger tokenized = new AtomicInteger();
+    DummyModelServices.TokenizerService modelService = new DummyModelServices.TokenizerService() {
+      @Override
+      public Tokenizer getInstance(String key) {
+        tokenized.incrementAndGet();
+        return getInstance();
+      }
+    };
+    testRunner.addControllerService("propertiesServiceTest", modelService, propertiesServiceProperties);
+    testRunner.enableControllerService(modelService);
+    testRunner.setProperty(TokenizeRecord.DETECTOR_SERVICE_PD, "propertiesServiceTest");
+    testRunner.setProperty(TokenizeRecord.MODEL_TYPE_PD, TokenizeRecord.MODEL_BASED);
+    testRunner.setProperty(TokenizeRecord.ANNOTATION_CACHE_SIZE_PD, "1 MB");
+
+    final String input = "[{\"id\": 1, \"body\": \"Hej med dig.\", \"annotations\": {}}," +
+            "{\"id\": 2, \"body\": \"Hej med dig.\", \"annotations\": {}}," +
+            "{\"id\": 3, \"body\": \"Farvel.\", \"annotations\": {}}]";
+    testRunner.enqueue(input);
+    testRunner.run();
+
+    testRunner.assertAllFlowFilesTransferred(TokenizeRecord.REL_SUCCESS, 1);
+    final MockFlowFile out = testRunner.getFlowFilesForRelationship(TokenizeRecord.REL_SUCCESS).get(0);
+    assertEquals(2, tokenized.get());
+    assertEquals(1L, testRunner.getCounterValue("Annotation Cache Hits").longValue());
+    assertEquals(2L, testRunner.getCounterValue("Annotation Cache Misses").longValue());
+
+    // cached tokens are the same as computed ones
+    testRunner.clearTransferState();
+    testRunner.setProperty(TokenizeRecord.ANNOTATION_CACHE_SIZE_PD, "0 B");
+    testRunner.enqueue(input);
+    testRunner.run();
+    testRunner.getFlowFilesForRelationship(TokenizeRecord.REL_SUCCESS).get(0).assertContentEquals(out.toByteArray());
+  }
+
+  @Test
+  public void testMetricsAreCounted() {
+
+    testRunner.setProperty(TokenizeRecord.MODEL_TYPE_PD, TokenizeRecord.WHITESPACE_RULE_BASED);
+
+    testRunner.enqueue("[{\"id\": 1, \"body\": \"Hej med dig.\", \"annotations\": {}}," +
+            "{\"id\": 2, \"body\": \"Hej med dig.\", \"annotations\": {}}," +
+            "{\"id\": 3, \"body\": \"Farvel.\", \"annotations\": {}}]");
+    testRunner.run();
+
+    testRunner.assertAllFlowFilesTransferred(TokenizeRecord.REL_SUCCESS, 1);
+    assertEquals(3L, testRunner.getCounterValue(AnnotationMetrics.RECORDS_COUNTER).longValue());
+    assertEquals(31L, testRunner.getCounterValue(AnnotationMetrics.CHARACTERS_COUNTER).longValue());
+    assertEquals(7L, testRunner.getCounterValue(AnnotationMetrics.ANNOTATIONS_COUNTER).longValue());
+  }
+
+  @Test
+  public void testAnnotateEventsAboveThresholdAreRecorded() throws IOException {
+    assumeTrue(FlightRecorder.isAvailable());
+
+    testRunner.setProperty(TokenizeRecord.MODEL_TYPE_PD, TokenizeRecord.WHITESPACE_RULE_BASED);
+    final String content = "[{\"id\": 1, \"body\": \"Hej med dig.\", \"annotations\": {}}," +
+            "{\"id\": 2, \"body\": \"Farvel.\", \"annotations\": {}}]";
+
+    final List<RecordedEvent> events = new ArrayList<>();
+    final Path file = Files.createTempFile("annotate", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("org.apache.opennlp.nifi.Annotate");
+      recording.start();
+
+      testRunner.enqueue(content);
+      testRunner.run();
+
+      // no text takes an hour
+      testRunner.setProperty(AnnotateEvents.THRESHOLD, "1 hour");
+      testRunner.enqueue(content);
+      testRunner.run();
+
+      recording.stop();
+      recording.dump(file);
+      for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+        if (event.getEventType().getName().equals("org.apache.opennlp.nifi.Annotate")) {
+          events.add(event);
+        }
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+    events.sort(Comparator.comparing(RecordedEvent::getStartTime));
+
+    testRunner.assertAllFlowFilesTransferred(TokenizeRecord.REL_SUCCESS, 2);
+    assertEquals(2, events.size());
+    assertEquals("TokenizeRecord", events.get(0).getString("processorType"));
+    assertEquals(12L, events.get(0).getLong("textLength"));
+    assertEquals("Hej med dig.", events.get(0).getString("textStart"));
+    assertEquals(3L, events.get(0).getLong("annotations"));
+    assertEquals(1L, events.get(1).getLong("annotations"));
+  }
+
+  @Test
+  public void testColumnsAreSmallerThanRecords() throws InitializationException, IOException {
+
+    final String columnsSchemaText = new String(Files.readAllBytes(Paths.get("src/test/resources/TestTokenizeRecord/schema/columns.avsc")));
+    final JsonTreeReader columnsReader = new JsonTreeReader();
+    testRunner.addControllerService("columnsReader", columnsReader);
+    testRunner.setProperty(columnsReader, SchemaAccessUtils.SCHEMA_ACCESS_STRATEGY, SchemaAccessUtils.SCHEMA_TEXT_PROPERTY);
+    testRunner.setProperty(columnsReader, SchemaAccessUtils.SCHEMA_TEXT, columnsSchemaText);
+    testRunner.enableControllerService(columnsReader);
+
+    final JsonRecordSetWriter columnsWriter = new JsonRecordSetWriter();
+    testRunner.addControllerService("columnsWriter", columnsWriter);
+    testRunner.setProperty(columnsWriter, SchemaAccessUtils.SCHEMA_ACCESS_STRATEGY, SchemaAccessUtils.SCHEMA_TEXT_PROPERTY);
+    testRunner.setProperty(columnsWriter, SchemaAccessUtils.SCHEMA_TEXT, columnsSchemaText);
+    testRunner.setProperty(columnsWriter, "Schema Write Strategy", "full-schema-attribute");
+    testRunner.enableControllerService(columnsWriter);
+
+    // a document of 10000 tokens
+    final StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      body.append("Word number ").append(i).append(" here. ");
+    }
+    final String input = "[{\"id\": 1, \"body\": \"" + body + "\", \"annotations\": {}}]";
+
+    testRunner.setProperty(TokenizeRecord.MODEL_TYPE_PD, TokenizeRecord.SIMPLE_RULE_BASED);
+    testRunner.enqueue(input);
+    testRunner.run();
+    testRunner.assertAllFlowFilesTransferred(TokenizeRecord.REL_SUCCESS, 1);
+    final long recordsSize = testRunner.getFlowFilesForRelationship(TokenizeRecord.REL_SUCCESS).get(0).getSize();
+
+    testRunner.clearTransferState();
+    testRunner.setProperty(TokenizeRecord.RECORD_READER, "columnsReader");
+    testRunner.setProperty(TokenizeRecord.RECORD_WRITER, "columnsWriter");
+    testRunner.setProperty(TokenizeRecord.SPAN_FORMAT_PD, TokenizeRecord.SPAN_FORMAT_COLUMNS);
+    testRunner.enqueue(input);
+    testRunner.run();
+    testRunner.assertAllFlowFilesTransferred(TokenizeRecord.REL_SUCCESS, 1);
+    final long columnsSize = testRunner.getFlowFilesForRelationship(TokenizeRecord.REL_SUCCESS).get(0).getSize();
+
+    // allocation of the annotation values themselves
+    final Span[] spans = SimpleTokenizer.INSTANCE.tokenizePos(body.toString());
+    final TokenizeRecord processor = new TokenizeRecord();
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long threadId = Thread.currentThread().getId();
+
+    long before = threads.getThreadAllocatedBytes(threadId);
+    processor.spansToRecordList(spans);
+    final long recordsAllocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+    before = threads.getThreadAllocatedBytes(threadId);
+    AbstractOpenNLPRecordProcessor.spansToColumns(spans);
+    final long columnsAllocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+    assertTrue(spans.length + " tokens: columns wrote " + columnsSize + " bytes, records " + recordsSize,
+            columnsSize < recordsSize);
+    assertTrue(spans.length + " tokens: columns allocated " + columnsAllocated + " bytes, records " + recordsAllocated,
+            columnsAllocated < recordsAllocated);
+  }
 
 }
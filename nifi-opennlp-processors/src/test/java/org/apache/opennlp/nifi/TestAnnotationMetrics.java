@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestAnnotationMetrics {
+
+  @Test
+  public void testPercentilesAreWithinBucketWidth() {
+    final ConcurrentHistogram histogram = new ConcurrentHistogram();
+    for (long value = 1; value <= 100_000; value++) {
+      histogram.record(value);
+    }
+    final ConcurrentHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(100_000L, snapshot.getCount());
+    assertWithin(50_000, snapshot.getPercentile(50));
+    assertWithin(99_000, snapshot.getPercentile(99));
+    assertWithin(100_000, snapshot.getMax());
+    assertEquals(0L, new ConcurrentHistogram().snapshot().getPercentile(50));
+  }
+
+  @Test
+  public void testSnapshotsGiveIntervals() {
+    final ConcurrentHistogram histogram = new ConcurrentHistogram();
+    histogram.record(1_000_000);
+    final ConcurrentHistogram.Snapshot before = histogram.snapshot();
+    histogram.record(10);
+    histogram.record(20);
+
+    final ConcurrentHistogram.Snapshot interval = histogram.snapshot().since(before);
+    assertEquals(2L, interval.getCount());
+    assertEquals(20L, interval.getMax());
+  }
+
+  @Test
+  public void testConcurrentRecordingLosesNothing() throws InterruptedException {
+    final AnnotationMetrics metrics = AnnotationMetrics.detached("Test");
+    final AnnotationMetrics.Snapshot before = metrics.snapshot();
+
+    final List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      final Thread thread = new Thread(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          metrics.recordAnnotate(10, 1_000 + i);
+          metrics.addAnnotations(3);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    final AnnotationMetrics.Snapshot interval = metrics.snapshot().since(before);
+    assertEquals(40_000L, interval.records);
+    assertEquals(400_000L, interval.characters);
+    assertEquals(120_000L, interval.annotations);
+    assertEquals(40_000L, interval.latency.getCount());
+    assertTrue(AnnotationMetricsReportingTask.format(metrics, interval).contains("40000 records"));
+  }
+
+  @Test
+  public void testParallelAnnotateTimeIsReportedAsThreadTime() {
+    final AnnotationMetrics metrics = AnnotationMetrics.detached("Test");
+    final AnnotationMetrics.Snapshot before = metrics.snapshot();
+    // four texts annotated in parallel for 30 ms each, within one 40 ms onTrigger call
+    for (int i = 0; i < 4; i++) {
+      metrics.recordAnnotate(10, 30_000_000L);
+    }
+    metrics.recordTrigger(40_000_000L);
+
+    final String report = AnnotationMetricsReportingTask.format(metrics, metrics.snapshot().since(before));
+    assertTrue(report, report.contains("annotate() 120 ms over all threads, onTrigger() 40 ms"));
+    assertFalse(report, report.contains("%"));
+  }
+
+  private static void assertWithin(final long expected, final long actual) {
+    assertTrue(expected + " ~ " + actual, Math.abs(actual - expected) <= expected / 16 + 1);
+  }
+
+}
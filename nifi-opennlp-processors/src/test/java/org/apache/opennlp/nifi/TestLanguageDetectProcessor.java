@@ -23,6 +23,7 @@ import org.apache.nifi.reporting.InitializationException;
 import org.apache.nifi.util.MockFlowFile;
 import org.apache.nifi.util.TestRunner;
 import org.apache.nifi.util.TestRunners;
+import org.apache.opennlp.nifi.service.CachingLanguageDetectorService;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -30,11 +31,17 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.apache.opennlp.nifi.LanguageDetectProcessor.LANGUAGE_CHARACTERS;
 import static org.apache.opennlp.nifi.LanguageDetectProcessor.LANGUAGE_CONFIDENCE;
 import static org.apache.opennlp.nifi.LanguageDetectProcessor.LANGUAGE_DETECTED;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class TestLanguageDetectProcessor {
@@ -79,6 +86,88 @@ public class TestLanguageDetectProcessor {
     successFiles.get(0).assertContentEquals(text);
   }
 
+  @Test
+  public void testYieldsWhileModelIsLoading() throws InitializationException {
+
+    LanguageDetector detector = mock(LanguageDetector.class);
+    DummyModelServices.LanguageDetectorService modelService = new DummyModelServices.LanguageDetectorService(detector) {
+      @Override
+      public boolean isLoading() {
+        return true;
+      }
+    };
+
+    testRunner.addControllerService("propertiesServiceTest", modelService, propertiesServiceProperties);
+    testRunner.enableControllerService(modelService);
+    testRunner.setProperty(LanguageDetectProcessor.DETECTOR_SERVICE_PD, "propertiesServiceTest");
+
+    testRunner.enqueue("This is some terrible short lame example text.");
+    testRunner.run();
+
+    // the FlowFile stays queued rather than being routed to failure
+    testRunner.assertQueueNotEmpty();
+    testRunner.assertTransferCount(LanguageDetectProcessor.REL_SUCCESS, 0);
+    testRunner.assertTransferCount(LanguageDetectProcessor.REL_FAILURE, 0);
+  }
+
+  @Test
+  public void testCachedLanguageDetection() throws InitializationException {
+
+    LanguageDetector detector = mock(LanguageDetector.class);
+    when(detector.predictLanguages(any())).thenReturn(new Language[] {new Language("abc", 0.1d)});
+    DummyModelServices.LanguageDetectorService modelService = new DummyModelServices.LanguageDetectorService(detector);
+    testRunner.addControllerService("modelService", modelService, propertiesServiceProperties);
+    testRunner.enableControllerService(modelService);
+
+    CachingLanguageDetectorService cachingService = new CachingLanguageDetectorService();
+    testRunner.addControllerService("cachingService", cachingService);
+    testRunner.setProperty(cachingService, CachingLanguageDetectorService.DELEGATE_SERVICE, "modelService");
+    testRunner.setProperty(cachingService, CachingLanguageDetectorService.NORMALIZE, "true");
+    testRunner.enableControllerService(cachingService);
+    testRunner.setProperty(LanguageDetectProcessor.DETECTOR_SERVICE_PD, "cachingService");
+
+    // the same text, up to case and whitespace
+    testRunner.enqueue("This is some terrible short lame example text.");
+    testRunner.enqueue("this is  some terrible short lame example text.");
+    testRunner.enqueue("This is some terrible short lame example text.");
+    testRunner.run(3);
+
+    testRunner.assertAllFlowFilesTransferred(LanguageDetectProcessor.REL_SUCCESS, 3);
+    for (MockFlowFile flowFile : testRunner.getFlowFilesForRelationship(LanguageDetectProcessor.REL_SUCCESS)) {
+      flowFile.assertAttributeEquals(LANGUAGE_DETECTED, "abc");
+    }
+    verify(detector, times(1)).predictLanguages(any());
+    assertEquals(2, cachingService.getHits());
+    assertEquals(1, cachingService.getMisses());
+    assertEquals(2L, testRunner.getCounterValue(CachingLanguageDetectorService.HITS_COUNTER).longValue());
+    assertEquals(1L, testRunner.getCounterValue(CachingLanguageDetectorService.MISSES_COUNTER).longValue());
+  }
+
+  @Test
+  public void testCachingServiceIsOnlyValidWithFullText() throws InitializationException {
+
+    DummyModelServices.LanguageDetectorService modelService =
+            new DummyModelServices.LanguageDetectorService(mock(LanguageDetector.class));
+    testRunner.addControllerService("modelService", modelService, propertiesServiceProperties);
+    testRunner.enableControllerService(modelService);
+
+    CachingLanguageDetectorService cachingService = new CachingLanguageDetectorService();
+    testRunner.addControllerService("cachingService", cachingService);
+    testRunner.setProperty(cachingService, CachingLanguageDetectorService.DELEGATE_SERVICE, "modelService");
+    testRunner.enableControllerService(cachingService);
+    testRunner.setProperty(LanguageDetectProcessor.DETECTOR_SERVICE_PD, "cachingService");
+    testRunner.assertValid();
+
+    // the growing samples of the bounded modes would be cached one by one
+    testRunner.setProperty(LanguageSampler.DETECTION_MODE, LanguageSampler.MODE_PREFIX);
+    testRunner.assertNotValid();
+    testRunner.setProperty(LanguageSampler.DETECTION_MODE, LanguageSampler.MODE_SAMPLED);
+    testRunner.assertNotValid();
+
+    testRunner.setProperty(LanguageDetectProcessor.DETECTOR_SERVICE_PD, "modelService");
+    testRunner.assertValid();
+  }
+
   @Test(expected = AssertionError.class)
   public void testInvalidCharset() {
     testRunner.setProperty(LanguageDetectProcessor.TEXT_ENCODING_PD, "MyCharSet");
@@ -86,4 +175,138 @@ public class TestLanguageDetectProcessor {
     testRunner.run();
   }
 
+  @Test
+  public void testPrefixDetectionStopsWhenConfident() throws InitializationException {
+
+    LanguageDetector detector = mock(LanguageDetector.class);
+    when(detector.predictLanguage(any())).thenReturn(new Language("abc", 0.99d));
+    DummyModelServices.LanguageDetectorService modelService = new DummyModelServices.LanguageDetectorService(detector);
+    testRunner.addControllerService("propertiesServiceTest", modelService, propertiesServiceProperties);
+    testRunner.enableControllerService(modelService);
+    testRunner.setProperty(LanguageDetectProcessor.DETECTOR_SERVICE_PD, "propertiesServiceTest");
+    testRunner.setProperty(LanguageSampler.DETECTION_MODE, LanguageSampler.MODE_PREFIX);
+
+    testRunner.enqueue(largeText());
+    testRunner.run();
+
+    testRunner.assertAllFlowFilesTransferred(LanguageDetectProcessor.REL_SUCCESS, 1);
+    final MockFlowFile flowFile = testRunner.getFlowFilesForRelationship(LanguageDetectProcessor.REL_SUCCESS).get(0);
+    flowFile.assertAttributeEquals(LANGUAGE_DETECTED, "abc");
+    flowFile.assertAttributeEquals(LANGUAGE_CHARACTERS, String.valueOf(LanguageSampler.CHUNK_SIZE));
+    verify(detector, times(1)).predictLanguage(any());
+  }
+
+  @Test
+  public void testSampledDetectionIsBounded() throws InitializationException {
+
+    LanguageDetector detector = mock(LanguageDetector.class);
+    when(detector.predictLanguage(any())).thenReturn(new Language("abc", 0.5d));
+    DummyModelServices.LanguageDetectorService modelService = new DummyModelServices.LanguageDetectorService(detector);
+    testRunner.addControllerService("propertiesServiceTest", modelService, propertiesServiceProperties);
+    testRunner.enableControllerService(modelService);
+    testRunner.setProperty(LanguageDetectProcessor.DETECTOR_SERVICE_PD, "propertiesServiceTest");
+    testRunner.setProperty(LanguageSampler.DETECTION_MODE, LanguageSampler.MODE_SAMPLED);
+    testRunner.setProperty(LanguageSampler.MAX_CHARACTERS, "5000");
+    testRunner.setProperty(LanguageSampler.WINDOWS, "5");
+
+    testRunner.enqueue(largeText());
+    testRunner.run();
+
+    testRunner.assertAllFlowFilesTransferred(LanguageDetectProcessor.REL_SUCCESS, 1);
+    final MockFlowFile flowFile = testRunner.getFlowFilesForRelationship(LanguageDetectProcessor.REL_SUCCESS).get(0);
+    final long characters = Long.parseLong(flowFile.getAttribute(LANGUAGE_CHARACTERS));
+    // five windows of 1000 characters, joined by a space
+    assertEquals(5004, characters);
+    assertEquals(characters, testRunner.getCounterValue("Language Detection Characters").longValue());
+  }
+
+  @Test
+  public void testBatchUsesOneDetectorPerBatch() throws InitializationException {
+
+    final AtomicInteger instances = new AtomicInteger();
+    LanguageDetector detector = mock(LanguageDetector.class);
+    when(detector.predictLanguage(any())).thenReturn(new Language("abc", 0.1d));
+    DummyModelServices.LanguageDetectorService modelService = new DummyModelServices.LanguageDetectorService(detector) {
+      @Override
+      public LanguageDetector getInstance() {
+        instances.incrementAndGet();
+        return super.getInstance();
+      }
+    };
+    testRunner.addControllerService("propertiesServiceTest", modelService, propertiesServiceProperties);
+    testRunner.enableControllerService(modelService);
+    testRunner.setProperty(LanguageDetectProcessor.DETECTOR_SERVICE_PD, "propertiesServiceTest");
+    testRunner.setProperty(LanguageDetectProcessor.BATCH_SIZE_PD, "100");
+
+    for (int i = 0; i < 250; i++) {
+      testRunner.enqueue("Message " + i);
+    }
+    testRunner.run(3);
+
+    testRunner.assertAllFlowFilesTransferred(LanguageDetectProcessor.REL_SUCCESS, 250);
+    for (MockFlowFile flowFile : testRunner.getFlowFilesForRelationship(LanguageDetectProcessor.REL_SUCCESS)) {
+      flowFile.assertAttributeEquals(LANGUAGE_DETECTED, "abc");
+    }
+    assertEquals(3, instances.get());
+  }
+
+  @Test
+  public void testBatchResultsMatchSingle() throws InitializationException {
+
+    final AtomicInteger instances = new AtomicInteger();
+    LanguageDetector detector = mock(LanguageDetector.class);
+    // the language depends on the text, so results landing on the wrong FlowFile show up
+    when(detector.predictLanguage(any())).thenAnswer(invocation -> {
+      final String text = invocation.getArgument(0).toString();
+      final int number = Integer.parseInt(text.substring(text.lastIndexOf(' ') + 1));
+      return new Language(number % 2 == 0 ? "even" : "odd", number / 1000d);
+    });
+    DummyModelServices.LanguageDetectorService modelService = new DummyModelServices.LanguageDetectorService(detector) {
+      @Override
+      public LanguageDetector getInstance() {
+        instances.incrementAndGet();
+        return super.getInstance();
+      }
+    };
+    testRunner.addControllerService("propertiesServiceTest", modelService, propertiesServiceProperties);
+    testRunner.enableControllerService(modelService);
+    testRunner.setProperty(LanguageDetectProcessor.DETECTOR_SERVICE_PD, "propertiesServiceTest");
+
+    final int flowFiles = 250;
+    final Map<String, Map<String, String>> single = detectAll(flowFiles, 1);
+    assertEquals(flowFiles, instances.getAndSet(0));
+
+    final Map<String, Map<String, String>> batched = detectAll(flowFiles, 100);
+    assertEquals(3, instances.get());
+    assertEquals(single, batched);
+  }
+
+  private Map<String, Map<String, String>> detectAll(final int flowFiles, final int batchSize) {
+    testRunner.clearTransferState();
+    testRunner.setProperty(LanguageDetectProcessor.BATCH_SIZE_PD, String.valueOf(batchSize));
+    for (int i = 0; i < flowFiles; i++) {
+      testRunner.enqueue("Short message number " + i);
+    }
+    testRunner.run((flowFiles + batchSize - 1) / batchSize);
+
+    testRunner.assertAllFlowFilesTransferred(LanguageDetectProcessor.REL_SUCCESS, flowFiles);
+    final Map<String, Map<String, String>> results = new HashMap<>();
+    for (MockFlowFile flowFile : testRunner.getFlowFilesForRelationship(LanguageDetectProcessor.REL_SUCCESS)) {
+      final Map<String, String> attributes = new HashMap<>();
+      attributes.put(LANGUAGE_DETECTED, flowFile.getAttribute(LANGUAGE_DETECTED));
+      attributes.put(LANGUAGE_CONFIDENCE, flowFile.getAttribute(LANGUAGE_CONFIDENCE));
+      attributes.put(LANGUAGE_CHARACTERS, flowFile.getAttribute(LANGUAGE_CHARACTERS));
+      results.put(new String(testRunner.getContentAsByteArray(flowFile)), attributes);
+    }
+    return results;
+  }
+
+  private static String largeText() {
+    final StringBuilder text = new StringBuilder();
+    while (text.length() < 1_000_000) {
+      text.append("This is some terrible short lame example text. ");
+    }
+    return text.toString();
+  }
+
 }
@@ -17,8 +17,33 @@
 
 package org.apache.opennlp.nifi.service;
 
+import opennlp.tools.langdetect.Language;
 import opennlp.tools.langdetect.LanguageDetector;
+import org.apache.nifi.processor.ProcessSession;
+
+import java.util.List;
 
 public interface LanguageDetectorService extends ServiceFactory<LanguageDetector> {
   LanguageDetector getInstance();
+
+  /**
+   * Languages of each text, most probable first.
+   */
+  default List<Language[]> predictLanguages(List<? extends CharSequence> texts) {
+    return applyAll(null, texts, LanguageDetector::predictLanguages);
+  }
+
+  /**
+   * True when the service caches the languages of the texts it is asked about, so every text
+   * becomes a cache entry.
+   */
+  default boolean isCaching() {
+    return false;
+  }
+
+  /**
+   * Publishes the statistics gathered by the service since the last call as counters of the session.
+   */
+  default void adjustCounters(ProcessSession session) {
+  }
 }
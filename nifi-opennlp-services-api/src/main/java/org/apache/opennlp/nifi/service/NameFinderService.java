@@ -18,7 +18,32 @@
 package org.apache.opennlp.nifi.service;
 
 import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.util.Span;
+
+import java.util.List;
 
 public interface NameFinderService extends ServiceFactory<NameFinderME> {
   NameFinderME getInstance();
+
+  /**
+   * Names in each token array.
+   */
+  default List<Span[]> find(List<String[]> documents) {
+    return find(null, documents);
+  }
+
+  /**
+   * Names in each token array, found with the model registered under the key. Every array is
+   * treated as a document of its own, the adaptive data is cleared after each, so the names do not
+   * depend on the other arrays in the batch.
+   */
+  default List<Span[]> find(String key, List<String[]> documents) {
+    return applyAll(key, documents, (nameFinder, tokens) -> {
+      try {
+        return nameFinder.find(tokens);
+      } finally {
+        nameFinder.clearAdaptiveData();
+      }
+    });
+  }
 }
@@ -18,8 +18,25 @@
 package org.apache.opennlp.nifi.service;
 
 import opennlp.tools.sentdetect.SentenceDetector;
+import opennlp.tools.util.Span;
 import org.apache.nifi.controller.ControllerService;
 
+import java.util.List;
+
 public interface SentenceDetectorService extends ServiceFactory<SentenceDetector> {
   SentenceDetector getInstance();
+
+  /**
+   * Sentence offsets of each text.
+   */
+  default List<Span[]> sentPosDetect(List<? extends CharSequence> texts) {
+    return sentPosDetect(null, texts);
+  }
+
+  /**
+   * Sentence offsets of each text, found with the model registered under the key.
+   */
+  default List<Span[]> sentPosDetect(String key, List<? extends CharSequence> texts) {
+    return applyAll(key, texts, (detector, text) -> detector.sentPosDetect(text.toString()));
+  }
 }
@@ -19,6 +19,63 @@ package org.apache.opennlp.nifi.service;
 
 import org.apache.nifi.controller.ControllerService;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
 public interface ServiceFactory<T> extends ControllerService {
   T getInstance();
+
+  /**
+   * Hands an instance obtained from {@link #getInstance()} back to the service once the caller
+   * is done with it, so pooling implementations can reuse it.
+   */
+  default void release(T instance) {
+  }
+
+  /**
+   * Instance of the model registered under the given key, such as a language code. Services that
+   * hold a single model ignore the key.
+   */
+  default T getInstance(String key) {
+    return getInstance();
+  }
+
+  /**
+   * Hands an instance obtained from {@link #getInstance(String)} back to the service.
+   */
+  default void release(String key, T instance) {
+    release(instance);
+  }
+
+  /**
+   * True while the service is still loading its model in the background. Callers should yield
+   * rather than call {@link #getInstance()} until loading is done.
+   */
+  default boolean isLoading() {
+    return false;
+  }
+
+  /**
+   * Applies the function to every input with an instance of the model registered under the key,
+   * and returns the results in the order of the inputs. This default uses a single instance on the
+   * calling thread, model services spread larger batches over several instances and threads, so
+   * the function must not depend on the order in which inputs are seen.
+   */
+  default <I, R> List<R> applyAll(String key, List<? extends I> inputs,
+                                  BiFunction<? super T, ? super I, ? extends R> function) {
+    final List<R> results = new ArrayList<>(inputs.size());
+    if (inputs.isEmpty()) {
+      return results;
+    }
+    final T instance = getInstance(key);
+    try {
+      for (I input : inputs) {
+        results.add(function.apply(instance, input));
+      }
+    } finally {
+      release(key, instance);
+    }
+    return results;
+  }
 }
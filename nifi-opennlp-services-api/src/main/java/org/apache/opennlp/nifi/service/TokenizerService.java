@@ -18,7 +18,24 @@
 package org.apache.opennlp.nifi.service;
 
 import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.util.Span;
+
+import java.util.List;
 
 public interface TokenizerService extends ServiceFactory<Tokenizer> {
   Tokenizer getInstance();
+
+  /**
+   * Token offsets of each text.
+   */
+  default List<Span[]> tokenizePos(List<? extends CharSequence> texts) {
+    return tokenizePos(null, texts);
+  }
+
+  /**
+   * Token offsets of each text, found with the model registered under the key.
+   */
+  default List<Span[]> tokenizePos(String key, List<? extends CharSequence> texts) {
+    return applyAll(key, texts, (tokenizer, text) -> tokenizer.tokenizePos(text.toString()));
+  }
 }
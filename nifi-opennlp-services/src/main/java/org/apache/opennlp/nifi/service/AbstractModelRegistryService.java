@@ -0,0 +1,473 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import org.apache.nifi.annotation.lifecycle.OnDisabled;
+import org.apache.nifi.annotation.lifecycle.OnEnabled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.controller.AbstractControllerService;
+import org.apache.nifi.controller.ConfigurationContext;
+import org.apache.nifi.processor.DataUnit;
+import org.apache.nifi.processor.util.StandardValidators;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Holds one model per key, such as a language code, loaded lazily from a model directory. When the
+ * estimated heap used by the loaded models exceeds the heap budget, the least recently used models
+ * are dropped.
+ */
+abstract class AbstractModelRegistryService<M, T> extends AbstractControllerService {
+
+  static final List<PropertyDescriptor> registryProperties;
+
+  static final String KEY_PLACEHOLDER = "{key}";
+
+  // keys become part of a file name, keys of only dots would name a parent directory
+  private static final Pattern VALID_KEY = Pattern.compile("(?!\\.+$)[A-Za-z0-9_.-]+");
+
+  // keys are resolved again after a while, so models added to the directory are picked up
+  static final long RESOLVE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  static final int MAX_RESOLVED = 4096;
+
+  // parsed OpenNLP models take a few times the size of their zip file on the heap
+  static final int HEAP_ESTIMATE_FACTOR = 4;
+
+  private static final int OWNER_STRIPES = 16;
+
+  public static final PropertyDescriptor MODEL_DIRECTORY = new PropertyDescriptor.Builder()
+          .name("model-directory")
+          .displayName("Model Directory")
+          .description("Directory that holds one OpenNLP model per key.")
+          .required(true)
+          .addValidator(StandardValidators.createDirectoryExistsValidator(false, false))
+          .build();
+
+  public static final PropertyDescriptor MODEL_FILE_PATTERN = new PropertyDescriptor.Builder()
+          .name("model-file-pattern")
+          .displayName("Model File Pattern")
+          .description("Path of the model for a key, relative to the model directory. " + KEY_PLACEHOLDER +
+                  " is replaced by the key, for example " + KEY_PLACEHOLDER + "-token.bin or " + KEY_PLACEHOLDER + "/ner-person.bin.")
+          .required(true)
+          .defaultValue(KEY_PLACEHOLDER + ".bin")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor DEFAULT_KEY = new PropertyDescriptor.Builder()
+          .name("default-key")
+          .displayName("Default Key")
+          .description("Key of the model used when no key is given, or when there is no model for the given key. " +
+                  "When not set, asking for a key without a model fails.")
+          .required(false)
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor HEAP_BUDGET = new PropertyDescriptor.Builder()
+          .name("heap-budget")
+          .displayName("Heap Budget")
+          .description("Estimated heap the loaded models may use before the least recently used ones are dropped. " +
+                  "A model is estimated at " + HEAP_ESTIMATE_FACTOR + " times the size of its file. The most recently " +
+                  "used model is always kept.")
+          .required(true)
+          .defaultValue("1 GB")
+          .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+          .build();
+
+  static {
+    final List<PropertyDescriptor> props = new ArrayList<>();
+    props.add(MODEL_DIRECTORY);
+    props.add(MODEL_FILE_PATTERN);
+    props.add(DEFAULT_KEY);
+    props.add(HEAP_BUDGET);
+    props.add(AbstractModelService.INSTANCE_MODE);
+    props.add(AbstractModelService.POOL_SIZE);
+    props.add(AbstractModelService.POOL_WAIT);
+    registryProperties = Collections.unmodifiableList(props);
+  }
+
+  private final Class<M> modelType;
+
+  // each entry is loaded under its own lock, borrowing from a loaded model takes no lock
+  private final ConcurrentHashMap<String, Entry<M, T>> models = new ConcurrentHashMap<>();
+  // resolved model key by requested key, so keys without a model do not hit the file system every time
+  private final ConcurrentHashMap<String, Resolved> resolved = new ConcurrentHashMap<>();
+  // taken by loads to evict, never by borrows
+  private final Object evictionLock = new Object();
+  private final AtomicLong weight = new AtomicLong();
+  // ticks of the least recently used order
+  private final AtomicLong clock = new AtomicLong();
+  // pool each borrowed instance came from, weakly so instances that are never released are not kept
+  private final List<Map<T, InstancePool<T>>> owners = new ArrayList<>(OWNER_STRIPES);
+
+  private volatile File directory;
+  private volatile String filePattern;
+  private volatile String defaultKey;
+  private volatile long heapBudget;
+  private volatile String instanceMode;
+  private volatile int poolSize;
+  private volatile long poolWaitMillis;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong loads = new AtomicLong();
+  private final AtomicLong loadMillis = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  AbstractModelRegistryService(Class<M> modelType) {
+    this.modelType = modelType;
+    for (int i = 0; i < OWNER_STRIPES; i++) {
+      owners.add(new WeakHashMap<>());
+    }
+  }
+
+  @Override
+  protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+    return registryProperties;
+  }
+
+  /**
+   * Parses a model from its serialized form.
+   */
+  protected abstract M loadModel(InputStream in) throws IOException;
+
+  /**
+   * Creates a new instance on top of a loaded model.
+   */
+  protected abstract T createInstance(M model);
+
+  /**
+   * Prepares a reused instance for the next document.
+   */
+  protected void resetInstance(T instance) {
+  }
+
+  @OnEnabled
+  public void onEnabled(final ConfigurationContext context) {
+    directory = new File(context.getProperty(MODEL_DIRECTORY).getValue());
+    filePattern = context.getProperty(MODEL_FILE_PATTERN).getValue();
+    defaultKey = context.getProperty(DEFAULT_KEY).getValue();
+    heapBudget = context.getProperty(HEAP_BUDGET).asDataSize(DataUnit.B).longValue();
+    instanceMode = context.getProperty(AbstractModelService.INSTANCE_MODE).getValue();
+    poolSize = context.getProperty(AbstractModelService.POOL_SIZE).asInteger();
+    poolWaitMillis = context.getProperty(AbstractModelService.POOL_WAIT).asTimePeriod(TimeUnit.MILLISECONDS);
+  }
+
+  public T getInstance() {
+    return getInstance(null);
+  }
+
+  public T getInstance(final String key) {
+    final InstancePool<T> instances = instancesFor(key);
+    final T instance = instances.borrow();
+    final Map<T, InstancePool<T>> stripe = ownersOf(instance);
+    synchronized (stripe) {
+      stripe.put(instance, instances);
+    }
+    return instance;
+  }
+
+  public void release(final T instance) {
+    release(null, instance);
+  }
+
+  /**
+   * Gives the instance back to the pool it was borrowed from. The key is not resolved again, the
+   * model it names may have changed since. Instances of an evicted model are dropped by their retired pool.
+   */
+  public void release(final String key, final T instance) {
+    if (instance == null) {
+      return;
+    }
+    final Map<T, InstancePool<T>> stripe = ownersOf(instance);
+    final InstancePool<T> instances;
+    synchronized (stripe) {
+      instances = stripe.remove(instance);
+    }
+    if (instances != null) {
+      instances.giveBack(instance);
+    }
+  }
+
+  private Map<T, InstancePool<T>> ownersOf(final T instance) {
+    return owners.get(System.identityHashCode(instance) & (OWNER_STRIPES - 1));
+  }
+
+  /**
+   * Spreads the inputs over instances of the model registered under the key on the shared batch
+   * threads.
+   */
+  public <I, R> List<R> applyAll(final String key, final List<? extends I> inputs,
+                                 final BiFunction<? super T, ? super I, ? extends R> function) {
+    return BatchExecutor.applyAll(inputs, function, () -> getInstance(key), instance -> release(key, instance));
+  }
+
+  private InstancePool<T> instancesFor(final String key) {
+    final String modelKey = resolvedKey(key == null ? "" : key);
+
+    final Entry<M, T> entry = models.get(modelKey);
+    final InstancePool<T> instances = entry == null ? null : entry.instances;
+    if (instances != null) {
+      entry.lastUsed = clock.incrementAndGet();
+      hits.incrementAndGet();
+      return instances;
+    }
+
+    misses.incrementAndGet();
+    return load(modelKey);
+  }
+
+  private String resolvedKey(final String requested) {
+    final long now = System.currentTimeMillis();
+    final Resolved cached = resolved.get(requested);
+    if (cached != null && cached.expires > now) {
+      return cached.key;
+    }
+
+    final String modelKey = resolve(requested);
+    if (resolved.size() >= MAX_RESOLVED) {
+      // keys taken from records can be anything, forget the expired ones or, failing that, all of them
+      resolved.values().removeIf(entry -> entry.expires <= now);
+      if (resolved.size() >= MAX_RESOLVED) {
+        resolved.clear();
+      }
+    }
+    resolved.put(requested, new Resolved(modelKey, now + RESOLVE_MILLIS));
+    return modelKey;
+  }
+
+  private String resolve(final String key) {
+    if (!key.isEmpty() && modelFile(key).isFile()) {
+      return key;
+    }
+    if (defaultKey != null && modelFile(defaultKey).isFile()) {
+      return defaultKey;
+    }
+    throw new IllegalArgumentException("No model for key '" + key + "' in " + directory);
+  }
+
+  private File modelFile(final String key) {
+    if (!VALID_KEY.matcher(key).matches()) {
+      throw new IllegalArgumentException("Invalid model key '" + key + "'");
+    }
+    final Path root = directory.toPath().toAbsolutePath().normalize();
+    final Path file = root.resolve(filePattern.replace(KEY_PLACEHOLDER, key)).normalize();
+    if (!file.startsWith(root)) {
+      throw new IllegalArgumentException("Model key '" + key + "' is outside of " + directory);
+    }
+    return file.toFile();
+  }
+
+  private InstancePool<T> load(final String key) {
+    while (true) {
+      final Entry<M, T> entry = models.computeIfAbsent(key, k -> new Entry<>());
+      final InstancePool<T> instances;
+      final boolean loaded;
+      synchronized (entry) {
+        if (entry.retired) {
+          // evicted, or failed to load, while we were looking it up
+          continue;
+        }
+        loaded = entry.instances == null;
+        if (loaded) {
+          try {
+            load(key, entry);
+          } catch (RuntimeException e) {
+            entry.retired = true;
+            models.remove(key, entry);
+            throw e;
+          }
+        }
+        entry.lastUsed = clock.incrementAndGet();
+        instances = entry.instances;
+      }
+
+      if (loaded) {
+        evict();
+      }
+      return instances;
+    }
+  }
+
+  private void load(final String key, final Entry<M, T> entry) {
+    final File file = modelFile(key);
+    final long start = System.nanoTime();
+
+    final Object event = ServiceEvents.beginModelLoad();
+    final ModelRegistry.Lease<M> lease;
+    try {
+      lease = ModelRegistry.acquire(file, modelType, AbstractModelService.STORAGE_HEAP, this::readModel);
+    } catch (IOException e) {
+      ServiceEvents.endModelLoad(event, this, getIdentifier(), file, AbstractModelService.STORAGE_HEAP, false, false);
+      throw new UncheckedIOException("Failed to load model " + file, e);
+    }
+    ServiceEvents.endModelLoad(event, this, getIdentifier(), file, AbstractModelService.STORAGE_HEAP, false, true);
+
+    entry.lease = lease;
+    entry.weight = file.length() * HEAP_ESTIMATE_FACTOR;
+    entry.instances = InstancePool.create(instanceMode, poolSize, poolWaitMillis,
+            () -> createInstance(lease.model), this::resetInstance);
+    weight.addAndGet(entry.weight);
+
+    final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    loads.incrementAndGet();
+    loadMillis.addAndGet(millis);
+    getLogger().info("Loaded model {} for key {} in {} ms", new Object[] {file, key, millis});
+  }
+
+  /**
+   * Drops the least recently used models until the loaded ones fit the heap budget, always keeping
+   * the most recently used one.
+   */
+  private void evict() {
+    synchronized (evictionLock) {
+      while (weight.get() > heapBudget) {
+        String victimKey = null;
+        Entry<M, T> victim = null;
+        int loaded = 0;
+        for (Map.Entry<String, Entry<M, T>> candidate : models.entrySet()) {
+          final Entry<M, T> entry = candidate.getValue();
+          if (entry.instances == null) {
+            continue;
+          }
+          loaded++;
+          if (victim == null || entry.lastUsed < victim.lastUsed) {
+            victimKey = candidate.getKey();
+            victim = entry;
+          }
+        }
+        if (loaded <= 1 || !retire(victimKey, victim)) {
+          return;
+        }
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  private boolean retire(final String key, final Entry<M, T> entry) {
+    synchronized (entry) {
+      if (entry.retired) {
+        return false;
+      }
+      entry.retired = true;
+      models.remove(key, entry);
+      if (entry.instances == null) {
+        // never loaded
+        return false;
+      }
+      weight.addAndGet(-entry.weight);
+    }
+    entry.instances.retire();
+    ModelRegistry.release(entry.lease);
+    return true;
+  }
+
+  private M readModel(final File file, final byte[] content, final String checksum) throws IOException {
+    return loadModel(new ByteArrayInputStream(content));
+  }
+
+  /**
+   * Keys of the loaded models, least recently used first.
+   */
+  public List<String> getLoadedKeys() {
+    final List<Map.Entry<String, Entry<M, T>>> loaded = new ArrayList<>();
+    for (Map.Entry<String, Entry<M, T>> entry : models.entrySet()) {
+      if (entry.getValue().instances != null) {
+        loaded.add(entry);
+      }
+    }
+    loaded.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed));
+    final List<String> keys = new ArrayList<>(loaded.size());
+    for (Map.Entry<String, Entry<M, T>> entry : loaded) {
+      keys.add(entry.getKey());
+    }
+    return keys;
+  }
+
+  public long getEstimatedHeap() {
+    return weight.get();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getLoads() {
+    return loads.get();
+  }
+
+  public long getLoadMillis() {
+    return loadMillis.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  @OnDisabled
+  public void onDisabled() {
+    synchronized (evictionLock) {
+      for (Map.Entry<String, Entry<M, T>> entry : models.entrySet()) {
+        retire(entry.getKey(), entry.getValue());
+      }
+    }
+    resolved.clear();
+
+    getLogger().info("Model registry statistics: {} hits, {} misses, {} loads, {} evictions",
+            new Object[] {hits.get(), misses.get(), loads.get(), evictions.get()});
+  }
+
+  private static final class Entry<M, T> {
+    // guarded by the entry, instances is set last and read without the lock
+    ModelRegistry.Lease<M> lease;
+    long weight;
+    boolean retired;
+    volatile InstancePool<T> instances;
+    volatile long lastUsed;
+  }
+
+  private static final class Resolved {
+    final String key;
+    final long expires;
+
+    Resolved(String key, long expires) {
+      this.key = key;
+      this.expires = expires;
+    }
+  }
+
+}
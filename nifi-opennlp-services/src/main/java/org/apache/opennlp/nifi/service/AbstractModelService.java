@@ -17,18 +17,71 @@
 
 package org.apache.opennlp.nifi.service;
 
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.util.model.ArtifactProvider;
+import org.apache.nifi.annotation.lifecycle.OnDisabled;
+import org.apache.nifi.annotation.lifecycle.OnEnabled;
+import org.apache.nifi.components.AllowableValue;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.controller.AbstractControllerService;
+import org.apache.nifi.controller.ConfigurationContext;
 import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.reporting.InitializationException;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
-abstract class AbstractModelService extends AbstractControllerService {
+abstract class AbstractModelService<M, T> extends AbstractControllerService {
 
   static final List<PropertyDescriptor> serviceProperties;
 
+  static final AllowableValue[] INSTANCE_MODE_VALUES = new AllowableValue[] {
+          new AllowableValue(InstancePool.PER_CALL, "Per Call", "Construct a new instance on every call."),
+          new AllowableValue(InstancePool.PER_THREAD, "Per Thread", "Reuse one instance per calling thread."),
+          new AllowableValue(InstancePool.POOLED, "Pooled", "Reuse instances from a bounded pool, callers must release them.") };
+
+  static final String LOAD_SYNCHRONOUS = "SYNCHRONOUS";
+  static final String LOAD_BACKGROUND = "BACKGROUND";
+
+  static final AllowableValue[] LOAD_MODE_VALUES = new AllowableValue[] {
+          new AllowableValue(LOAD_SYNCHRONOUS, "Synchronous", "Load the model while the service is enabled, enabling fails on a bad model."),
+          new AllowableValue(LOAD_BACKGROUND, "Background", "Enable the service right away and load the model in the background. " +
+                  "Processors yield until the model is loaded.") };
+
+  static final String STORAGE_HEAP = "HEAP";
+  static final String STORAGE_MAPPED = "MAPPED";
+  static final String STORAGE_MAPPED_FLOAT32 = "MAPPED_FLOAT32";
+
+  static final AllowableValue[] STORAGE_VALUES = new AllowableValue[] {
+          new AllowableValue(STORAGE_HEAP, "Heap", "Keep the model parameters on the heap."),
+          new AllowableValue(STORAGE_MAPPED, "Memory Mapped", "Keep the model parameters in a read-only memory-mapped file " +
+                  "next to the model, shared with other JVMs on the host through the page cache."),
+          new AllowableValue(STORAGE_MAPPED_FLOAT32, "Memory Mapped (float32)", "As Memory Mapped, with the weights " +
+                  "stored as 32 bit floats to halve the file. Probabilities may differ slightly from the original model.") };
+
+  public static final String DISABLED = "DISABLED";
+  public static final String LOADING = "LOADING";
+  public static final String READY = "READY";
+  public static final String FAILED = "FAILED";
+
   public static final PropertyDescriptor MODEL_PATH = new PropertyDescriptor.Builder()
           .name("model-path")
           .description("Path to an OpenNLP model.")
@@ -36,6 +89,137 @@ abstract class AbstractModelService extends AbstractControllerService {
           .addValidator(StandardValidators.FILE_EXISTS_VALIDATOR)
           .build();
 
+  public static final PropertyDescriptor INSTANCE_MODE = new PropertyDescriptor.Builder()
+          .name("instance-mode")
+          .displayName("Instance Mode")
+          .description("How instances handed out by the service are created and reused.")
+          .required(true)
+          .allowableValues(INSTANCE_MODE_VALUES)
+          .defaultValue(InstancePool.PER_THREAD)
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor POOL_SIZE = new PropertyDescriptor.Builder()
+          .name("pool-size")
+          .displayName("Pool Size")
+          .description("Maximum number of instances owned by the pool when the instance mode is Pooled.")
+          .required(true)
+          .defaultValue("8")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor POOL_WAIT = new PropertyDescriptor.Builder()
+          .name("pool-wait")
+          .displayName("Pool Wait")
+          .description("How long to wait for a pooled instance to be released before an unpooled instance is created.")
+          .required(true)
+          .defaultValue("100 millis")
+          .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor RELOAD_INTERVAL = new PropertyDescriptor.Builder()
+          .name("model-reload-interval")
+          .displayName("Model Reload Interval")
+          .description("How often the model file is checked for changes. A changed model is loaded in the background " +
+                  "and replaces the current one without disabling the service. When not set the model is never reloaded.")
+          .required(false)
+          .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor LOAD_MODE = new PropertyDescriptor.Builder()
+          .name("model-load-mode")
+          .displayName("Model Load Mode")
+          .description("Whether the model is loaded while the service is enabled, or in the background afterwards. " +
+                  "Background loads run on a pool shared by all model services, so several models load in parallel.")
+          .required(true)
+          .allowableValues(LOAD_MODE_VALUES)
+          .defaultValue(LOAD_SYNCHRONOUS)
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor MODEL_SNAPSHOT = new PropertyDescriptor.Builder()
+          .name("model-snapshot")
+          .displayName("Model Snapshot")
+          .description("When true, the parsed model parameters are written to a snapshot file next to the model the first " +
+                  "time it is loaded, and later loads of the same model content read the snapshot instead of parsing the " +
+                  "model. Requires the model directory to be writable.")
+          .required(true)
+          .allowableValues("true", "false")
+          .defaultValue("false")
+          .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor MODEL_STORAGE = new PropertyDescriptor.Builder()
+          .name("model-storage")
+          .displayName("Model Storage")
+          .description("Where the maxent or perceptron parameters of the model are kept. Models of other types are " +
+                  "always kept on the heap. Memory mapped storage requires the model directory to be writable.")
+          .required(true)
+          .allowableValues(STORAGE_VALUES)
+          .defaultValue(STORAGE_HEAP)
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor WARM_UP_ITERATIONS = new PropertyDescriptor.Builder()
+          .name("warm-up-iterations")
+          .displayName("Warm-up Iterations")
+          .description("Number of times the warm-up samples are run through fresh instances after the model is loaded, " +
+                  "before the service reports the model as ready. A sample that fails fails the load. 0 disables the warm-up.")
+          .required(true)
+          .defaultValue("0")
+          .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor WARM_UP_SAMPLES = new PropertyDescriptor.Builder()
+          .name("warm-up-samples")
+          .displayName("Warm-up Samples")
+          .description("Path to a UTF-8 text file with one warm-up sample per line. When not set a few built-in " +
+                  "sample sentences are used.")
+          .required(false)
+          .addValidator(StandardValidators.FILE_EXISTS_VALIDATOR)
+          .build();
+
+  static final List<String> SYNTHETIC_SAMPLES = Collections.unmodifiableList(Arrays.asList(
+          "Pierre Vinken, 61 years old, will join the board as a nonexecutive director Nov. 29.",
+          "Mr. Vinken is chairman of Elsevier N.V., the Dutch publishing group. He lives in Amsterdam.",
+          "The quick brown fox jumps over the lazy dog while the committee meets in New York on Monday.",
+          "Der schnelle braune Fuchs springt \u00fcber den faulen Hund. Die Sitzung beginnt um neun Uhr.",
+          "Le renard brun rapide saute par-dessus le chien paresseux. La r\u00e9union commence \u00e0 Paris.",
+          "El r\u00e1pido zorro marr\u00f3n salta sobre el perro perezoso. La reuni\u00f3n empieza en Madrid.",
+          "Den hurtige brune r\u00e6v springer over den dovne hund. M\u00f8det starter i K\u00f8benhavn klokken ni."));
+
+  private static final ExecutorService loader = Executors.newFixedThreadPool(
+          Math.max(1, Runtime.getRuntime().availableProcessors() / 2), new LoaderThreadFactory());
+
+  private final Class<M> modelType;
+
+  // bumped on every enable and disable, a load only installs its model if nothing happened since it started
+  private final AtomicInteger generation = new AtomicInteger();
+  private volatile String loadState = DISABLED;
+  private volatile long loadMillis = -1;
+  private volatile Throwable loadFailure;
+  private volatile boolean snapshots;
+  private volatile String storage = STORAGE_HEAP;
+
+  private volatile int warmUpIterations;
+  private volatile List<String> warmUpSamples = SYNTHETIC_SAMPLES;
+  private volatile long warmUpMillis = -1;
+  private volatile long warmUpFirstMicros = -1;
+  private volatile long warmUpLastMicros = -1;
+
+  private volatile ModelRegistry.Lease<M> lease;
+  private volatile InstancePool<T> instances;
+  private volatile Function<M, InstancePool<T>> poolFactory;
+
+  private volatile ScheduledExecutorService reloader;
+  private volatile long modelLastModified;
+  private volatile long lastReloadMillis = -1;
+  private final AtomicLong reloads = new AtomicLong();
+
+  AbstractModelService(Class<M> modelType) {
+    this.modelType = modelType;
+  }
+
   @Override
   protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
     return serviceProperties;
@@ -44,7 +228,502 @@ abstract class AbstractModelService extends AbstractControllerService {
   static {
     final List<PropertyDescriptor> props = new ArrayList<>();
     props.add(MODEL_PATH);
+    props.add(LOAD_MODE);
+    props.add(MODEL_SNAPSHOT);
+    props.add(MODEL_STORAGE);
+    props.add(WARM_UP_ITERATIONS);
+    props.add(WARM_UP_SAMPLES);
+    props.add(INSTANCE_MODE);
+    props.add(POOL_SIZE);
+    props.add(POOL_WAIT);
+    props.add(RELOAD_INTERVAL);
     serviceProperties = Collections.unmodifiableList(props);
   }
 
+  /**
+   * Parses a model from its serialized form.
+   */
+  protected abstract M loadModel(InputStream in) throws IOException;
+
+  /**
+   * Creates a new instance on top of a loaded model.
+   */
+  protected abstract T createInstance(M model);
+
+  /**
+   * Prepares a reused instance for the next document.
+   */
+  protected void resetInstance(T instance) {
+  }
+
+  /**
+   * Runs one warm-up sample through an instance.
+   */
+  protected abstract void warmUp(T instance, String sample);
+
+  /**
+   * Name of the model artifact that holds the maxent parameters, or null when the service does not
+   * support snapshots.
+   */
+  protected String getParametersEntry() {
+    return null;
+  }
+
+  /**
+   * Builds a model from a snapshot stub, replacing the stub parameters artifact with the given one.
+   * Only called when {@link #getParametersEntry()} names the artifact.
+   */
+  protected abstract M rebuildModel(InputStream stub, MaxentModel parameters) throws IOException;
+
+  @OnEnabled
+  public void onEnabled(final ConfigurationContext context) throws InitializationException {
+
+    final File file = new File(context.getProperty(MODEL_PATH).getValue());
+    final long reloadMillis = context.getProperty(RELOAD_INTERVAL).isSet()
+            ? context.getProperty(RELOAD_INTERVAL).asTimePeriod(TimeUnit.MILLISECONDS) : 0;
+    configureInstances(context);
+    snapshots = context.getProperty(MODEL_SNAPSHOT).asBoolean() && getParametersEntry() != null;
+    storage = getParametersEntry() != null ? context.getProperty(MODEL_STORAGE).getValue() : STORAGE_HEAP;
+    warmUpIterations = context.getProperty(WARM_UP_ITERATIONS).asInteger();
+    try {
+      warmUpSamples = context.getProperty(WARM_UP_SAMPLES).isSet()
+              ? readSamples(new File(context.getProperty(WARM_UP_SAMPLES).getValue())) : SYNTHETIC_SAMPLES;
+    } catch (IOException e) {
+      throw new InitializationException("Failed to read warm-up samples", e);
+    }
+
+    final int current;
+    synchronized (this) {
+      current = generation.incrementAndGet();
+      loadState = LOADING;
+      loadMillis = -1;
+      loadFailure = null;
+    }
+
+    if (LOAD_BACKGROUND.equals(context.getProperty(LOAD_MODE).getValue())) {
+      loader.execute(() -> {
+        try {
+          load(file, current, reloadMillis);
+        } catch (Throwable t) {
+          failed(current, t);
+          getLogger().error("Failed to load model from {}", new Object[] {file, t});
+        }
+      });
+      return;
+    }
+
+    try {
+      load(file, current, reloadMillis);
+    } catch (Throwable t) {
+      failed(current, t);
+      throw new InitializationException("Model Service configuration error", t);
+    }
+  }
+
+  private void load(final File file, final int expected, final long reloadMillis) throws IOException {
+    final long start = System.nanoTime();
+    final long lastModified = file.lastModified();
+
+    final Object event = ServiceEvents.beginModelLoad();
+    boolean loaded = false;
+    final ModelRegistry.Lease<M> acquired;
+    try {
+      acquired = ModelRegistry.acquire(file, modelType, storage, this::readModel);
+      try {
+        warmUp(acquired);
+      } catch (RuntimeException e) {
+        ModelRegistry.release(acquired);
+        throw e;
+      }
+
+      synchronized (this) {
+        if (generation.get() != expected) {
+          // disabled while the model was loading
+          ModelRegistry.release(acquired);
+          return;
+        }
+        instances = poolFactory.apply(acquired.model);
+        lease = acquired;
+        modelLastModified = lastModified;
+        loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        loadState = READY;
+        if (reloadMillis > 0) {
+          startReloader(file, reloadMillis);
+        }
+      }
+      loaded = true;
+    } finally {
+      ServiceEvents.endModelLoad(event, this, getIdentifier(), file, storage, false, loaded);
+    }
+
+    getLogger().info("Loaded model {} in {} ms, shared by {} services",
+            new Object[] {acquired.key, loadMillis, ModelRegistry.getReferences(acquired)});
+  }
+
+  /**
+   * Runs the warm-up samples through fresh instances of a loaded model, so the first records do not
+   * pay for JIT compilation and cold caches. A sample the model cannot handle fails the load.
+   */
+  private void warmUp(final ModelRegistry.Lease<M> loaded) {
+    final int iterations = warmUpIterations;
+    final List<String> samples = warmUpSamples;
+    if (iterations <= 0 || samples.isEmpty()) {
+      return;
+    }
+
+    final long start = System.nanoTime();
+    long first = -1;
+    long last = -1;
+    try {
+      for (int i = 0; i < iterations; i++) {
+        final long iterationStart = System.nanoTime();
+        final T instance = createInstance(loaded.model);
+        for (String sample : samples) {
+          warmUp(instance, sample);
+        }
+        last = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - iterationStart) / samples.size();
+        if (first < 0) {
+          first = last;
+        }
+      }
+    } catch (RuntimeException e) {
+      throw new IllegalStateException("Warm-up of model " + loaded.key + " failed", e);
+    }
+
+    warmUpMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    warmUpFirstMicros = first;
+    warmUpLastMicros = last;
+    getLogger().info("Warmed up model {} in {} ms, {} microseconds per sample before and {} after",
+            new Object[] {loaded.key, warmUpMillis, first, last});
+  }
+
+  private static List<String> readSamples(final File file) throws IOException {
+    final List<String> samples = new ArrayList<>();
+    for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+      if (!line.trim().isEmpty()) {
+        samples.add(line);
+      }
+    }
+    return Collections.unmodifiableList(samples);
+  }
+
+  private synchronized void failed(final int expected, final Throwable t) {
+    if (generation.get() == expected) {
+      loadFailure = t;
+      loadState = FAILED;
+    }
+  }
+
+  private M readModel(final File file, final byte[] content, final String checksum) throws IOException {
+    if (!STORAGE_HEAP.equals(storage)) {
+      try {
+        return readMapped(file, content, checksum, STORAGE_MAPPED_FLOAT32.equals(storage));
+      } catch (IOException | RuntimeException e) {
+        getLogger().warn("Failed to map the parameters of {}, keeping them on the heap", new Object[] {file, e});
+      }
+    }
+
+    final File snapshot = snapshots ? ModelSnapshot.fileFor(file, checksum) : null;
+    if (snapshot != null && snapshot.isFile()) {
+      try {
+        return ModelSnapshot.read(snapshot, this::rebuildModel);
+      } catch (IOException | RuntimeException e) {
+        getLogger().warn("Failed to read model snapshot {}, parsing the model instead", new Object[] {snapshot, e});
+      }
+    }
+
+    final M model = parseModel(content);
+
+    if (snapshot != null) {
+      final Object parameters = getParameters(model);
+      if (ModelSnapshot.supports(parameters)) {
+        try {
+          ModelSnapshot.write(snapshot, content, getParametersEntry(), (AbstractModel) parameters);
+          getLogger().info("Wrote model snapshot {}", new Object[] {snapshot});
+        } catch (IOException | RuntimeException e) {
+          getLogger().warn("Failed to write model snapshot {}", new Object[] {snapshot, e});
+        }
+      }
+    }
+    return model;
+  }
+
+  /**
+   * Loads the model with its parameters mapped from the parameters file next to it, writing that file
+   * first if no service on this host did yet.
+   */
+  private M readMapped(final File file, final byte[] content, final String checksum, final boolean float32)
+          throws IOException {
+    final File mapped = MappedParameters.fileFor(file, checksum, float32);
+    if (!mapped.isFile()) {
+      final M model = parseModel(content);
+      final Object parameters = getParameters(model);
+      if (!ModelSnapshot.supports(parameters)) {
+        getLogger().info("Parameters of {} cannot be memory mapped, keeping them on the heap", new Object[] {file});
+        return model;
+      }
+      final AbstractModel heapParameters = (AbstractModel) parameters;
+      MappedParameters.write(mapped, ModelSnapshot.stubOf(content, getParametersEntry(), heapParameters), heapParameters, float32);
+      getLogger().info("Wrote mapped model parameters {}", new Object[] {mapped});
+    }
+
+    final MappedParameters parameters = MappedParameters.open(mapped);
+    return rebuildModel(parameters.openStub(), parameters);
+  }
+
+  private M parseModel(final byte[] content) throws IOException {
+    return loadModel(new ByteArrayInputStream(content));
+  }
+
+  private Object getParameters(final M model) {
+    return ((ArtifactProvider) model).getArtifact(getParametersEntry());
+  }
+
+  /**
+   * Captures the instance settings, a reloaded model gets a pool configured the same way.
+   */
+  private void configureInstances(final ConfigurationContext context) {
+    final String mode = context.getProperty(INSTANCE_MODE).getValue();
+    final int size = context.getProperty(POOL_SIZE).asInteger();
+    final long waitMillis = context.getProperty(POOL_WAIT).asTimePeriod(TimeUnit.MILLISECONDS);
+    poolFactory = model -> InstancePool.create(mode, size, waitMillis, () -> createInstance(model), this::resetInstance);
+  }
+
+  private void startReloader(final File file, final long intervalMillis) {
+    final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      final Thread thread = new Thread(r, "OpenNLP Model Reload " + getIdentifier());
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.scheduleWithFixedDelay(() -> reloadIfChanged(file), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    reloader = executor;
+  }
+
+  /**
+   * Loads the model file again if it changed since the current model was loaded, and swaps it in.
+   * Callers keep using the instances they borrowed from the old model until they release them.
+   */
+  private void reloadIfChanged(final File file) {
+    final long lastModified = file.lastModified();
+    final ModelRegistry.Lease<M> current = lease;
+    if (current == null || lastModified == modelLastModified) {
+      return;
+    }
+
+    Object event = null;
+    boolean loaded = false;
+    try {
+      final long start = System.nanoTime();
+      final byte[] content = ModelRegistry.read(file);
+      final String checksum = ModelRegistry.checksum(content);
+      if (checksum.equals(current.getChecksum())) {
+        modelLastModified = lastModified;
+        return;
+      }
+
+      // only a changed model is a reload, one that fails to load, such as a file still being written,
+      // is tried again on the next check
+      event = ServiceEvents.beginModelLoad();
+      final ModelRegistry.Lease<M> reloaded = ModelRegistry.acquire(file, modelType, content, checksum, storage,
+              this::readModel);
+      try {
+        warmUp(reloaded);
+      } catch (RuntimeException e) {
+        ModelRegistry.release(reloaded);
+        throw e;
+      }
+      if (!swap(reloaded, lastModified)) {
+        return;
+      }
+      loaded = true;
+
+      lastReloadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      reloads.incrementAndGet();
+      getLogger().info("Reloaded model {} in {} ms", new Object[] {reloaded.key, lastReloadMillis});
+    } catch (Throwable t) {
+      getLogger().warn("Failed to reload model from {}, keeping {}", new Object[] {file, current.key, t});
+    } finally {
+      ServiceEvents.endModelLoad(event, this, getIdentifier(), file, storage, true, loaded);
+    }
+  }
+
+  private synchronized boolean swap(final ModelRegistry.Lease<M> reloaded, final long lastModified) {
+    final ModelRegistry.Lease<M> retired = lease;
+    final InstancePool<T> retiredInstances = instances;
+    if (retired == null) {
+      // disabled while the model was loading
+      ModelRegistry.release(reloaded);
+      return false;
+    }
+
+    instances = poolFactory.apply(reloaded.model);
+    lease = reloaded;
+    modelLastModified = lastModified;
+
+    retiredInstances.retire();
+    ModelRegistry.release(retired);
+    return true;
+  }
+
+  public M getModel() {
+    final ModelRegistry.Lease<M> current = lease;
+    return current == null ? null : current.model;
+  }
+
+  /**
+   * Number of enabled services, this one included, that share the loaded model.
+   */
+  public int getModelShareCount() {
+    final ModelRegistry.Lease<M> current = lease;
+    return current == null ? 0 : ModelRegistry.getReferences(current);
+  }
+
+  /**
+   * SHA-256 of the model file the current model was loaded from.
+   */
+  public String getModelChecksum() {
+    final ModelRegistry.Lease<M> current = lease;
+    return current == null ? null : current.getChecksum();
+  }
+
+  public long getReloadCount() {
+    return reloads.get();
+  }
+
+  /**
+   * Time it took to load and swap in the last reloaded model, -1 if the model was never reloaded.
+   */
+  public long getLastReloadMillis() {
+    return lastReloadMillis;
+  }
+
+  /**
+   * One of DISABLED, LOADING, READY or FAILED.
+   */
+  public String getLoadState() {
+    return loadState;
+  }
+
+  public boolean isLoading() {
+    return LOADING.equals(loadState);
+  }
+
+  /**
+   * Time it took to load the model when the service was enabled, -1 until it is loaded.
+   */
+  public long getLoadMillis() {
+    return loadMillis;
+  }
+
+  public Throwable getLoadFailure() {
+    return loadFailure;
+  }
+
+  /**
+   * Duration of the last warm-up, -1 if the model was not warmed up.
+   */
+  public long getWarmUpMillis() {
+    return warmUpMillis;
+  }
+
+  /**
+   * Average time per sample in the first warm-up iteration, on a cold model.
+   */
+  public long getWarmUpFirstLatencyMicros() {
+    return warmUpFirstMicros;
+  }
+
+  /**
+   * Average time per sample in the last warm-up iteration, on a warm model.
+   */
+  public long getWarmUpLastLatencyMicros() {
+    return warmUpLastMicros;
+  }
+
+  public T getInstance() {
+    final InstancePool<T> pool = instances;
+    if (pool == null) {
+      switch (loadState) {
+        case LOADING:
+          throw new IllegalStateException("Model is still loading");
+        case FAILED:
+          throw new IllegalStateException("Model failed to load", loadFailure);
+        default:
+          throw new IllegalStateException("Model Service is not enabled");
+      }
+    }
+    return pool.borrow();
+  }
+
+  public void release(T instance) {
+    final InstancePool<T> pool = instances;
+    if (pool != null && instance != null) {
+      pool.giveBack(instance);
+    }
+  }
+
+  /**
+   * Spreads the inputs over instances of the pool on the shared batch threads.
+   */
+  public <I, R> List<R> applyAll(String key, List<? extends I> inputs,
+                                 BiFunction<? super T, ? super I, ? extends R> function) {
+    return BatchExecutor.applyAll(inputs, function, this::getInstance, this::release);
+  }
+
+  public long getInstanceHits() {
+    final InstancePool<T> pool = instances;
+    return pool == null ? 0 : pool.getHits();
+  }
+
+  public long getInstanceMisses() {
+    final InstancePool<T> pool = instances;
+    return pool == null ? 0 : pool.getMisses();
+  }
+
+  public long getInstanceWaits() {
+    final InstancePool<T> pool = instances;
+    return pool == null ? 0 : pool.getWaits();
+  }
+
+  @OnDisabled
+  public void onDisabled() {
+    final ScheduledExecutorService executor;
+    final InstancePool<T> pool;
+    final ModelRegistry.Lease<M> released;
+    synchronized (this) {
+      generation.incrementAndGet();
+      loadState = DISABLED;
+      executor = reloader;
+      reloader = null;
+      pool = instances;
+      released = lease;
+      instances = null;
+      lease = null;
+    }
+
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (pool != null) {
+      getLogger().info("Instance statistics: {} hits, {} misses, {} waits",
+              new Object[] {pool.getHits(), pool.getMisses(), pool.getWaits()});
+      pool.retire();
+    }
+    if (released != null) {
+      ModelRegistry.release(released);
+    }
+  }
+
+  private static final class LoaderThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      final Thread thread = new Thread(r, "OpenNLP Model Loader-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
 }
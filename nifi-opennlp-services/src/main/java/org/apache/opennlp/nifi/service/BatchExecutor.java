@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs the batch calls of all model services on one bounded pool of daemon threads. A batch is
+ * split in a chunk per thread, each chunk borrows an instance from the service and gives it back
+ * when done, so pooled and per-thread instances are reused from one batch to the next. The calling
+ * thread works on the last chunk itself, and runs queued chunks when the pool is saturated.
+ */
+final class BatchExecutor {
+
+  static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+  // fewer inputs per chunk are not worth a thread hand-off
+  static final int MIN_CHUNK = 16;
+
+  private static final ExecutorService executor = createExecutor();
+
+  private BatchExecutor() {
+  }
+
+  private static ExecutorService createExecutor() {
+    final ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(THREADS * 4), new BatchThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /**
+   * Applies the function to every input, with instances taken from borrow and handed back to
+   * giveBack, and returns the results in the order of the inputs.
+   */
+  static <T, I, R> List<R> applyAll(final List<? extends I> inputs,
+                                    final BiFunction<? super T, ? super I, ? extends R> function,
+                                    final Supplier<T> borrow, final Consumer<T> giveBack) {
+    final Object[] results = new Object[inputs.size()];
+    final int chunks = Math.min(THREADS, (inputs.size() + MIN_CHUNK - 1) / MIN_CHUNK);
+
+    // a batch call made from a batch thread stays on it, waiting for the pool from inside it could deadlock
+    if (chunks <= 1 || Thread.currentThread() instanceof BatchThread) {
+      applyChunk(inputs, 0, inputs.size(), results, function, borrow, giveBack);
+      return toList(results);
+    }
+
+    final List<Future<?>> submitted = new ArrayList<>(chunks - 1);
+    try {
+      for (int chunk = 0; chunk < chunks - 1; chunk++) {
+        final int from = bound(inputs.size(), chunks, chunk);
+        final int to = bound(inputs.size(), chunks, chunk + 1);
+        submitted.add(executor.submit(() -> applyChunk(inputs, from, to, results, function, borrow, giveBack)));
+      }
+      applyChunk(inputs, bound(inputs.size(), chunks, chunks - 1), inputs.size(), results, function, borrow, giveBack);
+
+      for (Future<?> future : submitted) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a batch", e);
+    } catch (ExecutionException e) {
+      // the function cannot throw checked exceptions
+      final Throwable cause = e.getCause();
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+    } finally {
+      for (Future<?> future : submitted) {
+        future.cancel(false);
+      }
+    }
+    return toList(results);
+  }
+
+  private static int bound(final int size, final int chunks, final int chunk) {
+    return (int) ((long) size * chunk / chunks);
+  }
+
+  private static <T, I, R> void applyChunk(final List<? extends I> inputs, final int from, final int to,
+                                           final Object[] results,
+                                           final BiFunction<? super T, ? super I, ? extends R> function,
+                                           final Supplier<T> borrow, final Consumer<T> giveBack) {
+    if (from == to) {
+      return;
+    }
+    final T instance = borrow.get();
+    try {
+      for (int i = from; i < to; i++) {
+        results[i] = function.apply(instance, inputs.get(i));
+      }
+    } finally {
+      giveBack.accept(instance);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <R> List<R> toList(final Object[] results) {
+    return new ArrayList<>((List<R>) Arrays.asList(results));
+  }
+
+  private static final class BatchThread extends Thread {
+    BatchThread(Runnable r, String name) {
+      super(r, name);
+    }
+  }
+
+  private static final class BatchThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      final Thread thread = new BatchThread(r, "OpenNLP Batch-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+}
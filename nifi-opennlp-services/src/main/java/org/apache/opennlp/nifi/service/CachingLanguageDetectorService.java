@@ -0,0 +1,365 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import opennlp.tools.langdetect.Language;
+import opennlp.tools.langdetect.LanguageDetector;
+import org.apache.nifi.annotation.lifecycle.OnDisabled;
+import org.apache.nifi.annotation.lifecycle.OnEnabled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.controller.AbstractControllerService;
+import org.apache.nifi.controller.ConfigurationContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.util.StandardValidators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Remembers the languages detected by another language detector service, so repeated texts only
+ * cost a hash lookup. Texts are keyed by a 64 bit hash of their, optionally normalized and
+ * truncated, content and its length, so two different texts with the same key share a result.
+ * <p>
+ * Every call is a cache entry. Processors that detect on a prefix or on sampled windows predict
+ * on a sample that doubles until it is confident, so behind them the cache fills up with partial
+ * samples, and with a key length the larger samples are answered from the first one. The language
+ * detect processors only accept this service with the Full Text detection mode.
+ * <p>
+ * The processors using the service publish its hits, misses, evictions and expirations as counters
+ * after each trigger.
+ */
+public class CachingLanguageDetectorService extends AbstractControllerService implements LanguageDetectorService {
+
+  private static final int STRIPES = 16;
+
+  public static final String HITS_COUNTER = "Language Cache Hits";
+  public static final String MISSES_COUNTER = "Language Cache Misses";
+  public static final String EVICTIONS_COUNTER = "Language Cache Evictions";
+  public static final String EXPIRATIONS_COUNTER = "Language Cache Expirations";
+
+  public static final PropertyDescriptor DELEGATE_SERVICE = new PropertyDescriptor.Builder()
+          .name("delegate-language-detector-service")
+          .displayName("Language Detector Service")
+          .description("Language detector service that detects the languages of texts that are not cached. Cache the " +
+                  "languages of whole texts only, processors detecting on a prefix or sampled windows should use the " +
+                  "delegate service directly.")
+          .required(true)
+          .identifiesControllerService(LanguageDetectorService.class)
+          .build();
+
+  public static final PropertyDescriptor MAX_ENTRIES = new PropertyDescriptor.Builder()
+          .name("cache-max-entries")
+          .displayName("Max Cached Texts")
+          .description("Maximum number of texts whose languages are cached. The least recently used are dropped first.")
+          .required(true)
+          .defaultValue("10000")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor TIME_TO_LIVE = new PropertyDescriptor.Builder()
+          .name("cache-time-to-live")
+          .displayName("Cache Time to Live")
+          .description("How long a detected language is cached.")
+          .required(true)
+          .defaultValue("1 hour")
+          .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor NORMALIZE = new PropertyDescriptor.Builder()
+          .name("cache-normalize-text")
+          .displayName("Normalize Text")
+          .description("When true, texts that only differ in letter case or whitespace share a cache entry.")
+          .required(true)
+          .allowableValues("true", "false")
+          .defaultValue("false")
+          .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
+          .build();
+
+  public static final PropertyDescriptor KEY_LENGTH = new PropertyDescriptor.Builder()
+          .name("cache-key-length")
+          .displayName("Key Length")
+          .description("Number of leading characters of a text used for its cache key. Texts that start the same share " +
+                  "a cache entry. 0 uses the whole text.")
+          .required(true)
+          .defaultValue("0")
+          .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+          .build();
+
+  private static final List<PropertyDescriptor> properties;
+
+  static {
+    final List<PropertyDescriptor> props = new ArrayList<>();
+    props.add(DELEGATE_SERVICE);
+    props.add(MAX_ENTRIES);
+    props.add(TIME_TO_LIVE);
+    props.add(NORMALIZE);
+    props.add(KEY_LENGTH);
+    properties = Collections.unmodifiableList(props);
+  }
+
+  private volatile LanguageDetectorService delegate;
+  private volatile Stripe[] stripes;
+  private volatile long ttlNanos;
+  private volatile boolean normalize;
+  private volatile int keyLength;
+
+  private final LanguageDetector detector = new CachingDetector();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong expirations = new AtomicLong();
+
+  // totals already published as counters
+  private final AtomicLong countedHits = new AtomicLong();
+  private final AtomicLong countedMisses = new AtomicLong();
+  private final AtomicLong countedEvictions = new AtomicLong();
+  private final AtomicLong countedExpirations = new AtomicLong();
+
+  @Override
+  protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+    return properties;
+  }
+
+  @OnEnabled
+  public void onEnabled(final ConfigurationContext context) {
+    delegate = context.getProperty(DELEGATE_SERVICE).asControllerService(LanguageDetectorService.class);
+    ttlNanos = context.getProperty(TIME_TO_LIVE).asTimePeriod(TimeUnit.NANOSECONDS);
+    normalize = context.getProperty(NORMALIZE).asBoolean();
+    keyLength = context.getProperty(KEY_LENGTH).asInteger();
+
+    final int capacity = Math.max(1, context.getProperty(MAX_ENTRIES).asInteger() / STRIPES);
+    final Stripe[] created = new Stripe[STRIPES];
+    for (int i = 0; i < created.length; i++) {
+      created[i] = new Stripe(capacity);
+    }
+    stripes = created;
+  }
+
+  @OnDisabled
+  public void onDisabled() {
+    getLogger().info("Language cache statistics: {} hits, {} misses, {} evictions, {} expirations",
+            new Object[] {hits.get(), misses.get(), evictions.get(), expirations.get()});
+    stripes = null;
+  }
+
+  @Override
+  public LanguageDetector getInstance() {
+    return detector;
+  }
+
+  @Override
+  public <I, R> List<R> applyAll(final String key, final List<? extends I> inputs,
+                                 final BiFunction<? super LanguageDetector, ? super I, ? extends R> function) {
+    // the caching detector is shared, misses still borrow from the delegate
+    final LanguageDetector detector = getInstance();
+    return BatchExecutor.applyAll(inputs, function, () -> detector, instance -> { });
+  }
+
+  @Override
+  public boolean isLoading() {
+    final LanguageDetectorService service = delegate;
+    return service != null && service.isLoading();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public long getExpirations() {
+    return expirations.get();
+  }
+
+  public double getHitRate() {
+    final long hit = hits.get();
+    final long total = hit + misses.get();
+    return total == 0 ? 0 : (double) hit / total;
+  }
+
+  @Override
+  public boolean isCaching() {
+    return true;
+  }
+
+  /**
+   * Publishes the hits, misses, evictions and expirations since the last call as NiFi counters. Processors
+   * sharing the service each publish what happened since any of them last did.
+   */
+  @Override
+  public void adjustCounters(final ProcessSession session) {
+    adjustCounter(session, HITS_COUNTER, hits, countedHits);
+    adjustCounter(session, MISSES_COUNTER, misses, countedMisses);
+    adjustCounter(session, EVICTIONS_COUNTER, evictions, countedEvictions);
+    adjustCounter(session, EXPIRATIONS_COUNTER, expirations, countedExpirations);
+  }
+
+  private static void adjustCounter(final ProcessSession session, final String name, final AtomicLong total,
+                                    final AtomicLong counted) {
+    final long current = total.get();
+    long published;
+    do {
+      published = counted.get();
+      if (current <= published) {
+        // nothing new, or another thread published a later total
+        return;
+      }
+    } while (!counted.compareAndSet(published, current));
+    session.adjustCounter(name, current - published, false);
+  }
+
+  private Language[] predict(final CharSequence content) {
+    final Stripe[] current = stripes;
+    if (current == null) {
+      throw new IllegalStateException("Caching Language Detector Service is not enabled");
+    }
+
+    final long key = key(content);
+    final Stripe stripe = current[(int) (key ^ (key >>> 32)) & (STRIPES - 1)];
+    final long now = System.nanoTime();
+
+    final Language[] cached = stripe.get(key, now);
+    if (cached != null) {
+      hits.incrementAndGet();
+      return cached;
+    }
+
+    misses.incrementAndGet();
+    final LanguageDetectorService service = delegate;
+    final LanguageDetector languageDetector = service.getInstance();
+    final Language[] languages;
+    try {
+      languages = languageDetector.predictLanguages(content);
+    } finally {
+      service.release(languageDetector);
+    }
+    stripe.put(key, new Entry(languages, now + ttlNanos));
+    return languages;
+  }
+
+  /**
+   * FNV-1a over the characters of the key text, mixed with the length of the key text.
+   */
+  private long key(final CharSequence content) {
+    final int length = keyLength > 0 ? Math.min(keyLength, content.length()) : content.length();
+    long hash = 0xcbf29ce484222325L;
+    int keyed = 0;
+    boolean space = false;
+    for (int i = 0; i < length; i++) {
+      char c = content.charAt(i);
+      if (normalize) {
+        if (Character.isWhitespace(c)) {
+          space = true;
+          continue;
+        }
+        if (space && keyed > 0) {
+          hash = (hash ^ ' ') * 0x100000001b3L;
+          keyed++;
+        }
+        space = false;
+        c = Character.toLowerCase(c);
+      }
+      hash = (hash ^ c) * 0x100000001b3L;
+      keyed++;
+    }
+    return hash ^ (keyed * 0x9e3779b97f4a7c15L);
+  }
+
+  private final class CachingDetector implements LanguageDetector {
+
+    @Override
+    public Language[] predictLanguages(CharSequence content) {
+      return predict(content).clone();
+    }
+
+    @Override
+    public Language predictLanguage(CharSequence content) {
+      return predict(content)[0];
+    }
+
+    @Override
+    public String[] getSupportedLanguages() {
+      final LanguageDetectorService service = delegate;
+      final LanguageDetector languageDetector = service.getInstance();
+      try {
+        return languageDetector.getSupportedLanguages();
+      } finally {
+        service.release(languageDetector);
+      }
+    }
+  }
+
+  private final class Stripe {
+
+    private final LinkedHashMap<Long, Entry> entries;
+
+    Stripe(final int capacity) {
+      this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+          if (size() > capacity) {
+            evictions.incrementAndGet();
+            return true;
+          }
+          return false;
+        }
+      };
+    }
+
+    synchronized Language[] get(final long key, final long now) {
+      final Entry entry = entries.get(key);
+      if (entry == null) {
+        return null;
+      }
+      if (now - entry.expires > 0) {
+        entries.remove(key);
+        expirations.incrementAndGet();
+        return null;
+      }
+      return entry.languages;
+    }
+
+    synchronized void put(final long key, final Entry entry) {
+      entries.put(key, entry);
+    }
+  }
+
+  private static final class Entry {
+    final Language[] languages;
+    final long expires;
+
+    Entry(Language[] languages, long expires) {
+      this.languages = languages;
+      this.expires = expires;
+    }
+  }
+
+}
@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Hands out ME instances built on top of a shared, read-only model.
+ * A hit is an instance that was reused, a miss is an instance that had to be constructed.
+ */
+abstract class InstancePool<T> {
+
+  static final String PER_CALL = "PER_CALL";
+  static final String PER_THREAD = "PER_THREAD";
+  static final String POOLED = "POOLED";
+
+  final Supplier<T> factory;
+  final Consumer<T> reset;
+
+  final AtomicLong hits = new AtomicLong();
+  final AtomicLong misses = new AtomicLong();
+  final AtomicLong waits = new AtomicLong();
+
+  InstancePool(Supplier<T> factory, Consumer<T> reset) {
+    this.factory = factory;
+    this.reset = reset;
+  }
+
+  static <T> InstancePool<T> create(String mode, int size, long waitMillis, Supplier<T> factory, Consumer<T> reset) {
+    switch (mode) {
+      case POOLED:
+        return new Bounded<>(size, waitMillis, factory, reset);
+      case PER_THREAD:
+        return new PerThread<>(factory, reset);
+      default:
+        return new PerCall<>(factory, reset);
+    }
+  }
+
+  abstract T borrow();
+
+  abstract void giveBack(T instance);
+
+  /**
+   * Drops the instances held by the pool. Instances still borrowed keep working, and are dropped
+   * instead of reused when they are given back.
+   */
+  void retire() {
+  }
+
+  long getHits() {
+    return hits.get();
+  }
+
+  long getMisses() {
+    return misses.get();
+  }
+
+  long getWaits() {
+    return waits.get();
+  }
+
+  T reused(T instance) {
+    hits.incrementAndGet();
+    reset.accept(instance);
+    return instance;
+  }
+
+  T created() {
+    misses.incrementAndGet();
+    return factory.get();
+  }
+
+  static class PerCall<T> extends InstancePool<T> {
+
+    PerCall(Supplier<T> factory, Consumer<T> reset) {
+      super(factory, reset);
+    }
+
+    @Override
+    T borrow() {
+      return created();
+    }
+
+    @Override
+    void giveBack(T instance) {
+    }
+  }
+
+  static class PerThread<T> extends InstancePool<T> {
+
+    // slots are tracked so that retire() can clear the instances of every thread, weakly and only
+    // while their thread is alive, so short lived threads do not leave their instances behind
+    private final Map<Thread, Slot<T>> slots = new WeakHashMap<>();
+    private final ThreadLocal<Slot<T>> local = ThreadLocal.withInitial(this::newSlot);
+    private volatile boolean retired;
+
+    PerThread(Supplier<T> factory, Consumer<T> reset) {
+      super(factory, reset);
+    }
+
+    @Override
+    T borrow() {
+      final Slot<T> slot = local.get();
+      T instance = slot.instance;
+      if (instance != null) {
+        return reused(instance);
+      }
+      instance = created();
+      if (!retired) {
+        slot.instance = instance;
+      }
+      return instance;
+    }
+
+    @Override
+    void giveBack(T instance) {
+    }
+
+    @Override
+    void retire() {
+      retired = true;
+      synchronized (slots) {
+        for (Slot<T> slot : slots.values()) {
+          slot.instance = null;
+        }
+        slots.clear();
+      }
+    }
+
+    /**
+     * Number of threads the pool holds an instance slot for.
+     */
+    int getSlots() {
+      synchronized (slots) {
+        slots.keySet().removeIf(thread -> !thread.isAlive());
+        return slots.size();
+      }
+    }
+
+    private Slot<T> newSlot() {
+      final Slot<T> slot = new Slot<>();
+      if (!retired) {
+        synchronized (slots) {
+          // threads that ended before they were collected
+          slots.keySet().removeIf(thread -> !thread.isAlive());
+          slots.put(Thread.currentThread(), slot);
+        }
+      }
+      return slot;
+    }
+
+    private static final class Slot<T> {
+      volatile T instance;
+    }
+  }
+
+  /**
+   * At most {@code size} instances are owned by the pool. When all of them are borrowed the caller
+   * waits for one to be released, and falls back to an unpooled instance if none shows up in time.
+   * Owned instances that are never given back are only held weakly, and once collected make room
+   * for new ones.
+   */
+  static class Bounded<T> extends InstancePool<T> {
+
+    private final int size;
+    private final long waitMillis;
+    private final BlockingQueue<T> idle;
+    private final AtomicInteger owned = new AtomicInteger();
+
+    // guarded by members, the references are kept so they are enqueued when their instance is collected
+    private final Map<T, Member<T>> members = new WeakHashMap<>();
+    private final Set<Member<T>> references = new HashSet<>();
+    private final ReferenceQueue<T> collected = new ReferenceQueue<>();
+
+    Bounded(int size, long waitMillis, Supplier<T> factory, Consumer<T> reset) {
+      super(factory, reset);
+      this.size = size;
+      this.waitMillis = waitMillis;
+      this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    @Override
+    T borrow() {
+      T instance = idle.poll();
+      if (instance != null) {
+        return checkOut(instance);
+      }
+
+      expunge();
+      if (owned.incrementAndGet() <= size) {
+        instance = created();
+        synchronized (members) {
+          final Member<T> member = new Member<>(instance, collected);
+          members.put(instance, member);
+          references.add(member);
+        }
+        return instance;
+      }
+      owned.decrementAndGet();
+
+      waits.incrementAndGet();
+      final Object event = ServiceEvents.beginPoolWait();
+      try {
+        instance = idle.poll(waitMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      final boolean timedOut = instance == null;
+      instance = timedOut ? created() : checkOut(instance);
+      ServiceEvents.endPoolWait(event, instance, size, waitMillis, timedOut);
+      return instance;
+    }
+
+    @Override
+    void giveBack(T instance) {
+      // instances the pool does not own, or that were already given back, are dropped
+      final boolean pooled;
+      synchronized (members) {
+        final Member<T> member = members.get(instance);
+        pooled = member != null && member.borrowed;
+        if (pooled) {
+          member.borrowed = false;
+        }
+      }
+      if (pooled) {
+        idle.offer(instance);
+      }
+    }
+
+    @Override
+    void retire() {
+      synchronized (members) {
+        members.clear();
+        references.clear();
+      }
+      idle.clear();
+      owned.set(0);
+    }
+
+    /**
+     * Number of instances owned by the pool, idle or borrowed.
+     */
+    int getOwned() {
+      expunge();
+      return owned.get();
+    }
+
+    private T checkOut(T instance) {
+      synchronized (members) {
+        final Member<T> member = members.get(instance);
+        if (member != null) {
+          member.borrowed = true;
+        }
+      }
+      return reused(instance);
+    }
+
+    /**
+     * Gives up ownership of the instances that were borrowed and collected without being given back.
+     */
+    private void expunge() {
+      Reference<? extends T> reference;
+      while ((reference = collected.poll()) != null) {
+        final boolean member;
+        synchronized (members) {
+          member = references.remove(reference);
+        }
+        if (member) {
+          owned.decrementAndGet();
+        }
+      }
+    }
+
+    private static final class Member<T> extends WeakReference<T> {
+      // guarded by the members of the pool
+      boolean borrowed = true;
+
+      Member(T instance, ReferenceQueue<T> queue) {
+        super(instance, queue);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * The Flight Recorder event classes behind {@link ServiceEvents}. Only used once jdk.jfr is known
+ * to be present, the events are passed around as plain objects so callers never load this class.
+ */
+final class JfrServiceEvents {
+
+  private static final EventType POOL_WAIT = EventType.getEventType(PoolWait.class);
+  private static final EventType MODEL_LOAD = EventType.getEventType(ModelLoad.class);
+
+  private JfrServiceEvents() {
+  }
+
+  static boolean isAvailable() {
+    return FlightRecorder.isAvailable();
+  }
+
+  static Object beginPoolWait() {
+    if (!POOL_WAIT.isEnabled()) {
+      return null;
+    }
+    final PoolWait event = new PoolWait();
+    event.begin();
+    return event;
+  }
+
+  static void endPoolWait(final Object started, final Object instance, final int poolSize, final long waitMillis,
+                          final boolean timedOut) {
+    final PoolWait event = (PoolWait) started;
+    event.end();
+    if (event.shouldCommit()) {
+      event.instanceClass = instance != null ? instance.getClass().getName() : null;
+      event.poolSize = poolSize;
+      event.waitLimit = waitMillis;
+      event.timedOut = timedOut;
+      event.commit();
+    }
+  }
+
+  static Object beginModelLoad() {
+    if (!MODEL_LOAD.isEnabled()) {
+      return null;
+    }
+    final ModelLoad event = new ModelLoad();
+    event.begin();
+    return event;
+  }
+
+  static void endModelLoad(final Object started, final Object service, final String serviceId, final Object file,
+                           final String storage, final boolean reload, final boolean loaded) {
+    final ModelLoad event = (ModelLoad) started;
+    event.end();
+    if (event.shouldCommit()) {
+      event.serviceType = service.getClass().getSimpleName();
+      event.serviceId = serviceId;
+      event.modelFile = String.valueOf(file);
+      event.storage = storage;
+      event.reload = reload;
+      event.loaded = loaded;
+      event.commit();
+    }
+  }
+
+  @Name("org.apache.opennlp.nifi.PoolWait")
+  @Label("Model Instance Pool Wait")
+  @Category({"OpenNLP", "Model Services"})
+  @Description("A borrower waited for an instance of a pool where all instances were in use.")
+  @Threshold("1 ms")
+  static final class PoolWait extends Event {
+
+    @Label("Instance Class")
+    String instanceClass;
+
+    @Label("Pool Size")
+    int poolSize;
+
+    @Label("Wait Limit")
+    @Timespan(Timespan.MILLISECONDS)
+    long waitLimit;
+
+    @Label("Timed Out")
+    @Description("No instance was released in time and an unpooled instance was created.")
+    boolean timedOut;
+  }
+
+  @Name("org.apache.opennlp.nifi.ModelLoad")
+  @Label("Model Load")
+  @Category({"OpenNLP", "Model Services"})
+  @Description("A model service loaded or reloaded its model, including the warm-up.")
+  @Threshold("0 ms")
+  static final class ModelLoad extends Event {
+
+    @Label("Service Type")
+    String serviceType;
+
+    @Label("Service Id")
+    String serviceId;
+
+    @Label("Model File")
+    String modelFile;
+
+    @Label("Storage")
+    String storage;
+
+    @Label("Reload")
+    boolean reload;
+
+    @Label("Loaded")
+    @Description("False when loading failed, or the service was disabled while loading.")
+    boolean loaded;
+  }
+
+}
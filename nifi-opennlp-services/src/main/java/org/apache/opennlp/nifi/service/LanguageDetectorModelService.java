@@ -20,30 +20,48 @@ package org.apache.opennlp.nifi.service;
 import opennlp.tools.langdetect.LanguageDetector;
 import opennlp.tools.langdetect.LanguageDetectorME;
 import opennlp.tools.langdetect.LanguageDetectorModel;
-import org.apache.nifi.annotation.lifecycle.OnEnabled;
-import org.apache.nifi.controller.ConfigurationContext;
-import org.apache.nifi.reporting.InitializationException;
+import opennlp.tools.ml.model.MaxentModel;
 
-import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
-public class LanguageDetectorModelService extends AbstractModelService implements LanguageDetectorService {
+public class LanguageDetectorModelService extends AbstractModelService<LanguageDetectorModel, LanguageDetector> implements LanguageDetectorService {
 
-  private LanguageDetectorModel model;
+  static final String PARAMETERS_ENTRY = "langdetect.model";
 
-  @OnEnabled
-  public void onEnabled(final ConfigurationContext context) throws InitializationException {
+  public LanguageDetectorModelService() {
+    super(LanguageDetectorModel.class);
+  }
 
-    try {
-      InputStream modelIn = new FileInputStream(context.getProperty(MODEL_PATH).getValue());
-      model = new LanguageDetectorModel(modelIn);
-    } catch (Throwable t) {
-      throw new InitializationException("Model Service configuration error", t);
-    }
+  @Override
+  protected LanguageDetectorModel loadModel(InputStream in) throws IOException {
+    return new LanguageDetectorModel(in);
   }
 
   @Override
-  public LanguageDetector getInstance() {
+  protected LanguageDetector createInstance(LanguageDetectorModel model) {
     return new LanguageDetectorME(model);
   }
+
+  @Override
+  protected void warmUp(LanguageDetector detector, String sample) {
+    detector.predictLanguages(sample);
+  }
+
+  @Override
+  protected String getParametersEntry() {
+    return PARAMETERS_ENTRY;
+  }
+
+  @Override
+  protected LanguageDetectorModel rebuildModel(InputStream stub, MaxentModel parameters) throws IOException {
+    return new SnapshotLanguageDetectorModel(stub, parameters);
+  }
+
+  static class SnapshotLanguageDetectorModel extends LanguageDetectorModel {
+    SnapshotLanguageDetectorModel(InputStream stub, MaxentModel parameters) throws IOException {
+      super(stub);
+      artifactMap.put(PARAMETERS_ENTRY, parameters);
+    }
+  }
 }
@@ -0,0 +1,405 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.ml.model.MaxentModel;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Maxent or perceptron parameters evaluated straight from a read-only memory-mapped file.
+ * <p>
+ * The predicate index is an open addressing hash table stored in the file, so neither the
+ * predicate labels nor the weights are copied onto the heap. Every JVM on the host that maps the
+ * same file shares its pages through the OS page cache. Weights can be stored as float32 to halve
+ * the file, at the cost of rounding the weights.
+ * <p>
+ * GIS models are evaluated without a correction constant, as models trained by OpenNLP 1.8 and
+ * later are.
+ */
+final class MappedParameters implements MaxentModel {
+
+  private static final int MAGIC = 0x4f4e4d50;
+  private static final int VERSION = 1;
+
+  private static final int MAXENT = 0;
+  private static final int PERCEPTRON = 1;
+
+  private final boolean perceptron;
+  private final String[] outcomeNames;
+  private final byte[] stub;
+
+  private final IntBuffer table;
+  private final IntBuffer hashes;
+  private final IntBuffer labelOffsets;
+  private final CharBuffer labels;
+  private final IntBuffer parameterOffsets;
+  private final IntBuffer outcomes;
+  private final DoubleBuffer doubles;
+  private final FloatBuffer floats;
+
+  private MappedParameters(final File file) throws IOException {
+    final ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Mapped parameters are too large: " + file);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+      throw new IOException("Not a mapped parameters file: " + file);
+    }
+    perceptron = buffer.getInt() == PERCEPTRON;
+    final boolean float32 = buffer.getInt() == 1;
+    final int outcomeCount = buffer.getInt();
+    final int predicateCount = buffer.getInt();
+    final int tableSize = buffer.getInt();
+    final int parameterCount = buffer.getInt();
+    final int stubLength = buffer.getInt();
+    final int outcomeChars = buffer.getInt();
+    final int labelChars = buffer.getInt();
+
+    final Cursor cursor = new Cursor(buffer, buffer.position());
+
+    stub = new byte[stubLength];
+    cursor.next(stubLength).get(stub);
+
+    final IntBuffer outcomeOffsets = cursor.next((outcomeCount + 1) * Integer.BYTES).asIntBuffer();
+    final CharBuffer outcomeLabels = cursor.next(outcomeChars * Character.BYTES).asCharBuffer();
+    outcomeNames = new String[outcomeCount];
+    for (int i = 0; i < outcomeCount; i++) {
+      final int start = outcomeOffsets.get(i);
+      outcomeNames[i] = outcomeLabels.subSequence(start, outcomeOffsets.get(i + 1)).toString();
+    }
+
+    table = cursor.next(tableSize * Integer.BYTES).asIntBuffer();
+    hashes = cursor.next(predicateCount * Integer.BYTES).asIntBuffer();
+    labelOffsets = cursor.next((predicateCount + 1) * Integer.BYTES).asIntBuffer();
+    labels = cursor.next(labelChars * Character.BYTES).asCharBuffer();
+    parameterOffsets = cursor.next((predicateCount + 1) * Integer.BYTES).asIntBuffer();
+    outcomes = cursor.next(parameterCount * Integer.BYTES).asIntBuffer();
+    if (float32) {
+      floats = cursor.next(parameterCount * Float.BYTES).asFloatBuffer();
+      doubles = null;
+    } else {
+      doubles = cursor.next(parameterCount * Double.BYTES).asDoubleBuffer();
+      floats = null;
+    }
+  }
+
+  static File fileFor(final File model, final String checksum, final boolean float32) {
+    return new File(model.getAbsoluteFile().getParentFile(),
+            model.getName() + "." + checksum.substring(0, 16) + (float32 ? ".params32" : ".params"));
+  }
+
+  static MappedParameters open(final File file) throws IOException {
+    return new MappedParameters(file);
+  }
+
+  @SuppressWarnings("unchecked")
+  static void write(final File file, final byte[] stub, final AbstractModel parameters, final boolean float32) throws IOException {
+    final Object[] data = parameters.getDataStructures();
+    final Map<String, Context> predicateMap = (Map<String, Context>) data[1];
+    final String[] outcomeNames = (String[]) data[2];
+
+    final String[] predicates = predicateMap.keySet().toArray(new String[0]);
+    final Context[] contexts = new Context[predicates.length];
+    int parameterCount = 0;
+    int labelChars = 0;
+    for (int i = 0; i < predicates.length; i++) {
+      contexts[i] = predicateMap.get(predicates[i]);
+      parameterCount += contexts[i].getOutcomes().length;
+      labelChars += predicates[i].length();
+    }
+    int outcomeChars = 0;
+    for (String outcome : outcomeNames) {
+      outcomeChars += outcome.length();
+    }
+
+    int tableSize = 2;
+    while (tableSize < predicates.length * 2) {
+      tableSize <<= 1;
+    }
+    final int[] table = new int[tableSize];
+    for (int i = 0; i < predicates.length; i++) {
+      int slot = slot(predicates[i].hashCode(), tableSize);
+      while (table[slot] != 0) {
+        slot = (slot + 1) & (tableSize - 1);
+      }
+      table[slot] = i + 1;
+    }
+
+    final Path temp = ModelSnapshot.tempFileFor(file);
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(parameters.getModelType() == AbstractModel.ModelType.Perceptron ? PERCEPTRON : MAXENT);
+        out.writeInt(float32 ? 1 : 0);
+        out.writeInt(outcomeNames.length);
+        out.writeInt(predicates.length);
+        out.writeInt(tableSize);
+        out.writeInt(parameterCount);
+        out.writeInt(stub.length);
+        out.writeInt(outcomeChars);
+        out.writeInt(labelChars);
+        pad(out);
+
+        out.write(stub);
+        pad(out);
+
+        writeLabels(out, outcomeNames);
+
+        for (int slot : table) {
+          out.writeInt(slot);
+        }
+        pad(out);
+        for (String predicate : predicates) {
+          out.writeInt(predicate.hashCode());
+        }
+        pad(out);
+        writeLabels(out, predicates);
+
+        int offset = 0;
+        out.writeInt(offset);
+        for (Context context : contexts) {
+          offset += context.getOutcomes().length;
+          out.writeInt(offset);
+        }
+        pad(out);
+        for (Context context : contexts) {
+          for (int outcome : context.getOutcomes()) {
+            out.writeInt(outcome);
+          }
+        }
+        pad(out);
+        for (Context context : contexts) {
+          for (double parameter : context.getParameters()) {
+            if (float32) {
+              out.writeFloat((float) parameter);
+            } else {
+              out.writeDouble(parameter);
+            }
+          }
+        }
+      }
+      // other JVMs only ever map a complete file
+      Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  InputStream openStub() {
+    return new ByteArrayInputStream(stub);
+  }
+
+  @Override
+  public double[] eval(String[] context) {
+    return eval(context, null, new double[outcomeNames.length]);
+  }
+
+  @Override
+  public double[] eval(String[] context, double[] probs) {
+    return eval(context, null, probs);
+  }
+
+  @Override
+  public double[] eval(String[] context, float[] values) {
+    return eval(context, values, new double[outcomeNames.length]);
+  }
+
+  /**
+   * Outcome probabilities of the context. The prior array is overwritten, callers such as the beam
+   * search pass the same array for every evaluation.
+   */
+  public double[] eval(String[] context, float[] values, double[] prior) {
+    // a uniform prior, which cancels out in the normalization below
+    Arrays.fill(prior, 0, outcomeNames.length, 0d);
+    for (int ci = 0; ci < context.length; ci++) {
+      final int predicate = indexOf(context[ci]);
+      if (predicate < 0) {
+        continue;
+      }
+      final double value = values == null ? 1 : values[ci];
+      final int end = parameterOffsets.get(predicate + 1);
+      for (int pi = parameterOffsets.get(predicate); pi < end; pi++) {
+        prior[outcomes.get(pi)] += parameter(pi) * value;
+      }
+    }
+
+    double scale = 1;
+    if (perceptron) {
+      for (double p : prior) {
+        scale = Math.max(scale, Math.abs(p));
+      }
+    }
+    double normal = 0;
+    for (int oid = 0; oid < outcomeNames.length; oid++) {
+      prior[oid] = Math.exp(prior[oid] / scale);
+      normal += prior[oid];
+    }
+    for (int oid = 0; oid < outcomeNames.length; oid++) {
+      prior[oid] /= normal;
+    }
+    return prior;
+  }
+
+  @Override
+  public String getBestOutcome(double[] ocs) {
+    int best = 0;
+    for (int i = 1; i < ocs.length; i++) {
+      if (ocs[i] > ocs[best]) {
+        best = i;
+      }
+    }
+    return outcomeNames[best];
+  }
+
+  @Override
+  public String getAllOutcomes(double[] ocs) {
+    final DecimalFormat format = new DecimalFormat("0.0000");
+    final StringBuilder sb = new StringBuilder(ocs.length * 2);
+    for (int i = 0; i < ocs.length; i++) {
+      sb.append(outcomeNames[i]).append('[').append(format.format(ocs[i])).append("]  ");
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String getOutcome(int i) {
+    return outcomeNames[i];
+  }
+
+  @Override
+  public int getIndex(String outcome) {
+    for (int i = 0; i < outcomeNames.length; i++) {
+      if (outcomeNames[i].equals(outcome)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public int getNumOutcomes() {
+    return outcomeNames.length;
+  }
+
+  private int indexOf(final String predicate) {
+    final int hash = predicate.hashCode();
+    final int mask = table.limit() - 1;
+    for (int slot = slot(hash, table.limit()); ; slot = (slot + 1) & mask) {
+      final int entry = table.get(slot);
+      if (entry == 0) {
+        return -1;
+      }
+      if (hashes.get(entry - 1) == hash && labelEquals(entry - 1, predicate)) {
+        return entry - 1;
+      }
+    }
+  }
+
+  private boolean labelEquals(final int index, final String predicate) {
+    final int start = labelOffsets.get(index);
+    if (labelOffsets.get(index + 1) - start != predicate.length()) {
+      return false;
+    }
+    for (int i = 0; i < predicate.length(); i++) {
+      if (labels.get(start + i) != predicate.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private double parameter(final int index) {
+    return floats != null ? floats.get(index) : doubles.get(index);
+  }
+
+  private static int slot(final int hash, final int tableSize) {
+    return (hash ^ (hash >>> 16)) & (tableSize - 1);
+  }
+
+  private static void writeLabels(final DataOutputStream out, final String[] labels) throws IOException {
+    int offset = 0;
+    out.writeInt(offset);
+    for (String label : labels) {
+      offset += label.length();
+      out.writeInt(offset);
+    }
+    pad(out);
+    for (String label : labels) {
+      out.writeChars(label);
+    }
+    pad(out);
+  }
+
+  /**
+   * Keeps every section 8 byte aligned so the buffer views read aligned values.
+   */
+  private static void pad(final DataOutputStream out) throws IOException {
+    while (out.size() % 8 != 0) {
+      out.writeByte(0);
+    }
+  }
+
+  private static final class Cursor {
+    private final ByteBuffer buffer;
+    private int position;
+
+    Cursor(ByteBuffer buffer, int position) {
+      this.buffer = buffer;
+      this.position = align(position);
+    }
+
+    ByteBuffer next(final int length) {
+      final ByteBuffer region = buffer.duplicate();
+      region.position(position);
+      region.limit(position + length);
+      position = align(position + length);
+      return region.slice();
+    }
+
+    private static int align(final int position) {
+      return (position + 7) & ~7;
+    }
+  }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Models loaded by the model services of this bundle, shared by every service that points at the
+ * same file with the same content and storage. A model is loaded by the first service that acquires it, and
+ * dropped when the last service holding it releases it.
+ */
+final class ModelRegistry {
+
+  interface Loader<M> {
+    /**
+     * Loads the model from the content read from the file, which may have changed since.
+     */
+    M load(File file, byte[] content, String checksum) throws IOException;
+  }
+
+  private static final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+  private ModelRegistry() {
+  }
+
+  static <M> Lease<M> acquire(final File file, final Class<M> type, final String variant, final Loader<M> loader)
+          throws IOException {
+    final byte[] content = read(file);
+    return acquire(file, type, content, checksum(content), variant, loader);
+  }
+
+  /**
+   * Services only share a model loaded the same way, the variant names how the model is stored.
+   */
+  static <M> Lease<M> acquire(final File file, final Class<M> type, final byte[] content, final String checksum,
+                              final String variant, final Loader<M> loader) throws IOException {
+    final Key key = new Key(file.getCanonicalPath(), type, checksum, variant);
+
+    while (true) {
+      final Entry entry = entries.computeIfAbsent(key, k -> new Entry());
+      synchronized (entry) {
+        if (entry.retired) {
+          // the last lease was released while we were looking it up
+          continue;
+        }
+        if (entry.model == null) {
+          try {
+            entry.model = loader.load(file, content, checksum);
+          } catch (IOException | RuntimeException e) {
+            retire(key, entry);
+            throw e;
+          }
+        }
+        entry.references++;
+        return new Lease<>(key, type.cast(entry.model));
+      }
+    }
+  }
+
+  static void release(final Lease<?> lease) {
+    final Entry entry = entries.get(lease.key);
+    if (entry == null) {
+      return;
+    }
+    synchronized (entry) {
+      if (--entry.references <= 0) {
+        retire(lease.key, entry);
+      }
+    }
+  }
+
+  static int getReferences(final Lease<?> lease) {
+    final Entry entry = entries.get(lease.key);
+    if (entry == null) {
+      return 0;
+    }
+    synchronized (entry) {
+      return entry.references;
+    }
+  }
+
+  /**
+   * Content of a model file, read once so the checksum and the loaded model come from the same bytes
+   * even when the file is replaced meanwhile.
+   */
+  static byte[] read(final File file) throws IOException {
+    return Files.readAllBytes(file.toPath());
+  }
+
+  static String checksum(final byte[] content) {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    return String.format("%064x", new BigInteger(1, digest.digest(content)));
+  }
+
+  private static void retire(final Key key, final Entry entry) {
+    entry.retired = true;
+    entry.model = null;
+    entries.remove(key, entry);
+  }
+
+  static final class Lease<M> {
+    final Key key;
+    final M model;
+
+    Lease(Key key, M model) {
+      this.key = key;
+      this.model = model;
+    }
+
+    String getChecksum() {
+      return key.checksum;
+    }
+  }
+
+  static final class Key {
+    final String path;
+    final Class<?> type;
+    final String checksum;
+    final String variant;
+
+    Key(String path, Class<?> type, String checksum, String variant) {
+      this.path = path;
+      this.type = type;
+      this.checksum = checksum;
+      this.variant = variant;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) o;
+      return path.equals(other.path) && type.equals(other.type) && checksum.equals(other.checksum)
+              && variant.equals(other.variant);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, type, checksum, variant);
+    }
+
+    @Override
+    public String toString() {
+      return type.getSimpleName() + " " + path + " (" + checksum + ", " + variant + ")";
+    }
+  }
+
+  private static final class Entry {
+    Object model;
+    int references;
+    boolean retired;
+  }
+
+}
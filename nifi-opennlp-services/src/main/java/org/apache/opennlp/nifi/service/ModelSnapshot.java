@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import opennlp.tools.ml.maxent.GISModel;
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.ml.model.GenericModelWriter;
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.ml.perceptron.PerceptronModel;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Pre-parsed copy of a model, written next to the model file and keyed by its checksum.
+ * <p>
+ * A snapshot holds the maxent or perceptron parameters of the model as flat arrays that are read
+ * with bulk reads from a memory-mapped file, and a stub copy of the model zip where the parameters
+ * artifact only keeps its outcome labels. The model is rebuilt by loading the stub, which is small,
+ * and putting the parameters in place of the stub artifact.
+ * <pre>
+ *   int magic, int version, int model type
+ *   int stub length, byte[] stub zip
+ *   int outcome count, int[] outcome label lengths, byte[] outcome labels (UTF-8)
+ *   int predicate count, int[] predicate label lengths, byte[] predicate labels (UTF-8)
+ *   int[] parameter count per predicate, int[] outcomes, double[] parameters
+ * </pre>
+ */
+final class ModelSnapshot {
+
+  interface Rebuilder<M> {
+    M rebuild(InputStream stub, MaxentModel parameters) throws IOException;
+  }
+
+  private static final int MAGIC = 0x4f4e4c50;
+  private static final int VERSION = 1;
+
+  private static final int MAXENT = 0;
+  private static final int PERCEPTRON = 1;
+
+  private ModelSnapshot() {
+  }
+
+  static File fileFor(final File model, final String checksum) {
+    return new File(model.getAbsoluteFile().getParentFile(), model.getName() + "." + checksum.substring(0, 16) + ".snapshot");
+  }
+
+  /**
+   * Snapshots only cover GIS and perceptron parameters, other model types are always parsed.
+   */
+  static boolean supports(final Object artifact) {
+    if (!(artifact instanceof AbstractModel)) {
+      return false;
+    }
+    final AbstractModel.ModelType type = ((AbstractModel) artifact).getModelType();
+    return type == AbstractModel.ModelType.Maxent || type == AbstractModel.ModelType.Perceptron;
+  }
+
+  @SuppressWarnings("unchecked")
+  static void write(final File snapshot, final byte[] model, final String entry, final AbstractModel parameters) throws IOException {
+    final Object[] data = parameters.getDataStructures();
+    final Map<String, Context> predicates = (Map<String, Context>) data[1];
+    final String[] outcomes = (String[]) data[2];
+
+    final byte[] stub = stubOf(model, entry, parameters);
+
+    final Path temp = tempFileFor(snapshot);
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(parameters.getModelType() == AbstractModel.ModelType.Perceptron ? PERCEPTRON : MAXENT);
+
+        out.writeInt(stub.length);
+        out.write(stub);
+
+        writeLabels(out, outcomes);
+        writeLabels(out, predicates.keySet().toArray(new String[0]));
+
+        for (Context context : predicates.values()) {
+          out.writeInt(context.getOutcomes().length);
+        }
+        for (Context context : predicates.values()) {
+          for (int outcome : context.getOutcomes()) {
+            out.writeInt(outcome);
+          }
+        }
+        for (Context context : predicates.values()) {
+          for (double parameter : context.getParameters()) {
+            out.writeDouble(parameter);
+          }
+        }
+      }
+      // readers never see a partially written snapshot
+      Files.move(temp, snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Temporary file of its own next to the target, so services that write the same file at the same
+   * time never write to or move each other's file. It can be read by others, as the target could be
+   * if it was created directly.
+   */
+  static Path tempFileFor(final File target) throws IOException {
+    final Path directory = target.getAbsoluteFile().getParentFile().toPath();
+    final Path temp = Files.createTempFile(directory, target.getName() + ".", ".tmp");
+    try {
+      Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-r--r--"));
+    } catch (UnsupportedOperationException e) {
+      // not a POSIX file system, the default permissions apply
+    }
+    return temp;
+  }
+
+  static <M> M read(final File snapshot, final Rebuilder<M> rebuilder) throws IOException {
+    final MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+      throw new IOException("Not a model snapshot: " + snapshot);
+    }
+    final int type = buffer.getInt();
+
+    final byte[] stub = new byte[buffer.getInt()];
+    buffer.get(stub);
+
+    final String[] outcomes = readLabels(buffer);
+    final String[] predicates = readLabels(buffer);
+
+    final int[] counts = readInts(buffer, predicates.length);
+    int total = 0;
+    for (int count : counts) {
+      total += count;
+    }
+    final int[] outcomeIndexes = readInts(buffer, total);
+    final double[] values = new double[total];
+    buffer.asDoubleBuffer().get(values);
+
+    final Context[] contexts = new Context[predicates.length];
+    int offset = 0;
+    for (int i = 0; i < contexts.length; i++) {
+      final int end = offset + counts[i];
+      contexts[i] = new Context(Arrays.copyOfRange(outcomeIndexes, offset, end), Arrays.copyOfRange(values, offset, end));
+      offset = end;
+    }
+
+    final MaxentModel parameters = type == PERCEPTRON
+            ? new PerceptronModel(contexts, predicates, outcomes)
+            : new GISModel(contexts, predicates, outcomes);
+
+    return rebuilder.rebuild(new ByteArrayInputStream(stub), parameters);
+  }
+
+  /**
+   * Copy of the model zip with the parameters artifact replaced by a model that only has the outcome
+   * labels, which is all the OpenNLP models check when they are loaded.
+   */
+  static byte[] stubOf(final byte[] model, final String entry, final AbstractModel parameters) throws IOException {
+    final String[] outcomes = (String[]) parameters.getDataStructures()[2];
+    final ByteArrayOutputStream stub = new ByteArrayOutputStream();
+    try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(model));
+         ZipOutputStream out = new ZipOutputStream(stub)) {
+      final byte[] copy = new byte[8 * 1024];
+      ZipEntry zipEntry;
+      while ((zipEntry = in.getNextEntry()) != null) {
+        out.putNextEntry(new ZipEntry(zipEntry.getName()));
+        if (entry.equals(zipEntry.getName())) {
+          out.write(stubParameters(outcomes));
+        } else {
+          int read;
+          while ((read = in.read(copy)) != -1) {
+            out.write(copy, 0, read);
+          }
+        }
+        out.closeEntry();
+      }
+    }
+    return stub.toByteArray();
+  }
+
+  private static byte[] stubParameters(final String[] outcomes) throws IOException {
+    final GISModel stub = new GISModel(
+            new Context[] {new Context(new int[] {0}, new double[] {0d})}, new String[] {"stub"}, outcomes);
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new GenericModelWriter(stub, new DataOutputStream(bytes)).persist();
+    return bytes.toByteArray();
+  }
+
+  private static void writeLabels(final DataOutputStream out, final String[] labels) throws IOException {
+    final byte[][] encoded = new byte[labels.length][];
+    for (int i = 0; i < labels.length; i++) {
+      encoded[i] = labels[i].getBytes(StandardCharsets.UTF_8);
+    }
+    out.writeInt(labels.length);
+    for (byte[] label : encoded) {
+      out.writeInt(label.length);
+    }
+    for (byte[] label : encoded) {
+      out.write(label);
+    }
+  }
+
+  private static String[] readLabels(final ByteBuffer buffer) {
+    final int[] lengths = readInts(buffer, buffer.getInt());
+    int total = 0;
+    for (int length : lengths) {
+      total += length;
+    }
+    final byte[] bytes = new byte[total];
+    buffer.get(bytes);
+
+    final String[] labels = new String[lengths.length];
+    int offset = 0;
+    for (int i = 0; i < labels.length; i++) {
+      labels[i] = new String(bytes, offset, lengths[i], StandardCharsets.UTF_8);
+      offset += lengths[i];
+    }
+    return labels;
+  }
+
+  private static int[] readInts(final ByteBuffer buffer, final int count) {
+    final int[] values = new int[count];
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + count * Integer.BYTES);
+    return values;
+  }
+
+}
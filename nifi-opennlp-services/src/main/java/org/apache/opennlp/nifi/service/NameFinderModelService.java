@@ -17,32 +17,57 @@
 
 package org.apache.opennlp.nifi.service;
 
+import opennlp.tools.ml.model.MaxentModel;
 import opennlp.tools.namefind.NameFinderME;
 import opennlp.tools.namefind.TokenNameFinderModel;
-import org.apache.nifi.annotation.lifecycle.OnEnabled;
-import org.apache.nifi.controller.ConfigurationContext;
-import org.apache.nifi.reporting.InitializationException;
+import opennlp.tools.tokenize.WhitespaceTokenizer;
 
-import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
-public class NameFinderModelService extends AbstractModelService implements NameFinderService {
+public class NameFinderModelService extends AbstractModelService<TokenNameFinderModel, NameFinderME> implements NameFinderService {
 
-  private TokenNameFinderModel model;
+  static final String PARAMETERS_ENTRY = "nameFinder.model";
 
-  @OnEnabled
-  public void onEnabled(final ConfigurationContext context) throws InitializationException {
+  public NameFinderModelService() {
+    super(TokenNameFinderModel.class);
+  }
 
-    try {
-      InputStream modelIn = new FileInputStream(context.getProperty(MODEL_PATH).getValue());
-      model = new TokenNameFinderModel(modelIn);
-    } catch (Throwable t) {
-      throw new InitializationException("Model Service configuration error", t);
-    }
+  @Override
+  protected TokenNameFinderModel loadModel(InputStream in) throws IOException {
+    return new TokenNameFinderModel(in);
   }
 
   @Override
-  public NameFinderME getInstance() {
+  protected NameFinderME createInstance(TokenNameFinderModel model) {
     return new NameFinderME(model);
   }
+
+  @Override
+  protected void resetInstance(NameFinderME nameFinder) {
+    nameFinder.clearAdaptiveData();
+  }
+
+  @Override
+  protected void warmUp(NameFinderME nameFinder, String sample) {
+    nameFinder.find(WhitespaceTokenizer.INSTANCE.tokenize(sample));
+    nameFinder.clearAdaptiveData();
+  }
+
+  @Override
+  protected String getParametersEntry() {
+    return PARAMETERS_ENTRY;
+  }
+
+  @Override
+  protected TokenNameFinderModel rebuildModel(InputStream stub, MaxentModel parameters) throws IOException {
+    return new SnapshotTokenNameFinderModel(stub, parameters);
+  }
+
+  static class SnapshotTokenNameFinderModel extends TokenNameFinderModel {
+    SnapshotTokenNameFinderModel(InputStream stub, MaxentModel parameters) throws IOException {
+      super(stub);
+      artifactMap.put(PARAMETERS_ENTRY, parameters);
+    }
+  }
 }
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import opennlp.tools.sentdetect.SentenceDetector;
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.sentdetect.SentenceModel;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public class SentenceDetectorModelRegistryService extends AbstractModelRegistryService<SentenceModel, SentenceDetector> implements SentenceDetectorService {
+
+  public SentenceDetectorModelRegistryService() {
+    super(SentenceModel.class);
+  }
+
+  @Override
+  protected SentenceModel loadModel(InputStream in) throws IOException {
+    return new SentenceModel(in);
+  }
+
+  @Override
+  protected SentenceDetector createInstance(SentenceModel model) {
+    return new SentenceDetectorME(model);
+  }
+}
@@ -17,33 +17,51 @@
 
 package org.apache.opennlp.nifi.service;
 
+import opennlp.tools.ml.model.MaxentModel;
 import opennlp.tools.sentdetect.SentenceDetector;
 import opennlp.tools.sentdetect.SentenceDetectorME;
 import opennlp.tools.sentdetect.SentenceModel;
-import org.apache.nifi.annotation.lifecycle.OnEnabled;
-import org.apache.nifi.controller.ConfigurationContext;
-import org.apache.nifi.reporting.InitializationException;
 
-import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
-public class SentenceDetectorModelService extends AbstractModelService implements SentenceDetectorService {
+public class SentenceDetectorModelService extends AbstractModelService<SentenceModel, SentenceDetector> implements SentenceDetectorService {
 
-  private SentenceModel model;
+  static final String PARAMETERS_ENTRY = "sent.model";
 
-  @OnEnabled
-  public void onEnabled(final ConfigurationContext context) throws InitializationException {
+  public SentenceDetectorModelService() {
+    super(SentenceModel.class);
+  }
 
-    try {
-      InputStream modelIn = new FileInputStream(context.getProperty(MODEL_PATH).getValue());
-      model = new SentenceModel(modelIn);
-    } catch (Throwable t) {
-      throw new InitializationException("Model Service configuration error", t);
-    }
+  @Override
+  protected SentenceModel loadModel(InputStream in) throws IOException {
+    return new SentenceModel(in);
   }
 
   @Override
-  public SentenceDetector getInstance() {
+  protected SentenceDetector createInstance(SentenceModel model) {
     return new SentenceDetectorME(model);
   }
+
+  @Override
+  protected void warmUp(SentenceDetector sentenceDetector, String sample) {
+    sentenceDetector.sentPosDetect(sample);
+  }
+
+  @Override
+  protected String getParametersEntry() {
+    return PARAMETERS_ENTRY;
+  }
+
+  @Override
+  protected SentenceModel rebuildModel(InputStream stub, MaxentModel parameters) throws IOException {
+    return new SnapshotSentenceModel(stub, parameters);
+  }
+
+  static class SnapshotSentenceModel extends SentenceModel {
+    SnapshotSentenceModel(InputStream stub, MaxentModel parameters) throws IOException {
+      super(stub);
+      artifactMap.put(PARAMETERS_ENTRY, parameters);
+    }
+  }
 }
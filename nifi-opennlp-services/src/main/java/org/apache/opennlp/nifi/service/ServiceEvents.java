@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+/**
+ * Java Flight Recorder events of the model services: waits for a pooled instance, and loading or
+ * reloading a model. The events are only created on a JVM with Flight Recorder and while a recording
+ * enables them, otherwise beginning an event returns null and ending it does nothing. Their
+ * thresholds are set in the recording settings, like those of the JDK events.
+ */
+final class ServiceEvents {
+
+  static final boolean AVAILABLE = isAvailable();
+
+  private ServiceEvents() {
+  }
+
+  private static boolean isAvailable() {
+    try {
+      return JfrServiceEvents.isAvailable();
+    } catch (LinkageError e) {
+      // a JVM without jdk.jfr
+      return false;
+    }
+  }
+
+  static Object beginPoolWait() {
+    return AVAILABLE ? JfrServiceEvents.beginPoolWait() : null;
+  }
+
+  static void endPoolWait(final Object event, final Object instance, final int poolSize, final long waitMillis,
+                          final boolean timedOut) {
+    if (event != null) {
+      JfrServiceEvents.endPoolWait(event, instance, poolSize, waitMillis, timedOut);
+    }
+  }
+
+  static Object beginModelLoad() {
+    return AVAILABLE ? JfrServiceEvents.beginModelLoad() : null;
+  }
+
+  static void endModelLoad(final Object event, final Object service, final String serviceId, final Object file,
+                           final String storage, final boolean reload, final boolean loaded) {
+    if (event != null) {
+      JfrServiceEvents.endModelLoad(event, service, serviceId, file, storage, reload, loaded);
+    }
+  }
+
+}
@@ -17,32 +17,46 @@
 
 package org.apache.opennlp.nifi.service;
 
+import opennlp.tools.ml.model.MaxentModel;
 import opennlp.tools.tokenize.Tokenizer;
 import opennlp.tools.tokenize.TokenizerME;
 import opennlp.tools.tokenize.TokenizerModel;
-import org.apache.nifi.annotation.lifecycle.OnEnabled;
-import org.apache.nifi.controller.ConfigurationContext;
-import org.apache.nifi.reporting.InitializationException;
 
-import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 
-public class TokenizerModelService extends AbstractModelService implements TokenizerService {
+public class TokenizerModelService extends AbstractModelService<TokenizerModel, Tokenizer> implements TokenizerService {
 
-  private TokenizerModel model;
+  static final String PARAMETERS_ENTRY = "token.model";
 
-  @OnEnabled
-  public void onEnabled(final ConfigurationContext context) throws InitializationException {
+  public TokenizerModelService() {
+    super(TokenizerModel.class);
+  }
 
-    try {
-      InputStream modelIn = new FileInputStream(context.getProperty(MODEL_PATH).getValue());
-      model = new TokenizerModel(modelIn);
-    } catch (Throwable t) {
-      throw new InitializationException("Model Service configuration error", t);
-    }
+  @Override
+  protected TokenizerModel loadModel(InputStream in) throws IOException {
+    return new TokenizerModel(in);
   }
+
   @Override
-  public Tokenizer getInstance() {
+  protected Tokenizer createInstance(TokenizerModel model) {
     return new TokenizerME(model);
   }
+
+  @Override
+  protected void warmUp(Tokenizer tokenizer, String sample) {
+    tokenizer.tokenizePos(sample);
+  }
+
+  @Override
+  protected String getParametersEntry() {
+    return PARAMETERS_ENTRY;
+  }
+
+  @Override
+  protected TokenizerModel rebuildModel(InputStream stub, MaxentModel parameters) throws IOException {
+    // TokenizerModel is final, the stub only provides the factory with its settings and abbreviations
+    return new TokenizerModel(parameters, Collections.<String, String>emptyMap(), new TokenizerModel(stub).getFactory());
+  }
 }
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestBatchExecutor {
+
+  private final AtomicInteger borrowed = new AtomicInteger();
+  private final AtomicInteger givenBack = new AtomicInteger();
+
+  private final Supplier<StringBuilder> borrow = () -> {
+    borrowed.incrementAndGet();
+    return new StringBuilder();
+  };
+  private final Consumer<StringBuilder> giveBack = instance -> givenBack.incrementAndGet();
+
+  private static List<Integer> inputs(final int size) {
+    final List<Integer> inputs = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      inputs.add(i);
+    }
+    return inputs;
+  }
+
+  @Test
+  public void testEmptyBatchBorrowsNothing() {
+    final List<String> results = BatchExecutor.applyAll(Collections.<Integer>emptyList(),
+            (StringBuilder instance, Integer input) -> input.toString(), borrow, giveBack);
+
+    assertTrue(results.isEmpty());
+    assertEquals(0, borrowed.get());
+  }
+
+  @Test
+  public void testSmallBatchUsesOneInstance() {
+    final List<Integer> results = BatchExecutor.applyAll(inputs(BatchExecutor.MIN_CHUNK),
+            (StringBuilder instance, Integer input) -> input * 2, borrow, giveBack);
+
+    assertEquals(BatchExecutor.MIN_CHUNK, results.size());
+    assertEquals(1, borrowed.get());
+    assertEquals(1, givenBack.get());
+  }
+
+  @Test
+  public void testResultsKeepInputOrderAcrossChunks() {
+    final int size = BatchExecutor.THREADS * BatchExecutor.MIN_CHUNK * 4 + 3;
+    final List<Integer> results = BatchExecutor.applyAll(inputs(size),
+            (StringBuilder instance, Integer input) -> input * 2, borrow, giveBack);
+
+    assertEquals(size, results.size());
+    for (int i = 0; i < size; i++) {
+      assertEquals(Integer.valueOf(i * 2), results.get(i));
+    }
+    // one instance per chunk, every one of them given back
+    assertEquals(BatchExecutor.THREADS, borrowed.get());
+    assertEquals(borrowed.get(), givenBack.get());
+  }
+
+  @Test
+  public void testInstanceIsNotSharedWithinAChunk() {
+    final int size = BatchExecutor.THREADS * BatchExecutor.MIN_CHUNK * 2;
+    // each instance collects its own inputs, so a shared instance would show up as a longer result
+    final List<Integer> results = BatchExecutor.applyAll(inputs(size), (StringBuilder instance, Integer input) -> {
+      instance.append('x');
+      return instance.length();
+    }, borrow, giveBack);
+
+    for (int i = 0; i < size; i++) {
+      assertTrue("Result " + results.get(i) + " at " + i, results.get(i) <= size / BatchExecutor.THREADS + 1);
+    }
+  }
+
+  @Test
+  public void testFailureIsRethrown() {
+    final int size = BatchExecutor.THREADS * BatchExecutor.MIN_CHUNK * 2;
+    try {
+      BatchExecutor.applyAll(inputs(size), (StringBuilder instance, Integer input) -> {
+        if (input == 1) {
+          throw new IllegalArgumentException("input " + input);
+        }
+        return input;
+      }, borrow, giveBack);
+      fail("Expected the failure of the first chunk to be rethrown");
+    } catch (IllegalArgumentException e) {
+      assertEquals("input 1", e.getMessage());
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testNestedBatchesDoNotDeadlock() {
+    final int size = BatchExecutor.THREADS * BatchExecutor.MIN_CHUNK * 8;
+    // every input of the outer batch runs an inner batch large enough to be split in chunks
+    final List<Integer> results = BatchExecutor.applyAll(inputs(size), (StringBuilder outer, Integer input) -> {
+      final List<Integer> inner = BatchExecutor.applyAll(inputs(size),
+              (StringBuilder instance, Integer value) -> value + input, borrow, giveBack);
+      return inner.get(size - 1);
+    }, borrow, giveBack);
+
+    for (int i = 0; i < size; i++) {
+      assertEquals(Integer.valueOf(size - 1 + i), results.get(i));
+    }
+    assertEquals(borrowed.get(), givenBack.get());
+  }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestInstancePool {
+
+  private final AtomicInteger created = new AtomicInteger();
+  private final AtomicInteger resets = new AtomicInteger();
+
+  private InstancePool<Object> pool(final String mode, final int size, final long waitMillis) {
+    return InstancePool.create(mode, size, waitMillis, () -> {
+      created.incrementAndGet();
+      return new Object();
+    }, instance -> resets.incrementAndGet());
+  }
+
+  @Test
+  public void testPerCallCreatesEveryInstance() {
+    final InstancePool<Object> pool = pool(InstancePool.PER_CALL, 1, 0);
+    final Object first = pool.borrow();
+    pool.giveBack(first);
+    assertNotSame(first, pool.borrow());
+    assertEquals(2, created.get());
+    assertEquals(2L, pool.getMisses());
+    assertEquals(0L, pool.getHits());
+  }
+
+  @Test
+  public void testPerThreadReusesInstanceOfThread() throws InterruptedException {
+    final InstancePool<Object> pool = pool(InstancePool.PER_THREAD, 1, 0);
+    final Object first = pool.borrow();
+    assertSame(first, pool.borrow());
+    assertEquals(1, resets.get());
+
+    final Object[] other = new Object[1];
+    final Thread thread = new Thread(() -> other[0] = pool.borrow());
+    thread.start();
+    thread.join();
+    assertNotSame(first, other[0]);
+    assertEquals(2L, pool.getMisses());
+    assertEquals(1L, pool.getHits());
+
+    // a retired pool hands out fresh instances that are not kept
+    pool.retire();
+    assertNotSame(first, pool.borrow());
+    assertEquals(0, ((InstancePool.PerThread<Object>) pool).getSlots());
+  }
+
+  @Test
+  public void testPerThreadDropsSlotsOfEndedThreads() throws InterruptedException {
+    final InstancePool.PerThread<Object> pool = (InstancePool.PerThread<Object>) pool(InstancePool.PER_THREAD, 1, 0);
+    for (int round = 0; round < 10; round++) {
+      final List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        final Thread thread = new Thread(pool::borrow);
+        threads.add(thread);
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      assertEquals(0, pool.getSlots());
+    }
+    assertEquals(100, created.get());
+
+    pool.borrow();
+    assertEquals(1, pool.getSlots());
+  }
+
+  @Test
+  public void testBoundedReusesReleasedInstances() {
+    final InstancePool<Object> pool = pool(InstancePool.POOLED, 2, 0);
+    final Object first = pool.borrow();
+    final Object second = pool.borrow();
+    pool.giveBack(first);
+    assertSame(first, pool.borrow());
+    pool.giveBack(second);
+    assertSame(second, pool.borrow());
+    assertEquals(2, created.get());
+    assertEquals(2L, pool.getHits());
+  }
+
+  @Test
+  public void testBoundedFallsBackWhenExhausted() {
+    final InstancePool<Object> pool = pool(InstancePool.POOLED, 1, 10);
+    final Object owned = pool.borrow();
+    final Object unpooled = pool.borrow();
+    assertNotSame(owned, unpooled);
+    assertEquals(1L, pool.getWaits());
+
+    // an instance the pool does not own is dropped, as is a second release of the same instance
+    pool.giveBack(unpooled);
+    pool.giveBack(owned);
+    pool.giveBack(owned);
+    assertSame(owned, pool.borrow());
+    final Object fallback = pool.borrow();
+    assertNotSame(owned, fallback);
+    assertNotSame(unpooled, fallback);
+  }
+
+  @Test
+  public void testBoundedReplacesInstancesThatAreNeverGivenBack() throws InterruptedException {
+    final InstancePool.Bounded<Object> pool = (InstancePool.Bounded<Object>) pool(InstancePool.POOLED, 2, 10);
+    final Object kept = pool.borrow();
+    // borrowed and dropped without being given back
+    pool.borrow();
+    assertEquals(2, pool.getOwned());
+
+    for (int i = 0; i < 100 && pool.getOwned() > 1; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertEquals(1, pool.getOwned());
+
+    // the dropped instance made room for a new pooled one, without waiting
+    final Object replacement = pool.borrow();
+    assertEquals(0L, pool.getWaits());
+    pool.giveBack(replacement);
+    assertSame(replacement, pool.borrow());
+    pool.giveBack(kept);
+    assertSame(kept, pool.borrow());
+    assertEquals(2, pool.getOwned());
+  }
+
+  @Test
+  public void testBoundedDropsInstancesAfterRetire() {
+    final InstancePool<Object> pool = pool(InstancePool.POOLED, 1, 0);
+    final Object borrowed = pool.borrow();
+    pool.retire();
+    pool.giveBack(borrowed);
+    assertNotSame(borrowed, pool.borrow());
+    assertTrue(created.get() >= 2);
+  }
+
+}
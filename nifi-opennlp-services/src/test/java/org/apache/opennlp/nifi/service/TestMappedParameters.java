@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.namefind.BioCodec;
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.NameSample;
+import opennlp.tools.namefind.TokenNameFinderFactory;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.util.ObjectStreamUtils;
+import opennlp.tools.util.Span;
+import opennlp.tools.util.TrainingParameters;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestMappedParameters {
+
+  private static final String[][] DOCUMENTS = {
+          {"Anna", "lives", "in", "the", "city", "."},
+          {"Ask", "Peter", "about", "the", "model", "."},
+          {"Yesterday", "Anna", "met", "Peter", "and", "Maria", "."},
+          {"Nobody", "was", "there", "."},
+          {"Maria", "said", "that", "Anna", "left", "early", "."}
+  };
+
+  private static byte[] content;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void setupClass() throws IOException {
+    final List<NameSample> samples = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      samples.add(new NameSample(new String[] {"Anna", "lives", "here", "."},
+              new Span[] {new Span(0, 1, "person")}, i % 5 == 0));
+      samples.add(new NameSample(new String[] {"Ask", "Peter", "about", "it", "."},
+              new Span[] {new Span(1, 2, "person")}, false));
+      samples.add(new NameSample(new String[] {"Then", "Maria", "and", "Anna", "met", "."},
+              new Span[] {new Span(1, 2, "person"), new Span(3, 4, "person")}, false));
+      samples.add(new NameSample(new String[] {"The", "city", "was", "quiet", "."}, new Span[0], false));
+    }
+    final TrainingParameters params = TrainingParameters.defaultParams();
+    params.put(TrainingParameters.ITERATIONS_PARAM, "20");
+    params.put(TrainingParameters.CUTOFF_PARAM, "1");
+    final TokenNameFinderModel model = NameFinderME.train("en", "person", ObjectStreamUtils.createObjectStream(samples),
+            params, TokenNameFinderFactory.create(null, null, Collections.emptyMap(), new BioCodec()));
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    model.serialize(out);
+    content = out.toByteArray();
+  }
+
+  private TokenNameFinderModel mappedModel(final TokenNameFinderModel heap) throws IOException {
+    final AbstractModel parameters = (AbstractModel) heap.getArtifact(NameFinderModelService.PARAMETERS_ENTRY);
+    final File file = new File(folder.getRoot(), "en-ner-person.params");
+    MappedParameters.write(file, ModelSnapshot.stubOf(content, NameFinderModelService.PARAMETERS_ENTRY, parameters),
+            parameters, false);
+    final MappedParameters mapped = MappedParameters.open(file);
+    return new NameFinderModelService.SnapshotTokenNameFinderModel(mapped.openStub(), mapped);
+  }
+
+  @Test
+  public void testMappedNameFinderFindsTheSameNames() throws IOException {
+    final TokenNameFinderModel heap = new TokenNameFinderModel(new ByteArrayInputStream(content));
+    final NameFinderME heapFinder = new NameFinderME(heap);
+    final NameFinderME mappedFinder = new NameFinderME(mappedModel(heap));
+
+    int names = 0;
+    // the same instances for every document, the beam search reuses its probability arrays
+    for (int round = 0; round < 3; round++) {
+      for (String[] document : DOCUMENTS) {
+        final Span[] expected = heapFinder.find(document);
+        final Span[] actual = mappedFinder.find(document);
+        assertArrayEquals(Arrays.toString(document), expected, actual);
+        for (int i = 0; i < expected.length; i++) {
+          assertEquals(expected[i].getProb(), actual[i].getProb(), 1e-9);
+        }
+        names += expected.length;
+      }
+      heapFinder.clearAdaptiveData();
+      mappedFinder.clearAdaptiveData();
+    }
+    assertTrue("The model finds no names", names > 0);
+  }
+
+  @Test
+  public void testEvalOverwritesTheGivenArray() throws IOException {
+    final TokenNameFinderModel heap = new TokenNameFinderModel(new ByteArrayInputStream(content));
+    final AbstractModel parameters = (AbstractModel) heap.getArtifact(NameFinderModelService.PARAMETERS_ENTRY);
+    final MappedParameters mapped = (MappedParameters) mappedModel(heap).getArtifact(NameFinderModelService.PARAMETERS_ENTRY);
+
+    final String[] context = {"w=anna", "sc=ic", "w&c=anna,ic"};
+    final double[] expected = parameters.eval(context);
+    final double[] reused = new double[mapped.getNumOutcomes()];
+    Arrays.fill(reused, 42d);
+    for (int i = 0; i < 3; i++) {
+      final double[] actual = mapped.eval(context, reused);
+      for (int oid = 0; oid < expected.length; oid++) {
+        assertEquals(parameters.getOutcome(oid), expected[oid], actual[oid], 1e-9);
+      }
+    }
+  }
+
+}
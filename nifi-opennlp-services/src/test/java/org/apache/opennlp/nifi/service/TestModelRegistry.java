@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class TestModelRegistry {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private final ModelRegistry.Loader<String> loader = (file, content, checksum) -> {
+    loads.incrementAndGet();
+    return new String(content, StandardCharsets.UTF_8);
+  };
+
+  private File model(final String name, final String content) throws IOException {
+    final File file = new File(folder.getRoot(), name);
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  @Test
+  public void testSameFileIsLoadedOnceAndShared() throws IOException {
+    final File file = model("shared.bin", "model");
+    final ModelRegistry.Lease<String> first = ModelRegistry.acquire(file, String.class, "HEAP", loader);
+    final ModelRegistry.Lease<String> second = ModelRegistry.acquire(file, String.class, "HEAP", loader);
+
+    assertSame(first.model, second.model);
+    assertEquals(1, loads.get());
+    assertEquals(2, ModelRegistry.getReferences(first));
+
+    ModelRegistry.release(second);
+    assertEquals(1, ModelRegistry.getReferences(first));
+  }
+
+  @Test
+  public void testVariantsAreLoadedSeparately() throws IOException {
+    final File file = model("variants.bin", "model");
+    final ModelRegistry.Lease<String> heap = ModelRegistry.acquire(file, String.class, "HEAP", loader);
+    final ModelRegistry.Lease<String> mapped = ModelRegistry.acquire(file, String.class, "MAPPED", loader);
+
+    assertNotSame(heap.model, mapped.model);
+    assertEquals(2, loads.get());
+    assertEquals(1, ModelRegistry.getReferences(heap));
+    assertEquals(1, ModelRegistry.getReferences(mapped));
+  }
+
+  @Test
+  public void testLastReleaseDropsModel() throws IOException {
+    final File file = model("dropped.bin", "model");
+    final ModelRegistry.Lease<String> lease = ModelRegistry.acquire(file, String.class, "HEAP", loader);
+    ModelRegistry.release(lease);
+    assertEquals(0, ModelRegistry.getReferences(lease));
+
+    // released twice is harmless
+    ModelRegistry.release(lease);
+
+    final ModelRegistry.Lease<String> again = ModelRegistry.acquire(file, String.class, "HEAP", loader);
+    assertEquals(2, loads.get());
+    assertEquals(1, ModelRegistry.getReferences(again));
+  }
+
+  @Test
+  public void testChangedContentIsLoadedNextToCurrentModel() throws IOException {
+    final File file = model("reloaded.bin", "first");
+    final ModelRegistry.Lease<String> current = ModelRegistry.acquire(file, String.class, "HEAP", loader);
+
+    final byte[] content = "second".getBytes(StandardCharsets.UTF_8);
+    Files.write(file.toPath(), content);
+    final String checksum = ModelRegistry.checksum(content);
+    assertNotEquals(current.getChecksum(), checksum);
+
+    final ModelRegistry.Lease<String> reloaded = ModelRegistry.acquire(file, String.class, content, checksum, "HEAP", loader);
+    assertEquals("first", current.model);
+    assertEquals("second", reloaded.model);
+
+    // the swap releases the old model, services still on it keep it alive
+    ModelRegistry.release(current);
+    assertEquals(0, ModelRegistry.getReferences(current));
+    assertEquals(1, ModelRegistry.getReferences(reloaded));
+  }
+
+  @Test
+  public void testModelIsLoadedFromTheChecksummedContent() throws IOException {
+    final File file = model("replaced.bin", "on disk");
+    final byte[] content = "read before".getBytes(StandardCharsets.UTF_8);
+    final ModelRegistry.Lease<String> lease = ModelRegistry.acquire(file, String.class, content,
+            ModelRegistry.checksum(content), "HEAP", loader);
+    assertEquals("read before", lease.model);
+    assertEquals(ModelRegistry.checksum(content), lease.getChecksum());
+  }
+
+  @Test
+  public void testFailedLoadIsNotKept() throws IOException {
+    final File file = model("failing.bin", "model");
+    try {
+      ModelRegistry.acquire(file, String.class, "HEAP", (f, content, checksum) -> {
+        throw new IOException("broken");
+      });
+      fail("Expected the load to fail");
+    } catch (IOException e) {
+      assertEquals("broken", e.getMessage());
+    }
+
+    final ModelRegistry.Lease<String> lease = ModelRegistry.acquire(file, String.class, "HEAP", loader);
+    assertEquals("model", lease.model);
+    assertEquals(1, ModelRegistry.getReferences(lease));
+  }
+
+}
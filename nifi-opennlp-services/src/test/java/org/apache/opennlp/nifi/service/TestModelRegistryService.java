@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class TestModelRegistryService {
+
+  // each model file weighs HEAP_ESTIMATE_FACTOR times 100 bytes
+  private static final int MODEL_BYTES = 100;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private TestRunner testRunner;
+  private TextRegistryService service;
+
+  @Before
+  public void setup() throws IOException, InitializationException {
+    // every model is a single letter repeated
+    model("en", 'e');
+    model("de", 'd');
+    model("fr", 'f');
+    model("en.v2", 'v');
+
+    testRunner = TestRunners.newTestRunner(NoOpProcessor.class);
+    service = new TextRegistryService();
+    testRunner.addControllerService("registry", service, Collections.emptyMap());
+    testRunner.setProperty(service, AbstractModelRegistryService.MODEL_DIRECTORY, folder.getRoot().getAbsolutePath());
+    testRunner.setProperty(service, AbstractModelService.INSTANCE_MODE, InstancePool.POOLED);
+  }
+
+  private void model(final String key, final char letter) throws IOException {
+    final char[] model = new char[MODEL_BYTES];
+    Arrays.fill(model, letter);
+    Files.write(new File(folder.getRoot(), key + ".bin").toPath(), new String(model).getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private void enable(final long heapBudget) {
+    testRunner.setProperty(service, AbstractModelRegistryService.HEAP_BUDGET, heapBudget + " B");
+    testRunner.enableControllerService(service);
+  }
+
+  private String use(final String key) {
+    final StringBuilder instance = service.getInstance(key);
+    try {
+      return instance.substring(0, 1);
+    } finally {
+      service.release(key, instance);
+    }
+  }
+
+  @Test
+  public void testLeastRecentlyUsedModelIsEvicted() {
+    enable(2 * MODEL_BYTES * AbstractModelRegistryService.HEAP_ESTIMATE_FACTOR);
+
+    assertEquals("e", use("en"));
+    assertEquals("d", use("de"));
+    assertEquals("e", use("en"));
+    assertEquals(Arrays.asList("de", "en"), service.getLoadedKeys());
+
+    assertEquals("f", use("fr"));
+    assertEquals(Arrays.asList("en", "fr"), service.getLoadedKeys());
+    assertEquals(1L, service.getEvictions());
+    assertEquals(3L, service.getLoads());
+    assertEquals(2L * MODEL_BYTES * AbstractModelRegistryService.HEAP_ESTIMATE_FACTOR, service.getEstimatedHeap());
+
+    // an evicted model is loaded again
+    assertEquals("d", use("de"));
+    assertEquals(Arrays.asList("fr", "de"), service.getLoadedKeys());
+    assertEquals(4L, service.getLoads());
+    assertEquals(2L, service.getEvictions());
+  }
+
+  @Test
+  public void testMostRecentlyUsedModelIsKeptOverBudget() {
+    enable(1);
+
+    use("en");
+    use("de");
+    assertEquals(Collections.singletonList("de"), service.getLoadedKeys());
+    assertEquals(1L, service.getEvictions());
+  }
+
+  @Test
+  public void testReleasedInstancesAreReused() {
+    enable(1024 * 1024);
+
+    final StringBuilder first = service.getInstance("en");
+    service.release("en", first);
+    assertSame(first, service.getInstance("en"));
+    assertNotSame(first, service.getInstance("de"));
+    assertEquals(1L, service.getHits());
+    assertEquals(2L, service.getMisses());
+  }
+
+  @Test
+  public void testDefaultKeyIsUsedForKeysWithoutModel() {
+    testRunner.setProperty(service, AbstractModelRegistryService.DEFAULT_KEY, "en");
+    enable(1024 * 1024);
+
+    assertEquals("e", use("xx"));
+    assertEquals("e", use(null));
+    assertEquals("v", use("en.v2"));
+    assertEquals(Arrays.asList("en", "en.v2"), service.getLoadedKeys());
+  }
+
+  @Test
+  public void testInstanceGoesBackToItsPoolAfterTheKeyIsResolvedAgain() throws IOException {
+    testRunner.setProperty(service, AbstractModelRegistryService.DEFAULT_KEY, "en");
+    enable(1024 * 1024);
+
+    final StringBuilder first = service.getInstance("xx");
+    assertEquals("e", first.substring(0, 1));
+    model("xx", 'x');
+
+    // keys taken from records fill the resolved keys until they are all forgotten
+    for (int i = 0; i < AbstractModelRegistryService.MAX_RESOLVED; i++) {
+      use("unknown" + i);
+    }
+    assertEquals("x", use("xx"));
+
+    service.release("xx", first);
+    // one instance was released by the loop before, the other one is the first
+    service.getInstance("en");
+    assertSame(first, service.getInstance("en"));
+  }
+
+  @Test
+  public void testKeysOutsideTheModelDirectoryAreRejected() {
+    testRunner.setProperty(service, AbstractModelRegistryService.DEFAULT_KEY, "en");
+    enable(1024 * 1024);
+
+    for (String key : Arrays.asList(".", "..", "...", "../en", "en/..")) {
+      try {
+        service.getInstance(key);
+        fail("Expected key '" + key + "' to be rejected");
+      } catch (IllegalArgumentException e) {
+        assertEquals("Invalid model key '" + key + "'", e.getMessage());
+      }
+    }
+    // dots within a key are fine
+    assertEquals("v", use("en.v2"));
+  }
+
+  public static class TextRegistryService extends AbstractModelRegistryService<String, StringBuilder> {
+
+    public TextRegistryService() {
+      super(String.class);
+    }
+
+    @Override
+    protected String loadModel(InputStream in) throws IOException {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    protected StringBuilder createInstance(String model) {
+      return new StringBuilder(model);
+    }
+  }
+
+  public static class NoOpProcessor extends AbstractProcessor {
+    @Override
+    public void onTrigger(ProcessContext context, ProcessSession session) {
+    }
+  }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import opennlp.tools.langdetect.Language;
+import opennlp.tools.langdetect.LanguageDetectorFactory;
+import opennlp.tools.langdetect.LanguageDetectorME;
+import opennlp.tools.langdetect.LanguageDetectorModel;
+import opennlp.tools.langdetect.LanguageSample;
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.namefind.BioCodec;
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.NameSample;
+import opennlp.tools.namefind.TokenNameFinderFactory;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.tokenize.TokenSample;
+import opennlp.tools.tokenize.TokenizerFactory;
+import opennlp.tools.tokenize.TokenizerME;
+import opennlp.tools.tokenize.TokenizerModel;
+import opennlp.tools.util.ObjectStreamUtils;
+import opennlp.tools.util.Span;
+import opennlp.tools.util.TrainingParameters;
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestModelSnapshot {
+
+  private static final String[][] DOCUMENTS = {
+          {"Anna", "lives", "in", "the", "city", "."},
+          {"Ask", "Peter", "about", "the", "model", "."},
+          {"Yesterday", "Anna", "met", "Peter", "and", "Maria", "."},
+          {"Nobody", "was", "there", "."}
+  };
+
+  private static final String[] TEXTS = {
+          "the house is old and the garden is green",
+          "das Haus ist alt und der Garten ist gr\u00fcn",
+          "huset er gammelt og haven er gr\u00f8n",
+          "garden huset Haus"
+  };
+
+  private static byte[] tokenizer;
+  private static byte[] nameFinder;
+  private static byte[] languageDetector;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private TestRunner runner;
+
+  @BeforeClass
+  public static void setupClass() throws IOException {
+    final TrainingParameters params = TrainingParameters.defaultParams();
+    params.put(TrainingParameters.ITERATIONS_PARAM, "20");
+    params.put(TrainingParameters.CUTOFF_PARAM, "1");
+
+    final List<TokenSample> tokens = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      tokens.add(new TokenSample("Anna", new Span[] {new Span(0, 4)}));
+      tokens.add(new TokenSample("Anna lives here.", new Span[] {new Span(0, 4), new Span(5, 10),
+              new Span(11, 15), new Span(15, 16)}));
+      tokens.add(new TokenSample("Ask Peter, then.", new Span[] {new Span(0, 3), new Span(4, 9),
+              new Span(9, 10), new Span(11, 15), new Span(15, 16)}));
+    }
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TokenizerME.train(ObjectStreamUtils.createObjectStream(tokens),
+            TokenizerFactory.create(null, "en", null, true, null), params).serialize(out);
+    tokenizer = out.toByteArray();
+
+    final List<NameSample> names = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      names.add(new NameSample(new String[] {"Anna", "lives", "here", "."},
+              new Span[] {new Span(0, 1, "person")}, i % 5 == 0));
+      names.add(new NameSample(new String[] {"Ask", "Peter", "about", "it", "."},
+              new Span[] {new Span(1, 2, "person")}, false));
+      names.add(new NameSample(new String[] {"The", "city", "was", "quiet", "."}, new Span[0], false));
+    }
+    out.reset();
+    NameFinderME.train("en", "person", ObjectStreamUtils.createObjectStream(names), params,
+            TokenNameFinderFactory.create(null, null, Collections.emptyMap(), new BioCodec())).serialize(out);
+    nameFinder = out.toByteArray();
+
+    final List<LanguageSample> languages = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      languages.add(new LanguageSample(new Language("eng"), "the house and the garden are old " + i));
+      languages.add(new LanguageSample(new Language("deu"), "das Haus und der Garten sind alt " + i));
+      languages.add(new LanguageSample(new Language("dan"), "huset og haven er gamle " + i));
+    }
+    out.reset();
+    LanguageDetectorME.train(ObjectStreamUtils.createObjectStream(languages), params, new LanguageDetectorFactory())
+            .serialize(out);
+    languageDetector = out.toByteArray();
+  }
+
+  private File snapshotOf(final byte[] content, final String entry, final AbstractModel parameters) throws IOException {
+    final File snapshot = new File(folder.getRoot(), "model.snapshot");
+    ModelSnapshot.write(snapshot, content, entry, parameters);
+    return snapshot;
+  }
+
+  @Test
+  public void testTokenizerFromSnapshotSplitsTheSameTokens() throws IOException {
+    final TokenizerModel heap = new TokenizerModel(new ByteArrayInputStream(tokenizer));
+    final File snapshot = snapshotOf(tokenizer, TokenizerModelService.PARAMETERS_ENTRY,
+            (AbstractModel) heap.getMaxentModel());
+    final TokenizerModel rebuilt = ModelSnapshot.read(snapshot, new TokenizerModelService()::rebuildModel);
+
+    assertEquals(heap.useAlphaNumericOptimization(), rebuilt.useAlphaNumericOptimization());
+    final TokenizerME heapTokenizer = new TokenizerME(heap);
+    final TokenizerME rebuiltTokenizer = new TokenizerME(rebuilt);
+    for (String text : new String[] {"Anna lives here.", "Ask Peter, then.", "Peter, Anna and Maria."}) {
+      assertArrayEquals(text, heapTokenizer.tokenizePos(text), rebuiltTokenizer.tokenizePos(text));
+      assertArrayEquals(text, heapTokenizer.getTokenProbabilities(), rebuiltTokenizer.getTokenProbabilities(), 1e-9);
+    }
+  }
+
+  @Test
+  public void testNameFinderFromSnapshotFindsTheSameNames() throws IOException {
+    final TokenNameFinderModel heap = new TokenNameFinderModel(new ByteArrayInputStream(nameFinder));
+    final File snapshot = snapshotOf(nameFinder, NameFinderModelService.PARAMETERS_ENTRY,
+            (AbstractModel) heap.getArtifact(NameFinderModelService.PARAMETERS_ENTRY));
+    final TokenNameFinderModel rebuilt = ModelSnapshot.read(snapshot, new NameFinderModelService()::rebuildModel);
+
+    assertNamesEqual(heap, rebuilt);
+  }
+
+  @Test
+  public void testLanguageDetectorFromSnapshotPredictsTheSameLanguages() throws IOException {
+    final LanguageDetectorModel heap = new LanguageDetectorModel(new ByteArrayInputStream(languageDetector));
+    final File snapshot = snapshotOf(languageDetector, LanguageDetectorModelService.PARAMETERS_ENTRY,
+            (AbstractModel) heap.getArtifact(LanguageDetectorModelService.PARAMETERS_ENTRY));
+    final LanguageDetectorModel rebuilt = ModelSnapshot.read(snapshot, new LanguageDetectorModelService()::rebuildModel);
+
+    final LanguageDetectorME heapDetector = new LanguageDetectorME(heap);
+    final LanguageDetectorME rebuiltDetector = new LanguageDetectorME(rebuilt);
+    for (String text : TEXTS) {
+      final Language[] expected = heapDetector.predictLanguages(text);
+      final Language[] actual = rebuiltDetector.predictLanguages(text);
+      assertEquals(text, expected.length, actual.length);
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(text, expected[i].getLang(), actual[i].getLang());
+        assertEquals(text, expected[i].getConfidence(), actual[i].getConfidence(), 1e-9);
+      }
+    }
+  }
+
+  @Test
+  public void testWriteReplacesSnapshotWithoutLeavingTemporaryFiles() throws IOException {
+    final TokenNameFinderModel heap = new TokenNameFinderModel(new ByteArrayInputStream(nameFinder));
+    final AbstractModel parameters = (AbstractModel) heap.getArtifact(NameFinderModelService.PARAMETERS_ENTRY);
+    final File snapshot = snapshotOf(nameFinder, NameFinderModelService.PARAMETERS_ENTRY, parameters);
+    final byte[] written = Files.readAllBytes(snapshot.toPath());
+
+    Files.write(snapshot.toPath(), "stale".getBytes(StandardCharsets.US_ASCII));
+    snapshotOf(nameFinder, NameFinderModelService.PARAMETERS_ENTRY, parameters);
+
+    assertArrayEquals(written, Files.readAllBytes(snapshot.toPath()));
+    assertEquals(Collections.singletonList(snapshot.getName()), Arrays.asList(folder.getRoot().list()));
+  }
+
+  @Test
+  public void testServiceParsesModelWhenSnapshotIsBroken() throws IOException, InitializationException {
+    final File model = folder.newFile("en-ner-person.bin");
+    Files.write(model.toPath(), nameFinder);
+    final TokenNameFinderModel heap = new TokenNameFinderModel(new ByteArrayInputStream(nameFinder));
+
+    // the first load parses the model and writes the snapshot
+    NameFinderModelService service = enable(model);
+    final File snapshot = ModelSnapshot.fileFor(model, service.getModelChecksum());
+    assertTrue(snapshot.isFile());
+    final long length = snapshot.length();
+    disable(service);
+
+    // a truncated snapshot, and one that is not a snapshot, are parsed and written again
+    try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+      file.setLength(length / 2);
+    }
+    service = enable(model);
+    assertFalse(service.getModel() instanceof NameFinderModelService.SnapshotTokenNameFinderModel);
+    assertNamesEqual(heap, service.getModel());
+    assertEquals(length, snapshot.length());
+    disable(service);
+
+    Files.write(snapshot.toPath(), new byte[64]);
+    service = enable(model);
+    assertFalse(service.getModel() instanceof NameFinderModelService.SnapshotTokenNameFinderModel);
+    assertNamesEqual(heap, service.getModel());
+    disable(service);
+
+    // the rewritten snapshot is read by the next load
+    service = enable(model);
+    assertTrue(service.getModel() instanceof NameFinderModelService.SnapshotTokenNameFinderModel);
+    assertNamesEqual(heap, service.getModel());
+    disable(service);
+
+    final List<String> files = new ArrayList<>(Arrays.asList(folder.getRoot().list()));
+    Collections.sort(files);
+    assertEquals(Arrays.asList(model.getName(), snapshot.getName()), files);
+  }
+
+  private NameFinderModelService enable(final File model) throws InitializationException {
+    runner = TestRunners.newTestRunner(TestModelRegistryService.NoOpProcessor.class);
+    final NameFinderModelService service = new NameFinderModelService();
+    runner.addControllerService("nameFinder", service, Collections.emptyMap());
+    runner.setProperty(service, AbstractModelService.MODEL_PATH, model.getAbsolutePath());
+    runner.setProperty(service, AbstractModelService.MODEL_SNAPSHOT, "true");
+    runner.enableControllerService(service);
+    assertEquals(AbstractModelService.READY, service.getLoadState());
+    return service;
+  }
+
+  private void disable(final NameFinderModelService service) {
+    runner.disableControllerService(service);
+  }
+
+  private static void assertNamesEqual(final TokenNameFinderModel expectedModel, final TokenNameFinderModel actualModel) {
+    final NameFinderME expectedFinder = new NameFinderME(expectedModel);
+    final NameFinderME actualFinder = new NameFinderME(actualModel);
+    int names = 0;
+    for (String[] document : DOCUMENTS) {
+      final Span[] expected = expectedFinder.find(document);
+      final Span[] actual = actualFinder.find(document);
+      assertArrayEquals(Arrays.toString(document), expected, actual);
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(expected[i].getProb(), actual[i].getProb(), 1e-9);
+      }
+      names += expected.length;
+    }
+    assertTrue("The model finds no names", names > 0);
+  }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.opennlp.nifi.service;
+
+import opennlp.tools.tokenize.TokenSample;
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.tokenize.TokenizerFactory;
+import opennlp.tools.tokenize.TokenizerME;
+import opennlp.tools.tokenize.TokenizerModel;
+import opennlp.tools.util.ObjectStreamUtils;
+import opennlp.tools.util.Span;
+import opennlp.tools.util.TrainingParameters;
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestModelWarmUp {
+
+  private static final List<String> SAMPLES = Arrays.asList("Anna lives here.", "Ask Peter, then.");
+
+  private static byte[] tokenizer;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private TestRunner runner;
+  private File model;
+  private File samples;
+
+  @BeforeClass
+  public static void setupClass() throws IOException {
+    final TrainingParameters params = TrainingParameters.defaultParams();
+    params.put(TrainingParameters.ITERATIONS_PARAM, "20");
+    params.put(TrainingParameters.CUTOFF_PARAM, "1");
+
+    final List<TokenSample> tokens = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      tokens.add(new TokenSample("Anna lives here.", new Span[] {new Span(0, 4), new Span(5, 10),
+              new Span(11, 15), new Span(15, 16)}));
+      tokens.add(new TokenSample("Ask Peter, then.", new Span[] {new Span(0, 3), new Span(4, 9),
+              new Span(9, 10), new Span(11, 15), new Span(15, 16)}));
+    }
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TokenizerME.train(ObjectStreamUtils.createObjectStream(tokens),
+            TokenizerFactory.create(null, "en", null, true, null), params).serialize(out);
+    tokenizer = out.toByteArray();
+  }
+
+  @Before
+  public void setup() throws IOException {
+    runner = TestRunners.newTestRunner(TestModelRegistryService.NoOpProcessor.class);
+    model = folder.newFile("en-token.bin");
+    Files.write(model.toPath(), tokenizer);
+    samples = folder.newFile("samples.txt");
+    Files.write(samples.toPath(), ("Anna lives here.\n\nAsk Peter, then.\n").getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testSamplesRunBeforeModelIsReady() throws InitializationException {
+    final RecordingTokenizerModelService service = new RecordingTokenizerModelService();
+    enable(service, "3");
+
+    assertEquals(AbstractModelService.READY, service.getLoadState());
+    final List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      expected.addAll(SAMPLES);
+    }
+    assertEquals(expected, service.samples);
+    assertEquals(Collections.singletonList(AbstractModelService.LOADING), new ArrayList<>(service.states));
+    assertEquals(3, service.instances.size());
+
+    assertTrue(service.getWarmUpMillis() >= 0);
+    assertTrue(service.getWarmUpFirstLatencyMicros() >= 0);
+    assertTrue(service.getWarmUpLastLatencyMicros() >= 0);
+  }
+
+  @Test
+  public void testNoWarmUpWithoutIterations() throws InitializationException {
+    final RecordingTokenizerModelService service = new RecordingTokenizerModelService();
+    enable(service, "0");
+
+    assertEquals(AbstractModelService.READY, service.getLoadState());
+    assertTrue(service.samples.isEmpty());
+    assertEquals(-1, service.getWarmUpMillis());
+    assertEquals(-1, service.getWarmUpFirstLatencyMicros());
+    assertEquals(-1, service.getWarmUpLastLatencyMicros());
+  }
+
+  @Test
+  public void testFailingSampleFailsTheLoad() throws IOException {
+    final RecordingTokenizerModelService service = new RecordingTokenizerModelService();
+    service.failOn = SAMPLES.get(1);
+    try {
+      enable(service, "3");
+      fail("The warm-up did not fail the load");
+    } catch (InitializationException | AssertionError e) {
+      // the mock runner wraps what the service threw
+    }
+
+    assertEquals(AbstractModelService.FAILED, service.getLoadState());
+    assertTrue(service.getLoadFailure() instanceof IllegalStateException);
+    assertEquals(-1, service.getWarmUpMillis());
+    assertEquals(SAMPLES, service.samples);
+
+    // the model loaded for the warm-up was handed back to the registry
+    final ModelRegistry.Lease<TokenizerModel> lease = ModelRegistry.acquire(model, TokenizerModel.class,
+            AbstractModelService.STORAGE_HEAP, (file, content, checksum) -> new TokenizerModel(new ByteArrayInputStream(content)));
+    try {
+      assertEquals(1, ModelRegistry.getReferences(lease));
+    } finally {
+      ModelRegistry.release(lease);
+    }
+  }
+
+  private void enable(final RecordingTokenizerModelService service, final String iterations) throws InitializationException {
+    runner.addControllerService("tokenizer", service, Collections.emptyMap());
+    runner.setProperty(service, AbstractModelService.MODEL_PATH, model.getAbsolutePath());
+    runner.setProperty(service, AbstractModelService.WARM_UP_ITERATIONS, iterations);
+    runner.setProperty(service, AbstractModelService.WARM_UP_SAMPLES, samples.getAbsolutePath());
+    runner.enableControllerService(service);
+  }
+
+  public static class RecordingTokenizerModelService extends TokenizerModelService {
+
+    final List<String> samples = Collections.synchronizedList(new ArrayList<>());
+    final List<String> states = Collections.synchronizedList(new ArrayList<>());
+    final List<Tokenizer> instances = Collections.synchronizedList(new ArrayList<>());
+    volatile String failOn;
+
+    @Override
+    protected void warmUp(Tokenizer tokenizer, String sample) {
+      samples.add(sample);
+      if (!states.contains(getLoadState())) {
+        states.add(getLoadState());
+      }
+      if (!instances.contains(tokenizer)) {
+        instances.add(tokenizer);
+      }
+      if (sample.equals(failOn)) {
+        throw new IllegalArgumentException("Cannot tokenize " + sample);
+      }
+      super.warmUp(tokenizer, sample);
+    }
+  }
+
+}